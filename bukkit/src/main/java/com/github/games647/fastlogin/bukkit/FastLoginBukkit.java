@@ -29,6 +29,8 @@ import com.comphenix.protocol.ProtocolLibrary;
 import com.github.games647.fastlogin.bukkit.command.CrackedCommand;
 import com.github.games647.fastlogin.bukkit.command.PremiumCommand;
 import com.github.games647.fastlogin.bukkit.command.DeleteCommand;
+import com.github.games647.fastlogin.bukkit.command.ShadowCommand;
+import com.github.games647.fastlogin.bukkit.command.TransferCommand;
 import com.github.games647.fastlogin.bukkit.listener.ConnectionListener;
 import com.github.games647.fastlogin.bukkit.listener.PaperCacheListener;
 import com.github.games647.fastlogin.bukkit.listener.protocollib.ProtocolLibListener;
@@ -157,6 +159,8 @@ public class FastLoginBukkit extends JavaPlugin implements PlatformPlugin<Comman
         Optional.ofNullable(getCommand("premium")).ifPresent(c -> c.setExecutor(new PremiumCommand(this)));
         Optional.ofNullable(getCommand("cracked")).ifPresent(c -> c.setExecutor(new CrackedCommand(this)));
         Optional.ofNullable(getCommand("fldelete")).ifPresent(c -> c.setExecutor(new DeleteCommand(this)));
+        Optional.ofNullable(getCommand("fltransfer")).ifPresent(c -> c.setExecutor(new TransferCommand(this)));
+        Optional.ofNullable(getCommand("flshadow")).ifPresent(c -> c.setExecutor(new ShadowCommand(this)));
     }
 
     private boolean initializeFloodgate() {
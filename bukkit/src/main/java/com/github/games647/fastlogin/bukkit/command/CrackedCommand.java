@@ -64,14 +64,14 @@ public class CrackedCommand extends ToggleCommand {
         }
 
         // todo: load async if
-        StoredProfile profile = plugin.getCore().getStorage().loadProfile(sender.getName());
+        StoredProfile profile = plugin.getCore().getAuthStorage().loadProfile(sender.getName());
         if (profile.isOnlinemodePreferred()) {
             plugin.getCore().sendLocaleMessage("remove-premium", sender);
 
             profile.setOnlinemodePreferred(false);
             profile.setId(null);
             plugin.getScheduler().runAsync(() -> {
-                plugin.getCore().getStorage().save(profile);
+                plugin.getCore().getAuthStorage().save(profile);
                 plugin.getServer().getPluginManager().callEvent(
                         new BukkitFastLoginPremiumToggleEvent(sender, profile, PremiumToggleReason.COMMAND_OTHER)
                 );
@@ -99,7 +99,7 @@ public class CrackedCommand extends ToggleCommand {
         }
 
         //todo: load async
-        StoredProfile profile = plugin.getCore().getStorage().loadProfile(args[0]);
+        StoredProfile profile = plugin.getCore().getAuthStorage().loadProfile(args[0]);
         if (profile == null) {
             sender.sendMessage("Error occurred");
             return;
@@ -113,7 +113,7 @@ public class CrackedCommand extends ToggleCommand {
 
             profile.setOnlinemodePreferred(false);
             plugin.getScheduler().runAsync(() -> {
-                plugin.getCore().getStorage().save(profile);
+                plugin.getCore().getAuthStorage().save(profile);
                 plugin.getServer().getPluginManager().callEvent(
                         new BukkitFastLoginPremiumToggleEvent(sender, profile, PremiumToggleReason.COMMAND_OTHER));
             });
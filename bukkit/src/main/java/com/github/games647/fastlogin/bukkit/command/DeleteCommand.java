@@ -66,7 +66,7 @@ public class DeleteCommand implements TabExecutor {
         }
 
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            int count = plugin.getCore().getStorage().deleteProfile(args[0]);
+            int count = plugin.getCore().getAuthStorage().deleteProfile(args[0]);
             if (!(sender instanceof ConsoleCommandSender)) {
                 Bukkit.getScheduler().runTask(plugin, () -> {
                     if (count == 0) {
@@ -0,0 +1,153 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.bukkit.command;
+
+import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
+import com.github.games647.fastlogin.core.storage.ProfileTransfer;
+import com.github.games647.fastlogin.core.storage.SQLStorage;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+
+public class TransferCommand implements CommandExecutor {
+
+    // report at most every 5 percent to not flood the console
+    private static final long PROGRESS_STEP = 5;
+
+    private final FastLoginBukkit plugin;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public TransferCommand(FastLoginBukkit plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Handles the command to copy all profiles into another database.
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!sender.hasPermission(command.getPermission())) {
+            plugin.getCore().sendLocaleMessage("no-permission", sender);
+            return true;
+        }
+
+        // the target location includes the database credentials
+        if (!(sender instanceof ConsoleCommandSender)) {
+            sender.sendMessage("Error: This command can only be used from the console");
+            return true;
+        }
+
+        if (plugin.getCore().getSqlStorage() == null) {
+            sender.sendMessage("Error: The configured storage is not a database");
+            return true;
+        }
+
+        if (args.length < 1) {
+            sender.sendMessage("Error: Must supply the target database");
+            return false;
+        }
+
+        int batchSize = ProfileTransfer.DEFAULT_BATCH_SIZE;
+        if (args.length > 1 && !isResume(args[1])) {
+            try {
+                batchSize = Integer.parseInt(args[1]);
+            } catch (NumberFormatException numberFormatException) {
+                sender.sendMessage("Error: Invalid batch size " + args[1]);
+                return false;
+            }
+        }
+
+        if (!running.compareAndSet(false, true)) {
+            sender.sendMessage("Error: A transfer is already running");
+            return true;
+        }
+
+        // named targets keep the credentials out of the console log and the command history
+        String location = plugin.getCore().getConfig().getSection("transfer-targets").getString(args[0], null);
+        if (location == null) {
+            location = args[0];
+            if (location.contains("@")) {
+                sender.sendMessage("Warning: The database password is written to the console log. Add the target to "
+                        + "transfer-targets in the config and use its name instead");
+            }
+        }
+
+        boolean resume = isResume(args[args.length - 1]);
+        int finalBatchSize = batchSize;
+        String finalLocation = location;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                transfer(finalLocation, finalBatchSize, resume);
+            } finally {
+                running.set(false);
+            }
+        });
+
+        return true;
+    }
+
+    private static boolean isResume(String arg) {
+        return "resume".equalsIgnoreCase(arg);
+    }
+
+    private void transfer(String location, int batchSize, boolean resume) {
+        SQLStorage source = plugin.getCore().getSqlStorage();
+        SQLStorage target = null;
+        try {
+            target = ProfileTransfer.openStorage(plugin.getLog(), location);
+
+            long[] lastPercent = {-PROGRESS_STEP};
+            if (!resume && target.getMaxRowId() > 0) {
+                plugin.getLog().error("The target database already contains profiles. Add resume to the command "
+                        + "to continue an interrupted transfer");
+                return;
+            }
+
+            ProfileTransfer transfer = new ProfileTransfer(plugin.getLog(), source, target, batchSize);
+            long transferred = transfer.run(resume, (done, total) -> {
+                long percent = total == 0 ? 100 : done * 100 / total;
+                if (percent - lastPercent[0] >= PROGRESS_STEP) {
+                    lastPercent[0] = percent;
+                    plugin.getLog().info("Transferred {}/{} profiles ({}%)", done, total, percent);
+                }
+            });
+
+            plugin.getLog().info("Finished transfer of {} profiles", transferred);
+        } catch (SQLException sqlEx) {
+            plugin.getLog().error("Failed to transfer profiles. Run the command again with resume to continue", sqlEx);
+        } finally {
+            if (target != null) {
+                target.close();
+            }
+        }
+    }
+}
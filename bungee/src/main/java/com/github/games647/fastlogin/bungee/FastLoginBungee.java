@@ -25,6 +25,7 @@
  */
 package com.github.games647.fastlogin.bungee;
 
+import com.github.games647.fastlogin.bungee.command.ShadowCommand;
 import com.github.games647.fastlogin.bungee.hook.BungeeAuthHook;
 import com.github.games647.fastlogin.bungee.listener.ConnectListener;
 import com.github.games647.fastlogin.bungee.listener.PluginMessageListener;
@@ -101,6 +102,7 @@ public class FastLoginBungee extends Plugin implements PlatformPlugin<CommandSen
         Listener connectListener = new ConnectListener(this, core.getAntiBotService());
         pluginManager.registerListener(this, connectListener);
         pluginManager.registerListener(this, new PluginMessageListener(this));
+        pluginManager.registerCommand(this, new ShadowCommand(this));
 
         //this is required to listen to incoming messages from the server
         getProxy().registerChannel(NamespaceKey.getCombined(getName(), ChangePremiumMessage.CHANGE_CHANNEL));
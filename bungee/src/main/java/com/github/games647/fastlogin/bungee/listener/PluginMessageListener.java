@@ -132,7 +132,7 @@ public class PluginMessageListener implements Listener {
 
             if (!loginSession.isAlreadySaved()) {
                 playerProfile.setOnlinemodePreferred(true);
-                plugin.getCore().getStorage().save(playerProfile);
+                plugin.getCore().getAuthStorage().save(playerProfile);
                 loginSession.setAlreadySaved(true);
             }
         }
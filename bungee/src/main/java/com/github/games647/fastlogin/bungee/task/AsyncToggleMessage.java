@@ -62,7 +62,7 @@ public class AsyncToggleMessage implements Runnable {
     }
 
     private void turnOffPremium() {
-        StoredProfile playerProfile = core.getStorage().loadProfile(targetPlayer);
+        StoredProfile playerProfile = core.getAuthStorage().loadProfile(targetPlayer);
         //existing player is already cracked
         if (playerProfile.isExistingPlayer() && !playerProfile.isOnlinemodePreferred()) {
             sendMessage("not-premium");
@@ -71,7 +71,7 @@ public class AsyncToggleMessage implements Runnable {
 
         playerProfile.setOnlinemodePreferred(false);
         playerProfile.setId(null);
-        core.getStorage().save(playerProfile);
+        core.getAuthStorage().save(playerProfile);
         PremiumToggleReason reason = (!isPlayerSender || !sender.getName().equalsIgnoreCase(playerProfile.getName()))
             ? PremiumToggleReason.COMMAND_OTHER : PremiumToggleReason.COMMAND_SELF;
         core.getPlugin().getProxy().getPluginManager().callEvent(
@@ -85,14 +85,14 @@ public class AsyncToggleMessage implements Runnable {
     }
 
     private void activatePremium() {
-        StoredProfile playerProfile = core.getStorage().loadProfile(targetPlayer);
+        StoredProfile playerProfile = core.getAuthStorage().loadProfile(targetPlayer);
         if (playerProfile.isOnlinemodePreferred()) {
             sendMessage("already-exists");
             return;
         }
 
         playerProfile.setOnlinemodePreferred(true);
-        core.getStorage().save(playerProfile);
+        core.getAuthStorage().save(playerProfile);
         PremiumToggleReason reason = (!isPlayerSender || !sender.getName().equalsIgnoreCase(playerProfile.getName()))
             ? PremiumToggleReason.COMMAND_OTHER : PremiumToggleReason.COMMAND_SELF;
         core.getPlugin().getProxy().getPluginManager().callEvent(
@@ -68,7 +68,7 @@ public abstract class BedrockService<B> {
         // check for conflicting Premium Java name
         Optional<Profile> premiumUUID = Optional.empty();
         try {
-            premiumUUID = core.getResolver().findProfile(username);
+            premiumUUID = core.getProfileResolver().findProfile(username);
         } catch (IOException ioEx) {
             core.getPlugin().getLog().error(
                 "Could not check whether Bedrock Player {}'s name conflicts a premium Java player's name.",
@@ -0,0 +1,350 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.mojang.RateBudget.Route;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the lookups of a short time window and resolves them with a single request to the bulk endpoint of the
+ * Mojang API, which accepts up to 10 names. During join waves this saves most of the rate limit.
+ * <p>
+ * No extra thread is necessary: a lookup that starts while no other lookup is running is sent immediately to the
+ * single name resolver below, so quiet servers behave exactly like before. Lookups that start while others are still
+ * running are collected. The first of them waits until the window ends or the batch is full and sends the request for
+ * all waiting lookups.
+ * <p>
+ * The bulk requests take their requests from the same {@link RateBudget} as the single lookups, because they count
+ * against the same Mojang rate limit.
+ */
+public class BatchingProfileResolver implements ProfileResolver {
+
+    public static final URI BULK_URL = URI.create(
+            "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname");
+    public static final int MAX_BATCH_SIZE = 10;
+
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int RATE_LIMIT_CODE = 429;
+
+    private final ProfileResolver delegate;
+    private final URI bulkUrl;
+    private final RateBudget budget;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+
+    private final Gson gson = new Gson();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchFull = lock.newCondition();
+    private Batch collecting;
+    // lookups that are sent or waiting for their batch
+    private int running;
+
+    private final LongAdder bulkRequests = new LongAdder();
+    private final LongAdder batchedNames = new LongAdder();
+
+    /**
+     * @param delegate resolver for lookups that are alone in their window
+     * @param bulkUrl bulk endpoint of the Mojang API
+     * @param budget rate limit shared with the delegate, which chooses the proxy of the bulk requests
+     * @param maxDelay maximum time a lookup waits for other lookups
+     * @param maxBatchSize maximum number of names per request - Mojang accepts at most {@value #MAX_BATCH_SIZE}
+     */
+    public BatchingProfileResolver(ProfileResolver delegate, URI bulkUrl, RateBudget budget, Duration maxDelay,
+                                   int maxBatchSize) {
+        this.delegate = delegate;
+        this.bulkUrl = bulkUrl;
+        this.budget = Objects.requireNonNull(budget, "budget");
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, MAX_BATCH_SIZE));
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name, LookupPriority priority) throws IOException, RateLimitException {
+        boolean alone;
+        lock.lock();
+        try {
+            alone = running == 0;
+            running++;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (alone) {
+                // nothing to wait for
+                return delegate.findProfile(name, priority);
+            }
+
+            return findBatched(name, priority);
+        } finally {
+            lock.lock();
+            try {
+                running--;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Optional<Profile> findBatched(String name, LookupPriority priority) throws IOException, RateLimitException {
+        Batch batch;
+        CompletableFuture<Optional<Profile>> result;
+        boolean leader = false;
+
+        lock.lock();
+        try {
+            batch = collecting;
+            if (batch == null) {
+                batch = new Batch();
+                collecting = batch;
+                leader = true;
+            }
+
+            result = batch.add(name, priority);
+            if (batch.size() >= maxBatchSize) {
+                // the next lookup starts a new batch
+                collecting = null;
+                batchFull.signalAll();
+            }
+
+            if (leader) {
+                awaitBatch(batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (leader) {
+            resolve(batch);
+        }
+
+        return await(result);
+    }
+
+    private void awaitBatch(Batch batch) {
+        long remaining = maxDelayNanos;
+        try {
+            while (collecting == batch && remaining > 0) {
+                remaining = batchFull.awaitNanos(remaining);
+            }
+        } catch (InterruptedException interruptedEx) {
+            // resolve the names collected so far - the other lookups are waiting for them
+            Thread.currentThread().interrupt();
+        }
+
+        if (collecting == batch) {
+            collecting = null;
+        }
+    }
+
+    private void resolve(Batch batch) {
+        try {
+            if (batch.size() == 1) {
+                Map.Entry<String, CompletableFuture<Optional<Profile>>> single = batch.getEntry();
+                single.getValue().complete(delegate.findProfile(single.getKey(), batch.priority));
+                return;
+            }
+
+            Map<String, Profile> profiles = requestBulk(batch.getNames(), batch.priority);
+            batch.complete(profiles);
+        } catch (IOException | RateLimitException | RuntimeException | Error ex) {
+            batch.fail(ex);
+        }
+    }
+
+    private Map<String, Profile> requestBulk(List<String> names, LookupPriority priority)
+            throws IOException, RateLimitException {
+        Route route = budget.acquire(priority);
+
+        bulkRequests.increment();
+        batchedNames.add(names.size());
+
+        HttpURLConnection conn = openConnection(route);
+        try {
+            conn.setConnectTimeout(TIMEOUT);
+            conn.setReadTimeout(TIMEOUT);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Accept", "application/json");
+            conn.setDoOutput(true);
+
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(gson.toJson(names).getBytes(StandardCharsets.UTF_8));
+            }
+
+            int responseCode = conn.getResponseCode();
+            if (responseCode == RATE_LIMIT_CODE) {
+                budget.exhaust(route);
+                throw new RateLimitException();
+            }
+
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response code " + responseCode + " of bulk lookup");
+            }
+
+            BulkProfile[] response;
+            try (Reader reader = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8)) {
+                response = gson.fromJson(reader, BulkProfile[].class);
+            } catch (JsonParseException parseEx) {
+                throw new IOException("Invalid response of bulk lookup", parseEx);
+            }
+
+            // names that are missing in the response don't have a premium account
+            Map<String, Profile> profiles = new HashMap<>();
+            if (response != null) {
+                for (BulkProfile profile : response) {
+                    Profile parsed = new Profile(UUIDAdapter.parseId(profile.id), profile.name);
+                    profiles.put(profile.name.toLowerCase(Locale.ROOT), parsed);
+                }
+            }
+
+            return profiles;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private HttpURLConnection openConnection(Route route) throws IOException {
+        Proxy proxy = route.getProxy() == null ? Proxy.NO_PROXY : route.getProxy();
+        return (HttpURLConnection) bulkUrl.toURL().openConnection(proxy);
+    }
+
+    private static Optional<Profile> await(CompletableFuture<Optional<Profile>> result)
+            throws IOException, RateLimitException {
+        try {
+            return result.get();
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bulk lookup");
+        } catch (ExecutionException executionEx) {
+            Throwable cause = executionEx.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RateLimitException) {
+                throw (RateLimitException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * @return number of requests sent to the bulk endpoint
+     */
+    public long getBulkRequests() {
+        return bulkRequests.sum();
+    }
+
+    /**
+     * @return number of names resolved by bulk requests
+     */
+    public long getBatchedNames() {
+        return batchedNames.sum();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static final class Batch {
+
+        // lookups of the same name in one window share the result
+        private final Map<String, CompletableFuture<Optional<Profile>>> lookups = new LinkedHashMap<>();
+        // the highest priority of the waiting lookups
+        private LookupPriority priority = LookupPriority.BACKGROUND;
+
+        CompletableFuture<Optional<Profile>> add(String name, LookupPriority lookupPriority) {
+            if (lookupPriority.compareTo(priority) < 0) {
+                priority = lookupPriority;
+            }
+
+            return lookups.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new CompletableFuture<>());
+        }
+
+        int size() {
+            return lookups.size();
+        }
+
+        Map.Entry<String, CompletableFuture<Optional<Profile>>> getEntry() {
+            return lookups.entrySet().iterator().next();
+        }
+
+        List<String> getNames() {
+            return new ArrayList<>(lookups.keySet());
+        }
+
+        void complete(Map<String, Profile> profiles) {
+            lookups.forEach((name, lookup) -> lookup.complete(Optional.ofNullable(profiles.get(name))));
+        }
+
+        void fail(Throwable cause) {
+            lookups.values().forEach(lookup -> lookup.completeExceptionally(cause));
+        }
+    }
+
+    private static final class BulkProfile {
+
+        private String id;
+        private String name;
+    }
+}
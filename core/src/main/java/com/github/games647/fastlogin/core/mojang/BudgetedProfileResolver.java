@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.mojang.RateBudget.Route;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Takes a request of the {@link RateBudget} before passing the lookup to the resolver of the chosen route. Every route
+ * has its own resolver bound to its proxy, so the tokens of a route match the requests that are really sent through
+ * it. If Mojang rejects the request anyway, the route is marked as exhausted and the lookup queues again until its
+ * deadline.
+ */
+public class BudgetedProfileResolver implements ProfileResolver {
+
+    private final RateBudget budget;
+    private final Map<Route, ProfileResolver> resolvers = new HashMap<>();
+
+    /**
+     * @param budget shared rate limit
+     * @param resolverFactory creates a resolver that sends a single request for each lookup through the given route
+     */
+    public BudgetedProfileResolver(RateBudget budget, Function<Route, ProfileResolver> resolverFactory) {
+        this.budget = budget;
+        for (Route route : budget.getRoutes()) {
+            resolvers.put(route, resolverFactory.apply(route));
+        }
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name, LookupPriority priority) throws IOException, RateLimitException {
+        long deadline = budget.getDeadline(priority);
+        while (true) {
+            Route route = budget.acquire(priority, deadline);
+            try {
+                return resolvers.get(route).findProfile(name, priority);
+            } catch (RateLimitException rateLimitEx) {
+                // another plugin or server used the limit of this address - wait for a refill within the same deadline
+                budget.exhaust(route);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        resolvers.values().forEach(ProfileResolver::close);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.storage.MojangLookup;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers the results of the resolver below. Names without a premium account are kept for a shorter time, because
+ * they could be bought at any time. Every hit saves a request of the Mojang rate limit.
+ * <p>
+ * The entries can be written to a file on shutdown and loaded on the next start, so restarts during a join rush don't
+ * send every player to the Mojang API again.
+ */
+public class CachedProfileResolver implements ProfileResolver {
+
+    private static final int SNAPSHOT_MAGIC = 0x464c4d43;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Logger log;
+    private final ProfileResolver delegate;
+    private final Ticker ticker;
+
+    private final long positiveTtlNanos;
+    private final long negativeTtlNanos;
+    private final Cache<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param log logger for snapshot errors
+     * @param delegate resolver that is asked on cache misses
+     * @param ticker time source of the expiration
+     * @param maxSize maximum number of cached names
+     * @param positiveTtl time a premium profile is kept
+     * @param negativeTtl time a name without a premium account is kept
+     */
+    public CachedProfileResolver(Logger log, ProfileResolver delegate, Ticker ticker, int maxSize,
+                                 Duration positiveTtl, Duration negativeTtl) {
+        this.log = log;
+        this.delegate = delegate;
+        this.ticker = ticker;
+        this.positiveTtlNanos = positiveTtl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+
+        // expire everything after the longer TTL - the shorter one is checked on every read
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Math.max(positiveTtlNanos, negativeTtlNanos), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name, LookupPriority priority) throws IOException, RateLimitException {
+        String key = toKey(name);
+
+        Entry cached = entries.getIfPresent(key);
+        if (cached != null && !isExpired(cached)) {
+            hits.increment();
+            if (cached.profile == null) {
+                negativeHits.increment();
+            }
+
+            return Optional.ofNullable(cached.profile);
+        }
+
+        misses.increment();
+        MojangLookup lookup = delegate.findLookup(name, priority);
+        // results of the shared tier are older already - count their age against the TTL of this one
+        Duration age = Duration.between(lookup.getFetched(), Instant.now());
+        put(name, lookup.getProfile(), age.isNegative() ? Duration.ZERO : age);
+        return Optional.ofNullable(lookup.getProfile());
+    }
+
+    /**
+     * Add a result that was learned elsewhere, for example from another cache tier. Expired results are skipped.
+     *
+     * @param name requested name
+     * @param profile premium profile or null if the name isn't premium
+     * @param age time since the result was fetched from the Mojang API
+     */
+    public void put(String name, Profile profile, Duration age) {
+        Entry entry = new Entry(profile, ticker.read() - age.toNanos());
+        if (!isExpired(entry)) {
+            entries.put(toKey(name), entry);
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        long ttl = entry.profile == null ? negativeTtlNanos : positiveTtlNanos;
+        return ticker.read() - entry.fetchedNanos >= ttl;
+    }
+
+    private static String toKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Load the entries written by {@link #saveSnapshot(Path)}. Expired entries are skipped.
+     *
+     * @param file snapshot file
+     * @return number of loaded entries
+     */
+    public int loadSnapshot(Path file) {
+        int loaded = 0;
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Ignoring Mojang cache snapshot {} of an unknown format", file);
+                return 0;
+            }
+
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                Profile profile = null;
+                if (in.readBoolean()) {
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    profile = new Profile(id, in.readUTF());
+                }
+
+                // wall clock time, because the ticker doesn't survive restarts
+                long age = Math.max(0, now - in.readLong());
+                Entry entry = new Entry(profile, ticker.read() - TimeUnit.MILLISECONDS.toNanos(age));
+                if (!isExpired(entry)) {
+                    entries.put(key, entry);
+                    loaded++;
+                }
+            }
+        } catch (NoSuchFileException noSuchFileEx) {
+            return 0;
+        } catch (IOException ioEx) {
+            log.warn("Failed to load Mojang cache snapshot {}", file, ioEx);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Write all entries into a compressed file. The file is replaced atomically, so a crash while writing keeps the
+     * previous snapshot.
+     *
+     * @param file snapshot file
+     * @throws IOException if the file couldn't be written
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        Map<String, Entry> copy = new HashMap<>(entries.asMap());
+        long nowNanos = ticker.read();
+        long nowMillis = System.currentTimeMillis();
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile))))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, Entry> cached : copy.entrySet()) {
+                Entry entry = cached.getValue();
+                out.writeUTF(cached.getKey());
+                out.writeBoolean(entry.profile != null);
+                if (entry.profile != null) {
+                    out.writeLong(entry.profile.getId().getMostSignificantBits());
+                    out.writeLong(entry.profile.getId().getLeastSignificantBits());
+                    out.writeUTF(entry.profile.getName());
+                }
+
+                out.writeLong(nowMillis - TimeUnit.NANOSECONDS.toMillis(nowNanos - entry.fetchedNanos));
+            }
+        }
+
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    /**
+     * @return number of lookups passed to the resolver below
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : hitCount / (double) total;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static final class Entry {
+
+        // null if the name isn't premium
+        private final Profile profile;
+        private final long fetchedNanos;
+
+        Entry(Profile profile, long fetchedNanos) {
+            this.profile = profile;
+            this.fetchedNanos = fetchedNanos;
+        }
+    }
+}
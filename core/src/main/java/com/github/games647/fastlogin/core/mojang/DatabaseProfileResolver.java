@@ -0,0 +1,225 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.storage.MojangLookup;
+import com.github.games647.fastlogin.core.storage.SQLStorage;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shares the results of the resolver below with every server and proxy connected to the same database. A name that
+ * was requested by one instance doesn't count against the Mojang rate limit of the others.
+ * <p>
+ * The database is only an optimization. If it isn't available or fails, the lookup is sent to the resolver below.
+ * After a failure, the database is skipped for a short time, so the following logins don't wait for the connection
+ * timeout too.
+ */
+public class DatabaseProfileResolver implements ProfileResolver {
+
+    private static final Duration FAILURE_BACKOFF = Duration.ofSeconds(30);
+
+    private final Logger log;
+    private final Supplier<SQLStorage> storage;
+    private final ProfileResolver delegate;
+
+    private final Duration positiveTtl;
+    private final Duration negativeTtl;
+    private final Ticker ticker;
+
+    private volatile boolean failed;
+    private volatile long retryAt;
+
+    private ScheduledExecutorService cleaner;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param log logger for database errors
+     * @param storage current database or null if it isn't connected (yet)
+     * @param delegate resolver that is asked if the database has no fresh result
+     * @param positiveTtl time a premium profile is valid
+     * @param negativeTtl time a name without a premium account is valid
+     */
+    public DatabaseProfileResolver(Logger log, Supplier<SQLStorage> storage, ProfileResolver delegate,
+                                   Duration positiveTtl, Duration negativeTtl) {
+        this(log, storage, delegate, positiveTtl, negativeTtl, Ticker.systemTicker());
+    }
+
+    DatabaseProfileResolver(Logger log, Supplier<SQLStorage> storage, ProfileResolver delegate,
+                            Duration positiveTtl, Duration negativeTtl, Ticker ticker) {
+        this.log = log;
+        this.storage = storage;
+        this.delegate = delegate;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name, LookupPriority priority) throws IOException, RateLimitException {
+        return Optional.ofNullable(findLookup(name, priority).getProfile());
+    }
+
+    @Override
+    public MojangLookup findLookup(String name, LookupPriority priority) throws IOException, RateLimitException {
+        SQLStorage database = storage.get();
+        if (database == null || !isAvailable()) {
+            return delegate.findLookup(name, priority);
+        }
+
+        try {
+            MojangLookup lookup = database.loadMojangLookup(name);
+            markAvailable();
+            if (lookup != null && !isExpired(lookup)) {
+                hits.increment();
+                // keeps the fetch time, so the tiers above expire it together with this one
+                return lookup;
+            }
+        } catch (SQLException sqlEx) {
+            markFailed("Failed to load shared Mojang lookup of " + name, sqlEx);
+            return delegate.findLookup(name, priority);
+        }
+
+        misses.increment();
+        MojangLookup lookup = delegate.findLookup(name, priority);
+        try {
+            database.saveMojangLookup(name, lookup.getProfile(), lookup.getFetched());
+        } catch (SQLException sqlEx) {
+            markFailed("Failed to share Mojang lookup of " + name, sqlEx);
+        }
+
+        return lookup;
+    }
+
+    private boolean isAvailable() {
+        return !failed || ticker.read() - retryAt >= 0;
+    }
+
+    private void markAvailable() {
+        failed = false;
+    }
+
+    private void markFailed(String message, SQLException sqlEx) {
+        retryAt = ticker.read() + FAILURE_BACKOFF.toNanos();
+        if (!failed) {
+            failed = true;
+            log.warn("{}. Skipping the shared lookups for {} seconds", message, FAILURE_BACKOFF.getSeconds(), sqlEx);
+        }
+    }
+
+    /**
+     * Delete the results that expired for every server.
+     *
+     * @return number of deleted results
+     */
+    public int deleteExpired() {
+        SQLStorage database = storage.get();
+        if (database == null || !isAvailable()) {
+            return 0;
+        }
+
+        try {
+            int deleted = database.deleteMojangLookups(getExpiredBefore());
+            log.debug("Deleted {} expired shared Mojang lookups", deleted);
+            return deleted;
+        } catch (SQLException sqlEx) {
+            markFailed("Failed to delete expired shared Mojang lookups", sqlEx);
+            return 0;
+        }
+    }
+
+    /**
+     * Delete the expired results in the given interval. Otherwise, the table grows with every requested name.
+     *
+     * @param interval time between two cleanups
+     * @param threadFactory factory for the background thread or null
+     */
+    public void enableCleanup(Duration interval, ThreadFactory threadFactory) {
+        if (cleaner != null) {
+            return;
+        }
+
+        if (threadFactory == null) {
+            cleaner = Executors.newSingleThreadScheduledExecutor();
+        } else {
+            cleaner = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+
+        long minutes = Math.max(1, interval.toMinutes());
+        cleaner.scheduleWithFixedDelay(this::deleteExpired, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    private boolean isExpired(MojangLookup lookup) {
+        Duration ttl = lookup.getProfile() == null ? negativeTtl : positiveTtl;
+        return !lookup.getFetched().plus(ttl).isAfter(Instant.now());
+    }
+
+    /**
+     * @return the oldest time that could still contain valid results
+     */
+    public Instant getExpiredBefore() {
+        return Instant.now().minus(positiveTtl.compareTo(negativeTtl) > 0 ? positiveTtl : negativeTtl);
+    }
+
+    /**
+     * @return number of lookups answered by the database
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups passed to the resolver below
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() {
+        if (cleaner != null) {
+            cleaner.shutdownNow();
+        }
+
+        delegate.close();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.storage.MojangLookup;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Name to premium profile lookup. Implementations are stacked on top of each other, like caches in front of the
+ * Mojang API.
+ */
+public interface ProfileResolver {
+
+    /**
+     * @param name player name - case-insensitive
+     * @param priority order of the request if it has to wait for the rate limit
+     * @return the premium profile or empty if no premium account uses this name
+     * @throws IOException if the lookup failed
+     * @throws RateLimitException if the rate limit didn't allow a request in time
+     */
+    Optional<Profile> findProfile(String name, LookupPriority priority) throws IOException, RateLimitException;
+
+    /**
+     * Lookup with the {@link LookupPriority#LOGIN login priority}.
+     *
+     * @param name player name - case-insensitive
+     * @return the premium profile or empty if no premium account uses this name
+     * @throws IOException if the lookup failed
+     * @throws RateLimitException if the rate limit didn't allow a request in time
+     * @see #findProfile(String, LookupPriority)
+     */
+    default Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        return findProfile(name, LookupPriority.LOGIN);
+    }
+
+    /**
+     * Lookup that also reports when the result was fetched from the Mojang API. Resolvers that store results return
+     * the original fetch time, so the resolvers above don't keep a result longer than its TTL.
+     *
+     * @param name player name - case-insensitive
+     * @param priority order of the request if it has to wait for the rate limit
+     * @return the premium profile or null inside and the time it was fetched
+     * @throws IOException if the lookup failed
+     * @throws RateLimitException if the rate limit didn't allow a request in time
+     */
+    default MojangLookup findLookup(String name, LookupPriority priority) throws IOException, RateLimitException {
+        Instant fetched = Instant.now();
+        return new MojangLookup(name, findProfile(name, priority).orElse(null), fetched);
+    }
+
+    /**
+     * Release the resources of this resolver and the resolvers below it.
+     */
+    default void close() {
+        // nothing to release by default
+    }
+}
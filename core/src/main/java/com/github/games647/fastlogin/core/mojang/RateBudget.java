@@ -0,0 +1,307 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.storage.LatencyHistogram;
+
+import java.io.InterruptedIOException;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket of the Mojang rate limit for every outgoing route - the direct connection or each proxy. Mojang allows
+ * a number of requests per 10 minutes for each address, which refill continuously here.
+ * <p>
+ * Requests that find no token wait in a queue ordered by {@link LookupPriority} until a token refills. Login lookups
+ * are always served before background lookups. A request fails with {@link RateLimitException} only if its deadline
+ * passes, so short bursts over the limit are delayed instead of rejected.
+ */
+public class RateBudget {
+
+    public static final Duration MOJANG_WINDOW = Duration.ofMinutes(10);
+
+    private final List<Route> routes;
+    private final int capacity;
+    private final long refillNanos;
+    private final Map<LookupPriority, Duration> deadlines;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(Comparator
+            .comparing((Ticket ticket) -> ticket.priority)
+            .thenComparingLong(ticket -> ticket.sequence));
+    private long nextSequence;
+
+    private final Map<LookupPriority, LatencyHistogram> waitTimes = new EnumMap<>(LookupPriority.class);
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * @param proxies proxies of the requests or an empty collection for the direct connection
+     * @param capacity allowed requests per window for each route
+     * @param window time until a used request is available again
+     * @param deadlines maximum wait time of each priority - priorities without a value don't wait
+     */
+    public RateBudget(Collection<Proxy> proxies, int capacity, Duration window,
+                      Map<LookupPriority, Duration> deadlines) {
+        this.capacity = capacity;
+        this.refillNanos = window.toNanos() / Math.max(1, capacity);
+        this.deadlines = new EnumMap<>(deadlines);
+
+        long now = System.nanoTime();
+        List<Route> routeList = new ArrayList<>();
+        if (proxies.isEmpty()) {
+            routeList.add(new Route(null, capacity, now));
+        } else {
+            for (Proxy proxy : proxies) {
+                routeList.add(new Route(proxy, capacity, now));
+            }
+        }
+
+        this.routes = Collections.unmodifiableList(routeList);
+        for (LookupPriority priority : LookupPriority.values()) {
+            waitTimes.put(priority, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @param priority priority of the lookup
+     * @return {@link System#nanoTime()} until a lookup started now may wait
+     */
+    public long getDeadline(LookupPriority priority) {
+        return System.nanoTime() + deadlines.getOrDefault(priority, Duration.ZERO).toNanos();
+    }
+
+    /**
+     * Take a request of the route with the most remaining requests. Waits if every route is exhausted or lookups with
+     * a higher priority are waiting.
+     *
+     * @param priority order in the queue
+     * @return route that should be used for the request
+     * @throws RateLimitException if no request was available before the deadline of the priority
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public Route acquire(LookupPriority priority) throws RateLimitException, InterruptedIOException {
+        return acquire(priority, getDeadline(priority));
+    }
+
+    /**
+     * @param priority order in the queue
+     * @param deadline {@link System#nanoTime()} until the request may wait - shared by retries of the same lookup
+     * @return route that should be used for the request
+     * @throws RateLimitException if no request was available before the deadline
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     * @see #acquire(LookupPriority)
+     */
+    public Route acquire(LookupPriority priority, long deadline) throws RateLimitException, InterruptedIOException {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket(priority, nextSequence++);
+            queue.add(ticket);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long wait = deadline - now;
+                    if (queue.peek() == ticket) {
+                        Route route = refillFullest(now);
+                        if (route.tokens >= 1) {
+                            route.tokens--;
+                            waitTimes.get(priority).record(now - start);
+                            return route;
+                        }
+
+                        wait = Math.min(wait, (long) ((1 - route.tokens) * refillNanos));
+                    }
+
+                    if (deadline - now <= 0) {
+                        timeouts.increment();
+                        throw new RateLimitException();
+                    }
+
+                    changed.awaitNanos(Math.max(1, wait));
+                }
+            } catch (InterruptedException interruptedEx) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the Mojang rate limit");
+            } finally {
+                queue.remove(ticket);
+                // the next ticket could be able to run now
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Route refillFullest(long now) {
+        Route fullest = null;
+        for (Route route : routes) {
+            route.refill(now, capacity, refillNanos);
+            if (fullest == null || route.tokens > fullest.tokens) {
+                fullest = route;
+            }
+        }
+
+        return fullest;
+    }
+
+    /**
+     * Mark the route as exhausted, because Mojang rejected a request. Other plugins or servers behind the same address
+     * could have used the limit too.
+     *
+     * @param route route of the rejected request
+     */
+    public void exhaust(Route route) {
+        lock.lock();
+        try {
+            route.tokens = Math.min(route.tokens, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return remaining requests of all routes
+     */
+    public int getRemaining() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            int remaining = 0;
+            for (Route route : routes) {
+                route.refill(now, capacity, refillNanos);
+                remaining += (int) route.tokens;
+            }
+
+            return remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param route route of this budget
+     * @return remaining requests of the route
+     */
+    public int getRemaining(Route route) {
+        lock.lock();
+        try {
+            route.refill(System.nanoTime(), capacity, refillNanos);
+            return (int) route.tokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return number of lookups waiting for a request
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param priority queue of the priority
+     * @return time lookups waited for a request
+     */
+    public LatencyHistogram getWaitTime(LookupPriority priority) {
+        return waitTimes.get(priority);
+    }
+
+    /**
+     * @return number of lookups that failed, because the deadline passed
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Outgoing address of requests.
+     */
+    public static final class Route {
+
+        private final Proxy proxy;
+
+        // guarded by the lock of the budget - fractions are refilled continuously
+        private double tokens;
+        private long lastRefill;
+
+        Route(Proxy proxy, int tokens, long now) {
+            this.proxy = proxy;
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now, int capacity, long refillNanos) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / (double) refillNanos);
+            lastRefill = now;
+        }
+
+        /**
+         * @return proxy of the requests or null for the direct connection
+         */
+        public Proxy getProxy() {
+            return proxy;
+        }
+
+        @Override
+        public String toString() {
+            return proxy == null ? "direct" : proxy.address().toString();
+        }
+    }
+
+    private static final class Ticket {
+
+        private final LookupPriority priority;
+        private final long sequence;
+
+        Ticket(LookupPriority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
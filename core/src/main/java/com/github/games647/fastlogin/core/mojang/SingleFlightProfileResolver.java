@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.storage.MojangLookup;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets concurrent lookups of the same name share one request. Bots and impatient players often connect several times
+ * within a second, which would otherwise send the same name to the resolver below multiple times.
+ * <p>
+ * Waiting lookups receive the result of the running request or the same exception instance, including
+ * {@link RateLimitException}. Only running requests are shared - the next lookup after the completion starts a new one.
+ * <p>
+ * A lookup doesn't join a request of a lower priority, because that request could wait in the rate limit queue for a
+ * long time. It starts its own request instead, which the following lookups join. Its result completes the waiting
+ * lookups of the lower priority too.
+ */
+public class SingleFlightProfileResolver implements ProfileResolver {
+
+    private final ProfileResolver delegate;
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder upgraded = new LongAdder();
+
+    /**
+     * @param delegate resolver that runs the shared requests
+     */
+    public SingleFlightProfileResolver(ProfileResolver delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name, LookupPriority priority) throws IOException, RateLimitException {
+        return Optional.ofNullable(findLookup(name, priority).getProfile());
+    }
+
+    @Override
+    public MojangLookup findLookup(String name, LookupPriority priority) throws IOException, RateLimitException {
+        String key = name.toLowerCase(Locale.ROOT);
+
+        Flight request = new Flight(priority);
+        while (true) {
+            Flight running = inFlight.putIfAbsent(key, request);
+            if (running == null) {
+                break;
+            }
+
+            if (priority.compareTo(running.priority) >= 0) {
+                coalesced.increment();
+                return await(running.result);
+            }
+
+            // take over the following lookups - the lower priority request could be queued for a long time
+            if (inFlight.replace(key, running, request)) {
+                request.replaced = running;
+                upgraded.increment();
+                break;
+            }
+        }
+
+        requests.increment();
+        try {
+            MojangLookup lookup = delegate.findLookup(name, priority);
+            request.result.complete(lookup);
+            if (request.replaced != null) {
+                // failures are not passed on - the replaced request could still succeed within its longer deadline
+                request.replaced.result.complete(lookup);
+            }
+
+            return lookup;
+        } catch (IOException | RateLimitException | RuntimeException | Error ex) {
+            request.result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, request);
+        }
+    }
+
+    private static MojangLookup await(CompletableFuture<MojangLookup> running)
+            throws IOException, RateLimitException {
+        try {
+            return running.get();
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the lookup of another connection");
+        } catch (ExecutionException executionEx) {
+            Throwable cause = executionEx.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RateLimitException) {
+                throw (RateLimitException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * @return number of requests passed to the resolver below
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of lookups that waited for the request of another lookup instead
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of lookups that started their own request, because the running one had a lower priority
+     */
+    public long getUpgraded() {
+        return upgraded.sum();
+    }
+
+    /**
+     * @return number of currently running requests
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static final class Flight {
+
+        private final CompletableFuture<MojangLookup> result = new CompletableFuture<>();
+        private final LookupPriority priority;
+
+        // request of a lower priority that this one took over
+        private Flight replaced;
+
+        Flight(LookupPriority priority) {
+            this.priority = priority;
+        }
+    }
+}
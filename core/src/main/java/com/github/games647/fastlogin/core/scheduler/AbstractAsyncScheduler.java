@@ -68,6 +68,13 @@ public abstract class AbstractAsyncScheduler {
         });
     }
 
+    /**
+     * @return executor that runs the tasks on this scheduler, for example to continue a {@link CompletableFuture}
+     */
+    public Executor getExecutor() {
+        return task -> processingPool.execute(() -> process(task));
+    }
+
     protected void process(Runnable task) {
         currentlyRunning.incrementAndGet();
         try {
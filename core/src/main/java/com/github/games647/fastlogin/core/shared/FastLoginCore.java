@@ -37,9 +37,30 @@ import com.github.games647.fastlogin.core.antibot.TickingRateLimiter;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
 import com.github.games647.fastlogin.core.hooks.DefaultPasswordGenerator;
 import com.github.games647.fastlogin.core.hooks.PasswordGenerator;
+import com.github.games647.fastlogin.core.mojang.BatchingProfileResolver;
+import com.github.games647.fastlogin.core.mojang.BudgetedProfileResolver;
+import com.github.games647.fastlogin.core.mojang.CachedProfileResolver;
+import com.github.games647.fastlogin.core.mojang.DatabaseProfileResolver;
+import com.github.games647.fastlogin.core.mojang.LookupPriority;
+import com.github.games647.fastlogin.core.mojang.MojangProfileResolver;
+import com.github.games647.fastlogin.core.mojang.ProfileResolver;
+import com.github.games647.fastlogin.core.mojang.RateBudget;
+import com.github.games647.fastlogin.core.mojang.SingleFlightProfileResolver;
+import com.github.games647.fastlogin.core.storage.AsyncAuthStorage;
+import com.github.games647.fastlogin.core.storage.AuthStorage;
+import com.github.games647.fastlogin.core.storage.CachedAuthStorage;
+import com.github.games647.fastlogin.core.storage.H2Storage;
+import com.github.games647.fastlogin.core.storage.InMemoryAuthStorage;
+import com.github.games647.fastlogin.core.storage.LogStorage;
 import com.github.games647.fastlogin.core.storage.MySQLStorage;
 import com.github.games647.fastlogin.core.storage.SQLStorage;
 import com.github.games647.fastlogin.core.storage.SQLiteStorage;
+import com.github.games647.fastlogin.core.storage.SQLiteStorage.WalOptions;
+import com.github.games647.fastlogin.core.storage.ShadowAuthStorage;
+import com.github.games647.fastlogin.core.storage.ShardedAuthStorage;
+import com.github.games647.fastlogin.core.storage.StorageLocation;
+import com.github.games647.fastlogin.core.storage.StorageMetrics;
+import com.github.games647.fastlogin.core.storage.StoredProfile;
 import com.google.common.base.Ticker;
 import com.zaxxer.hikari.HikariConfig;
 import net.md_5.bungee.config.Configuration;
@@ -54,15 +75,22 @@ import java.net.Proxy;
 import java.net.Proxy.Type;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toMap;
@@ -76,6 +104,7 @@ import static java.util.stream.Collectors.toSet;
 public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
 
     private static final long MAX_EXPIRE_RATE = 1_000_000;
+    private static final String MOJANG_CACHE_FILE = "mojang-cache.bin";
 
     private final Map<String, String> localeMessages = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Object> pendingLogin = CommonUtil.buildCache(
@@ -86,9 +115,18 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
     private final T plugin;
 
     private MojangResolver resolver;
+    private ProfileResolver profileResolver;
+    private CachedProfileResolver profileCache;
+    private DatabaseProfileResolver sharedProfiles;
+    private SingleFlightProfileResolver coalescingResolver;
+    private BatchingProfileResolver batchingResolver;
+    private RateBudget rateBudget;
 
     private Configuration config;
-    private SQLStorage storage;
+    private SQLStorage sqlStorage;
+    private AuthStorage storage;
+    private AsyncAuthStorage asyncStorage;
+    private ShadowAuthStorage shadowStorage;
     private AntiBotService antiBot;
     private PasswordGenerator<P> passwordGenerator = new DefaultPasswordGenerator<>();
     private AuthPlugin<P> authPlugin;
@@ -144,13 +182,81 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
 //        }
 //        resolver.setOutgoingAddresses(addresses);
 
-        // Initialize the resolver based on the config parameter
-        this.resolver = this.config.getBoolean("useProxyAgnosticResolver", false)
-            ? new ProxyAgnosticMojangResolver(resolverOptions) : new MojangResolver(resolverOptions);
+        this.resolver = createMojangResolver(resolverOptions);
+        this.profileResolver = createProfileResolver(config.getSection("mojang-cache"), proxies);
 
         antiBot = createAntiBotService(config.getSection("anti-bot"));
     }
 
+    private MojangResolver createMojangResolver(Options options) {
+        // Initialize the resolver based on the config parameter
+        return this.config.getBoolean("useProxyAgnosticResolver", false)
+            ? new ProxyAgnosticMojangResolver(options) : new MojangResolver(options);
+    }
+
+    private ProfileResolver createProfileResolver(Configuration cacheSection, Set<Proxy> proxies) {
+        Duration positiveTtl = Duration.ofMinutes(cacheSection.getLong("premium-ttl", 360));
+        Duration negativeTtl = Duration.ofMinutes(cacheSection.getLong("not-found-ttl", 10));
+
+        ProfileResolver mojangResolver = new MojangProfileResolver(resolver);
+        Configuration budgetSection = config.getSection("mojang-budget");
+        Configuration batchSection = config.getSection("mojang-batch");
+        // bulk requests count against the same limit, so they need the budget to share it with the single lookups
+        boolean batching = batchSection.getBoolean("enabled", false);
+        if (budgetSection.getBoolean("enabled", false) || batching) {
+            Map<LookupPriority, Duration> deadlines = new EnumMap<>(LookupPriority.class);
+            deadlines.put(LookupPriority.LOGIN, Duration.ofSeconds(budgetSection.getLong("login-deadline", 5)));
+            deadlines.put(LookupPriority.BACKGROUND,
+                    Duration.ofSeconds(budgetSection.getLong("background-deadline", 60)));
+
+            int requestLimit = config.getInt("mojang-request-limit", 600);
+            rateBudget = new RateBudget(proxies, requestLimit, RateBudget.MOJANG_WINDOW, deadlines);
+            // every route sends its lookups only through its own proxy, so its tokens match the real requests
+            mojangResolver = new BudgetedProfileResolver(rateBudget, route -> {
+                Options routeOptions = new Options();
+                routeOptions.setMaxNameRequests(requestLimit);
+                if (route.getProxy() != null) {
+                    routeOptions.setProxySelector(new RotatingProxySelector(Collections.singleton(route.getProxy())));
+                }
+
+                return new MojangProfileResolver(createMojangResolver(routeOptions));
+            });
+        }
+
+        if (batching) {
+            batchingResolver = new BatchingProfileResolver(mojangResolver, BatchingProfileResolver.BULK_URL,
+                    rateBudget, Duration.ofMillis(batchSection.getLong("max-delay", 50)),
+                    batchSection.getInt("max-size", BatchingProfileResolver.MAX_BATCH_SIZE));
+            mojangResolver = batchingResolver;
+        }
+
+        if (cacheSection.getBoolean("shared", false)) {
+            // the database is connected later - lookups before that go directly to Mojang
+            sharedProfiles = new DatabaseProfileResolver(plugin.getLog(), this::getSqlStorage, mojangResolver,
+                    positiveTtl, negativeTtl);
+            sharedProfiles.enableCleanup(Duration.ofMinutes(cacheSection.getLong("cleanup-interval", 60)),
+                    plugin.getThreadFactory());
+            mojangResolver = sharedProfiles;
+        }
+
+        // cache misses of the same name during a join rush share one request
+        coalescingResolver = new SingleFlightProfileResolver(mojangResolver);
+        mojangResolver = coalescingResolver;
+
+        if (!cacheSection.getBoolean("enabled", false)) {
+            return mojangResolver;
+        }
+
+        profileCache = new CachedProfileResolver(plugin.getLog(), mojangResolver, Ticker.systemTicker(),
+                cacheSection.getInt("max-size", 100_000), positiveTtl, negativeTtl);
+        if (cacheSection.getBoolean("snapshot", true)) {
+            int loaded = profileCache.loadSnapshot(plugin.getPluginFolder().resolve(MOJANG_CACHE_FILE));
+            plugin.getLog().info("Loaded {} cached Mojang lookups", loaded);
+        }
+
+        return profileCache;
+    }
+
     private AntiBotService createAntiBotService(Configuration botSection) {
         RateLimiter rateLimiter;
         if (botSection.getBoolean("enabled", true)) {
@@ -208,10 +314,62 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         return resolver;
     }
 
+    /**
+     * @return name to premium profile lookup including the configured caches
+     */
+    public ProfileResolver getProfileResolver() {
+        return profileResolver;
+    }
+
+    /**
+     * @return the rate limit of the Mojang requests or null if it's disabled
+     */
+    public RateBudget getRateBudget() {
+        return rateBudget;
+    }
+
+    /**
+     * @return the local cache of Mojang lookups or null if it's disabled
+     */
+    public CachedProfileResolver getProfileCache() {
+        return profileCache;
+    }
+
+    /**
+     * @return the underlying database without caches in front of it
+     */
+    public SQLStorage getSqlStorage() {
+        return sqlStorage;
+    }
+
+    /**
+     * @return the underlying database
+     * @deprecated bypasses the profile cache and the shadow storage and only contains the first shard. Use
+     * {@link #getAuthStorage()} for lookups and saves instead.
+     */
+    @Deprecated
     public SQLStorage getStorage() {
+        return sqlStorage;
+    }
+
+    /**
+     * @return the storage for lookups and saves including the enabled caches, shards and shadow storage
+     */
+    public AuthStorage getAuthStorage() {
         return storage;
     }
 
+    /**
+     * @return the storage comparing the database with a candidate or null if the shadow mode is disabled
+     */
+    public ShadowAuthStorage getShadowStorage() {
+        return shadowStorage;
+    }
+
+    public AsyncAuthStorage getAsyncStorage() {
+        return asyncStorage;
+    }
+
     public T getPlugin() {
         return plugin;
     }
@@ -229,6 +387,26 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
 
     public boolean setupDatabase() {
         String type = config.getString("driver");
+        if ("memory".equalsIgnoreCase(type)) {
+            plugin.getLog().warn("Using the in-memory storage. All profiles will be lost on shutdown");
+            storage = new InMemoryAuthStorage();
+            asyncStorage = new AsyncAuthStorage(storage, Runtime.getRuntime().availableProcessors(),
+                    config.getInt("storage-queue-limit", 1_000), plugin.getThreadFactory());
+            return true;
+        }
+
+        if ("log".equalsIgnoreCase(type)) {
+            try {
+                storage = openLogStorage(config.getSection("log-storage"));
+            } catch (IOException | SQLException ex) {
+                plugin.getLog().warn("Failed to open the profile log. Disabling plugin...", ex);
+                return false;
+            }
+
+            asyncStorage = new AsyncAuthStorage(storage, Runtime.getRuntime().availableProcessors(),
+                    config.getInt("storage-queue-limit", 1_000), plugin.getThreadFactory());
+            return true;
+        }
 
         HikariConfig databaseConfig = new HikariConfig();
         String database = config.getString("database");
@@ -237,7 +415,20 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         databaseConfig.setMaxLifetime(config.getInt("lifetime", 30) * 1_000L);
 
         if (type.contains("sqlite")) {
-            storage = new SQLiteStorage(plugin, database, databaseConfig);
+            WalOptions walOptions = null;
+            Configuration sqliteSection = config.getSection("sqlite");
+            if (sqliteSection.getBoolean("wal", false)) {
+                walOptions = new WalOptions(
+                        sqliteSection.getInt("readers", 4),
+                        sqliteSection.getString("synchronous", "NORMAL"),
+                        sqliteSection.getInt("cache-size", 8_192),
+                        sqliteSection.getLong("mmap-size", 64) * 1024 * 1024
+                );
+            }
+
+            sqlStorage = new SQLiteStorage(plugin, database, databaseConfig, walOptions);
+        } else if ("h2".equalsIgnoreCase(type)) {
+            sqlStorage = new H2Storage(plugin, database, databaseConfig);
         } else {
             String host = config.get("host", "");
             int port = config.get("port", 3306);
@@ -255,11 +446,61 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
 
             databaseConfig.setUsername(config.get("username", ""));
             databaseConfig.setPassword(config.getString("password"));
-            storage = new MySQLStorage(plugin, type, host, port, database, databaseConfig, useSSL);
+            MySQLStorage mySQLStorage = new MySQLStorage(plugin, type, host, port, database, databaseConfig, useSSL);
+            List<String> replicas = config.getStringList("replicas");
+            if (!replicas.isEmpty()) {
+                Duration stickiness = Duration.ofSeconds(config.getLong("replica-stickiness", 5));
+                mySQLStorage.enableReadReplicas(replicas, stickiness);
+            }
+
+            sqlStorage = mySQLStorage;
         }
 
+        storage = sqlStorage;
         try {
-            storage.createTables();
+            configureStorage(sqlStorage);
+            if (sharedProfiles != null) {
+                // shards only contain the profiles - the lookups are shared through the main database
+                sqlStorage.createMojangTable();
+                sharedProfiles.deleteExpired();
+            }
+
+            int maxConnections = sqlStorage.getMaxConnections();
+            List<String> shardLocations = config.getStringList("shards");
+            if (!shardLocations.isEmpty()) {
+                ShardedAuthStorage shardedStorage = new ShardedAuthStorage(plugin.getLog(), openShards(shardLocations));
+                storage = shardedStorage;
+                maxConnections = shardedStorage.getMaxConnections();
+            }
+
+            List<SQLStorage> databases = storage instanceof ShardedAuthStorage
+                    ? ((ShardedAuthStorage) storage).getShards() : Collections.singletonList(sqlStorage);
+
+            Configuration shadow = config.getSection("shadow");
+            if (shadow.getBoolean("enabled", false)) {
+                AuthStorage candidate = openShadowStorage(shadow.getString("location", "memory"));
+                shadowStorage = new ShadowAuthStorage(plugin.getLog(), storage, candidate,
+                        shadow.getDouble("read-sample-rate", 0.1), shadow.getInt("queue-limit", 10_000),
+                        plugin.getThreadFactory());
+                storage = shadowStorage;
+            }
+
+            Configuration profileCache = config.getSection("profile-cache");
+            if (profileCache.getBoolean("enabled", false)) {
+                int maxSize = profileCache.getInt("max-size", 50_000);
+                // fall back to the key of older configs
+                long expireMinutes = profileCache.getLong("expire-after-access", 10);
+                Duration expire = Duration.ofMinutes(profileCache.getLong("expire-after-write", expireMinutes));
+                storage = new CachedAuthStorage(storage, maxSize, expire);
+            }
+
+            Configuration warmUp = config.getSection("warm-up");
+            if (warmUp.getBoolean("enabled", true)) {
+                warmUp(databases, warmUp.getInt("preload-profiles", 0));
+            }
+
+            int queueLimit = config.getInt("storage-queue-limit", 1_000);
+            asyncStorage = new AsyncAuthStorage(storage, maxConnections, queueLimit, plugin.getThreadFactory());
             return true;
         } catch (Exception ex) {
             plugin.getLog().warn("Failed to setup database. Disabling plugin...", ex);
@@ -267,6 +508,160 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         }
     }
 
+    private AuthStorage openShadowStorage(String location) throws IOException, SQLException {
+        String pluginFolder = plugin.getPluginFolder().toAbsolutePath().toString();
+        String resolved = location.replace("{pluginDir}", pluginFolder);
+        if ("memory".equalsIgnoreCase(resolved)) {
+            return new InMemoryAuthStorage();
+        }
+
+        Duration lastLoginRefresh = Duration.ofSeconds(config.getLong("last-login-refresh", 0));
+        if (resolved.startsWith("log:")) {
+            return new LogStorage(plugin.getLog(), Paths.get(resolved.substring("log:".length())), false,
+                    lastLoginRefresh);
+        }
+
+        HikariConfig shadowConfig = new HikariConfig();
+        shadowConfig.setConnectionTimeout(config.getInt("timeout", 30) * 1_000L);
+        shadowConfig.setMaxLifetime(config.getInt("lifetime", 30) * 1_000L);
+
+        SQLStorage shadow = StorageLocation.open(plugin.getLog(), plugin.getName() + "-Shadow",
+                plugin.getThreadFactory(), shadowConfig, resolved);
+        try {
+            shadow.setBinaryFormat(config.getBoolean("binary-format", false));
+            shadow.setLastLoginRefreshInterval(lastLoginRefresh);
+            shadow.createTables();
+        } catch (SQLException | RuntimeException ex) {
+            shadow.close();
+            throw ex;
+        }
+
+        return shadow;
+    }
+
+    private void warmUp(List<SQLStorage> databases, int preloadProfiles) {
+        long start = System.nanoTime();
+        int connections = 0;
+        int preloaded = 0;
+        try {
+            for (SQLStorage database : databases) {
+                connections += database.warmUp();
+            }
+
+            if (preloadProfiles > 0 && storage instanceof CachedAuthStorage) {
+                int limit = Math.max(1, preloadProfiles / databases.size());
+                for (SQLStorage database : databases) {
+                    List<StoredProfile> profiles = database.loadRecentProfiles(limit);
+                    ((CachedAuthStorage) storage).preload(profiles);
+                    preloaded += profiles.size();
+                }
+            }
+        } catch (SQLException sqlEx) {
+            // logins will open the remaining connections on demand
+            plugin.getLog().warn("Failed to warm up the database", sqlEx);
+            return;
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        plugin.getLog().info("Database ready after {}ms: prepared {} connections and preloaded {} profiles",
+                millis, connections, preloaded);
+    }
+
+    private LogStorage openLogStorage(Configuration section) throws IOException, SQLException {
+        String pluginFolder = plugin.getPluginFolder().toAbsolutePath().toString();
+        String folderPath = section.getString("folder", "{pluginDir}/profiles");
+        Path folder = Paths.get(folderPath.replace("{pluginDir}", pluginFolder));
+        Duration lastLoginRefresh = Duration.ofSeconds(config.getLong("last-login-refresh", 0));
+
+        LogStorage logStorage = new LogStorage(plugin.getLog(), folder, section.getBoolean("sync-writes", false),
+                lastLoginRefresh);
+        try {
+            Path importFile = Paths.get(section.getString("import", "").replace("{pluginDir}", pluginFolder));
+            if (logStorage.size() == 0 && Files.isRegularFile(importFile)) {
+                SQLiteStorage source = new SQLiteStorage(plugin.getLog(), plugin.getName() + "-Import",
+                        plugin.getThreadFactory(), importFile.toString(), new HikariConfig(), null);
+                try {
+                    long imported = logStorage.importProfiles(source, 1_000);
+                    plugin.getLog().info("Imported {} profiles from {}", imported, importFile);
+                } finally {
+                    source.close();
+                }
+            }
+        } catch (IOException | SQLException | RuntimeException ex) {
+            logStorage.close();
+            throw ex;
+        }
+
+        logStorage.enableCompaction(Duration.ofMinutes(section.getLong("compaction-interval", 60)),
+                plugin.getThreadFactory());
+        return logStorage;
+    }
+
+    private List<SQLStorage> openShards(List<String> shardLocations) throws SQLException {
+        // the main database is always the first shard
+        List<SQLStorage> shards = new ArrayList<>(shardLocations.size() + 1);
+        shards.add(sqlStorage);
+        try {
+            for (String location : shardLocations) {
+                HikariConfig shardConfig = new HikariConfig();
+                shardConfig.setConnectionTimeout(config.getInt("timeout", 30) * 1_000L);
+                shardConfig.setMaxLifetime(config.getInt("lifetime", 30) * 1_000L);
+
+                String poolName = plugin.getName() + "-Shard-" + shards.size();
+                SQLStorage shard = StorageLocation.open(plugin.getLog(), poolName, plugin.getThreadFactory(),
+                        shardConfig, location);
+                shards.add(shard);
+                configureStorage(shard);
+            }
+        } catch (SQLException | RuntimeException ex) {
+            for (SQLStorage shard : shards.subList(1, shards.size())) {
+                shard.close();
+            }
+
+            throw ex;
+        }
+
+        return shards;
+    }
+
+    private void configureStorage(SQLStorage sqlStorage) throws SQLException {
+        sqlStorage.setBinaryFormat(config.getBoolean("binary-format", false));
+        sqlStorage.setLastLoginRefreshInterval(Duration.ofSeconds(config.getLong("last-login-refresh", 0)));
+        sqlStorage.createTables();
+
+        Configuration metrics = config.getSection("database-metrics");
+        StorageMetrics storageMetrics = sqlStorage.getMetrics();
+        storageMetrics.setSlowQueryThreshold(Duration.ofMillis(metrics.getLong("slow-query-threshold", 500)));
+        storageMetrics.setQueryTimeout(Duration.ofSeconds(metrics.getLong("query-timeout", 0)));
+        long reportInterval = metrics.getLong("report-interval", 0);
+        if (reportInterval > 0) {
+            storageMetrics.enableReporting(Duration.ofMinutes(reportInterval), plugin.getThreadFactory());
+        }
+
+        Configuration writeBehind = config.getSection("write-behind");
+        if (writeBehind.getBoolean("enabled", false)) {
+            int batchSize = writeBehind.getInt("batch-size", 100);
+            int maxQueueSize = writeBehind.getInt("max-queue-size", 10_000);
+            Duration flushInterval = Duration.ofMillis(writeBehind.getLong("flush-interval", 1_000));
+            sqlStorage.enableWriteBehind(batchSize, maxQueueSize, flushInterval);
+        }
+
+        Configuration retention = config.getSection("retention");
+        if (retention.getBoolean("enabled", false)) {
+            int days = retention.getInt("days", 180);
+            int batchSize = retention.getInt("batch-size", 500);
+            Duration interval = Duration.ofHours(retention.getLong("interval", 24));
+            sqlStorage.enableRetention(days, batchSize, interval);
+        }
+
+        Configuration nameFilter = config.getSection("name-filter");
+        if (nameFilter.getBoolean("enabled", false)) {
+            long expectedNames = nameFilter.getLong("expected-names", 1_000_000);
+            double falsePositiveRate = nameFilter.getDouble("false-positive-rate", 0.01);
+            sqlStorage.enableNameFilter(expectedNames, falsePositiveRate);
+        }
+    }
+
     public Configuration getConfig() {
         return config;
     }
@@ -328,8 +723,49 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
     public void close() {
         plugin.getLog().info("Safely shutting down scheduler. This could take up to one minute.");
 
+        if (asyncStorage != null) {
+            asyncStorage.close();
+        }
+
         if (storage != null) {
             storage.close();
         }
+
+        if (profileCache != null) {
+            plugin.getLog().info("Mojang cache saved {} of {} requests ({} hit ratio)", profileCache.getHits(),
+                    profileCache.getHits() + profileCache.getMisses(),
+                    String.format("%.1f%%", profileCache.getHitRatio() * 100));
+            if (config.getSection("mojang-cache").getBoolean("snapshot", true)) {
+                try {
+                    profileCache.saveSnapshot(plugin.getPluginFolder().resolve(MOJANG_CACHE_FILE));
+                } catch (IOException ioEx) {
+                    plugin.getLog().warn("Failed to save the Mojang cache", ioEx);
+                }
+            }
+        }
+
+        if (coalescingResolver != null && coalescingResolver.getCoalesced() > 0) {
+            plugin.getLog().info("Coalesced {} concurrent Mojang lookups into {} requests",
+                    coalescingResolver.getCoalesced(), coalescingResolver.getRequests());
+        }
+
+        if (rateBudget != null) {
+            plugin.getLog().info("Mojang rate budget: {} requests remaining, {} lookups timed out, login wait {}",
+                    rateBudget.getRemaining(), rateBudget.getTimeouts(), rateBudget.getWaitTime(LookupPriority.LOGIN));
+        }
+
+        if (batchingResolver != null && batchingResolver.getBulkRequests() > 0) {
+            plugin.getLog().info("Resolved {} names with {} bulk requests", batchingResolver.getBatchedNames(),
+                    batchingResolver.getBulkRequests());
+        }
+
+        if (sharedProfiles != null) {
+            plugin.getLog().info("Shared Mojang cache answered {} of {} requests", sharedProfiles.getHits(),
+                    sharedProfiles.getHits() + sharedProfiles.getMisses());
+        }
+
+        if (profileResolver != null) {
+            profileResolver.close();
+        }
     }
 }
@@ -34,6 +34,8 @@ import com.github.games647.fastlogin.core.storage.StoredProfile;
 import net.md_5.bungee.config.Configuration;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
 
@@ -48,15 +50,51 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
     }
 
     public void onLogin(String username, S source) {
+        if (isHandledAsBedrock(username, source)) {
+            return;
+        }
+
+        StoredProfile profile = core.getAuthStorage().loadProfile(username);
+        onProfileLoaded(username, source, profile);
+    }
+
+    /**
+     * Non-blocking variant of {@link #onLogin(String, LoginSource)}. The profile is loaded by the storage executor
+     * without holding a thread while waiting for a database connection. All other checks, which could request the
+     * Mojang API, run on the given executor.
+     *
+     * @param username player name
+     * @param source connection of the player
+     * @param executor executor for the blocking checks
+     * @return future that completes after the login was handled
+     */
+    public CompletableFuture<Void> onLoginAsync(String username, S source, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> isHandledAsBedrock(username, source), executor)
+                .thenCompose(handled -> {
+                    if (handled) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    return core.getAsyncStorage().loadProfile(username)
+                            .thenAcceptAsync(profile -> onProfileLoaded(username, source, profile), executor);
+                })
+                .exceptionally(error -> {
+                    core.getPlugin().getLog().error("Failed to check premium state of {}", username, error);
+                    return null;
+                });
+    }
+
+    private boolean isHandledAsBedrock(String username, S source) {
         //check if the player is connecting through Bedrock Edition
         if (bedrockService != null && bedrockService.isBedrockConnection(username)) {
             //perform Bedrock specific checks and skip Java checks if no longer needed
-            if (bedrockService.performChecks(username, source)) {
-                return;
-            }
+            return bedrockService.performChecks(username, source);
         }
 
-        StoredProfile profile = core.getStorage().loadProfile(username);
+        return false;
+    }
+
+    private void onProfileLoaded(String username, S source, StoredProfile profile) {
         //can't be a premium Java player, if it's not saved in the database
         if (profile == null) {
             return;
@@ -106,7 +144,7 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
             Configuration config = core.getConfig();
             Optional<Profile> premiumUUID = Optional.empty();
             if (config.get("nameChangeCheck", false) || config.get("autoRegister", false)) {
-                premiumUUID = core.getResolver().findProfile(username);
+                premiumUUID = core.getProfileResolver().findProfile(username);
             }
 
             if (!premiumUUID.isPresent()
@@ -152,7 +190,7 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
     private boolean isNameChanged(S source, String username, Profile profile) {
         //user not exists in the db
         if (core.getConfig().get("nameChangeCheck", false)) {
-            StoredProfile storedProfile = core.getStorage().loadProfile(profile.getId());
+            StoredProfile storedProfile = core.getAuthStorage().loadProfile(profile.getId());
             if (storedProfile != null) {
                 if (storedProfile.getFloodgate() == FloodgateState.TRUE) {
                     core.getPlugin().getLog()
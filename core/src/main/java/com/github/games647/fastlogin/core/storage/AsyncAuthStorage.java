@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade of a storage. The blocking calls run on a dedicated executor with as many threads as the
+ * storage has connections, so waiting callers only hold a future instead of a parked thread. Requests beyond the
+ * queue limit fail immediately with a {@link RejectedExecutionException} instead of piling up during join waves.
+ */
+public class AsyncAuthStorage {
+
+    private static final long SHUTDOWN_TIMEOUT = 30;
+
+    private final AuthStorage storage;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param storage blocking storage
+     * @param threads number of concurrent requests - usually the size of the connection pool
+     * @param queueLimit maximum number of requests waiting for a free thread
+     * @param threadFactory platform thread factory or null for the default one
+     */
+    public AsyncAuthStorage(AuthStorage storage, int threads, int queueLimit, ThreadFactory threadFactory) {
+        this.storage = storage;
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLimit));
+        if (threadFactory != null) {
+            executor.setThreadFactory(threadFactory);
+        }
+
+        // threads are only kept while there is work
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public CompletableFuture<StoredProfile> loadProfile(String name) {
+        return submit(() -> storage.loadProfile(name));
+    }
+
+    public CompletableFuture<StoredProfile> loadProfile(UUID uuid) {
+        return submit(() -> storage.loadProfile(uuid));
+    }
+
+    public CompletableFuture<Map<String, StoredProfile>> loadProfilesByName(Collection<String> names) {
+        return submit(() -> storage.loadProfilesByName(names));
+    }
+
+    public CompletableFuture<Map<UUID, StoredProfile>> loadProfilesById(Collection<UUID> uuids) {
+        return submit(() -> storage.loadProfilesById(uuids));
+    }
+
+    public CompletableFuture<Integer> deleteProfile(String name) {
+        return submit(() -> storage.deleteProfile(name));
+    }
+
+    public CompletableFuture<Void> save(StoredProfile playerProfile) {
+        return submit(() -> {
+            storage.save(playerProfile);
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException rejectedEx) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(rejectedEx);
+            return future;
+        }
+    }
+
+    /**
+     * @return the blocking storage
+     */
+    public AuthStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return number of requests waiting for a free thread
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Finish the queued requests. The storage itself has to be closed separately.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -25,6 +25,9 @@
  */
 package com.github.games647.fastlogin.core.storage;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public interface AuthStorage {
@@ -32,6 +35,44 @@ public interface AuthStorage {
 
     StoredProfile loadProfile(UUID uuid);
 
+    /**
+     * Load the profiles of multiple players at once. Like {@link #loadProfile(String)}, unknown names are mapped to
+     * a new profile.
+     *
+     * @param names player names
+     * @return profiles keyed by the requested name. Names that couldn't be loaded because of a database error are
+     * missing.
+     */
+    default Map<String, StoredProfile> loadProfilesByName(Collection<String> names) {
+        Map<String, StoredProfile> profiles = new HashMap<>(names.size());
+        for (String name : names) {
+            StoredProfile profile = loadProfile(name);
+            if (profile != null) {
+                profiles.put(name, profile);
+            }
+        }
+
+        return profiles;
+    }
+
+    /**
+     * Load the profiles of multiple players at once.
+     *
+     * @param uuids premium UUIDs
+     * @return profiles keyed by the requested UUID. UUIDs without a stored profile are missing.
+     */
+    default Map<UUID, StoredProfile> loadProfilesById(Collection<UUID> uuids) {
+        Map<UUID, StoredProfile> profiles = new HashMap<>(uuids.size());
+        for (UUID uuid : uuids) {
+            StoredProfile profile = loadProfile(uuid);
+            if (profile != null) {
+                profiles.put(uuid, profile);
+            }
+        }
+
+        return profiles;
+    }
+
     int deleteProfile(String name);
 
     void save(StoredProfile playerProfile);
@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts the text UUID and IP columns of existing rows into the binary columns in small chunks. Each chunk is a
+ * short transaction, so logins can continue while the table is converted. The completed conversion is recorded in the
+ * schema versions, so it only runs once.
+ */
+class BinaryFormatConverter implements Runnable {
+
+    private static final String TABLE = SQLStorage.PREMIUM_TABLE;
+
+    private static final String LOAD_CHUNK = "SELECT `UserID`, `UUID`, `LastIp` FROM `" + TABLE + "` "
+            + "WHERE `UserID` > ? AND (`UUID` IS NOT NULL OR `LastIp` <> '') "
+            + "ORDER BY `UserID` LIMIT ?";
+
+    // skip rows that were saved in the meantime
+    private static final String CONVERT_ROW = "UPDATE `" + TABLE + "` "
+            + "SET `UUID`=?, `UUIDBin`=?, `LastIp`=?, `LastIpBin`=? "
+            + "WHERE `UserID`=? AND `UUIDBin` IS NULL AND `LastIpBin` IS NULL AND `LastIp`=?";
+
+    private static final int CHUNK_SIZE = 1_000;
+    private static final long PAUSE_MILLIS = 50;
+
+    private final Logger log;
+    private final SQLStorage storage;
+
+    private volatile boolean running = true;
+
+    BinaryFormatConverter(Logger log, SQLStorage storage) {
+        this.log = log;
+        this.storage = storage;
+    }
+
+    @Override
+    public void run() {
+        long lastId = 0;
+        try {
+            while (running) {
+                long nextId = convertChunk(lastId);
+                if (nextId == lastId) {
+                    break;
+                }
+
+                lastId = nextId;
+                Thread.sleep(PAUSE_MILLIS);
+            }
+
+            if (running) {
+                storage.completeBinaryConversion();
+                log.info("Converted existing profiles to the binary storage format");
+            }
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException sqlEx) {
+            log.error("Failed to convert profiles to the binary format after id {}", lastId, sqlEx);
+        }
+    }
+
+    private long convertChunk(long lastId) throws SQLException {
+        try (Connection con = storage.dataSource.getConnection()) {
+            con.setAutoCommit(false);
+
+            long maxId = lastId;
+            try (PreparedStatement loadStmt = con.prepareStatement(LOAD_CHUNK);
+                 PreparedStatement convertStmt = con.prepareStatement(CONVERT_ROW)) {
+                loadStmt.setLong(1, lastId);
+                loadStmt.setInt(2, CHUNK_SIZE);
+
+                try (ResultSet resultSet = loadStmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        maxId = resultSet.getLong(1);
+                        addConversion(convertStmt, maxId, resultSet.getString(2), resultSet.getString(3));
+                    }
+                }
+
+                convertStmt.executeBatch();
+                con.commit();
+            } catch (SQLException sqlEx) {
+                con.rollback();
+                throw sqlEx;
+            }
+
+            return maxId;
+        }
+    }
+
+    private void addConversion(PreparedStatement stmt, long rowId, String uuid, String lastIp) throws SQLException {
+        byte[] binaryIp = BinaryColumns.fromAddress(lastIp);
+        byte[] binaryId = uuid == null ? null : BinaryColumns.fromUUID(UUIDAdapter.parseId(uuid));
+
+        stmt.setString(1, null);
+        stmt.setBytes(2, binaryId);
+        // keep values that are not IP literals as text
+        stmt.setString(3, binaryIp == null ? lastIp : "");
+        stmt.setBytes(4, binaryIp);
+        stmt.setLong(5, rowId);
+        stmt.setString(6, lastIp);
+        stmt.addBatch();
+    }
+
+    void stop() {
+        running = false;
+    }
+}
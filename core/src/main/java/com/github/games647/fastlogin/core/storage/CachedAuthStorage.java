@@ -0,0 +1,276 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache in front of another storage. Profiles are indexed by their lower-cased name and by their UUID,
+ * so reconnecting players don't need a database round-trip. Both indexes point to the same profile instance, which
+ * makes updates visible independent of the lookup method.
+ * <p>
+ * Entries expire a fixed time after they were loaded, even if they are read or saved frequently. Otherwise, changes of
+ * other instances sharing the database would never become visible for active players. Profiles whose row was deleted
+ * in the meantime are dropped on the next save.
+ */
+public class CachedAuthStorage implements AuthStorage {
+
+    private final AuthStorage delegate;
+
+    private final Cache<String, StoredProfile> byName;
+    private final Cache<UUID, StoredProfile> byId;
+
+    public CachedAuthStorage(AuthStorage delegate, int maxSize, Duration expireAfterWrite) {
+        this(delegate, maxSize, expireAfterWrite, Ticker.systemTicker());
+    }
+
+    CachedAuthStorage(AuthStorage delegate, int maxSize, Duration expireAfterWrite, Ticker ticker) {
+        this.delegate = delegate;
+
+        this.byName = buildCache(maxSize, expireAfterWrite, ticker);
+        this.byId = buildCache(maxSize, expireAfterWrite, ticker);
+    }
+
+    private static <K> Cache<K, StoredProfile> buildCache(int maxSize, Duration expireAfterWrite, Ticker ticker) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .ticker(ticker)
+                .expireAfterWrite(expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .<K, StoredProfile>build();
+    }
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        String key = toKey(name);
+
+        StoredProfile cached = byName.getIfPresent(key);
+        if (cached != null) {
+            // the player could have been renamed in the meantime
+            if (cached.getName().equalsIgnoreCase(name) && !cached.isDeleted()) {
+                return cached;
+            }
+
+            byName.invalidate(key);
+        }
+
+        StoredProfile profile = delegate.loadProfile(name);
+        if (profile == null) {
+            // database error - don't cache it
+            return null;
+        }
+
+        // keep the instance that is already used by another thread
+        StoredProfile previous = byName.asMap().putIfAbsent(key, profile);
+        if (previous != null) {
+            return previous;
+        }
+
+        indexId(profile);
+        return profile;
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        StoredProfile cached = byId.getIfPresent(uuid);
+        if (cached != null) {
+            // the id could be removed or changed after switching to cracked mode
+            if (uuid.equals(cached.getId()) && !cached.isDeleted()) {
+                return cached;
+            }
+
+            byId.invalidate(uuid);
+        }
+
+        StoredProfile profile = delegate.loadProfile(uuid);
+        if (profile == null) {
+            return null;
+        }
+
+        StoredProfile previous = byId.asMap().putIfAbsent(uuid, profile);
+        if (previous != null) {
+            return previous;
+        }
+
+        byName.asMap().putIfAbsent(toKey(profile.getName()), profile);
+        return profile;
+    }
+
+    @Override
+    public Map<String, StoredProfile> loadProfilesByName(Collection<String> names) {
+        Map<String, StoredProfile> profiles = new HashMap<>(names.size());
+
+        Collection<String> missing = new ArrayList<>();
+        for (String name : names) {
+            StoredProfile cached = byName.getIfPresent(toKey(name));
+            if (cached != null && cached.getName().equalsIgnoreCase(name)) {
+                profiles.put(name, cached);
+            } else {
+                missing.add(name);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            delegate.loadProfilesByName(missing).forEach((name, profile) -> {
+                StoredProfile previous = byName.asMap().putIfAbsent(toKey(name), profile);
+                if (previous == null) {
+                    indexId(profile);
+                    profiles.put(name, profile);
+                } else {
+                    profiles.put(name, previous);
+                }
+            });
+        }
+
+        return profiles;
+    }
+
+    @Override
+    public Map<UUID, StoredProfile> loadProfilesById(Collection<UUID> uuids) {
+        Map<UUID, StoredProfile> profiles = new HashMap<>(uuids.size());
+
+        Collection<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            StoredProfile cached = byId.getIfPresent(uuid);
+            if (cached != null && uuid.equals(cached.getId())) {
+                profiles.put(uuid, cached);
+            } else {
+                missing.add(uuid);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            delegate.loadProfilesById(missing).forEach((uuid, profile) -> {
+                StoredProfile previous = byId.asMap().putIfAbsent(uuid, profile);
+                if (previous == null) {
+                    byName.asMap().putIfAbsent(toKey(profile.getName()), profile);
+                    profiles.put(uuid, profile);
+                } else {
+                    profiles.put(uuid, previous);
+                }
+            });
+        }
+
+        return profiles;
+    }
+
+    @Override
+    public int deleteProfile(String name) {
+        StoredProfile removed = byName.asMap().remove(toKey(name));
+        if (removed != null && removed.getId() != null) {
+            byId.invalidate(removed.getId());
+        }
+
+        return delegate.deleteProfile(name);
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        delegate.save(playerProfile);
+        if (playerProfile.isDeleted()) {
+            // the next lookup loads the current state
+            invalidate(playerProfile);
+            return;
+        }
+
+        // the instance is shared already - a put would reset the expiry of active players
+        StoredProfile cached = byName.asMap().putIfAbsent(toKey(playerProfile.getName()), playerProfile);
+        if (cached == null || cached == playerProfile) {
+            // the id could be assigned with this save
+            indexId(playerProfile);
+        }
+    }
+
+    private void invalidate(StoredProfile profile) {
+        byName.asMap().remove(toKey(profile.getName()), profile);
+        UUID id = profile.getId();
+        if (id != null) {
+            byId.asMap().remove(id, profile);
+        }
+    }
+
+    /**
+     * Add already loaded profiles, for example the recently active players on startup. Cached entries are kept.
+     *
+     * @param profiles profiles loaded from the delegate
+     */
+    public void preload(Collection<StoredProfile> profiles) {
+        for (StoredProfile profile : profiles) {
+            if (byName.asMap().putIfAbsent(toKey(profile.getName()), profile) == null) {
+                indexId(profile);
+            }
+        }
+    }
+
+    private void indexId(StoredProfile profile) {
+        UUID id = profile.getId();
+        if (id != null) {
+            byId.asMap().putIfAbsent(id, profile);
+        }
+    }
+
+    private static String toKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the storage behind this cache
+     */
+    public AuthStorage getDelegate() {
+        return delegate;
+    }
+
+    public long getSize() {
+        return byName.size();
+    }
+
+    public CacheStats getNameStats() {
+        return byName.stats();
+    }
+
+    public CacheStats getIdStats() {
+        return byId.stats();
+    }
+
+    @Override
+    public void close() {
+        byName.invalidateAll();
+        byId.invalidateAll();
+        delegate.close();
+    }
+}
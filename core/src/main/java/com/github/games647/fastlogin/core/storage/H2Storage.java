@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.PlatformPlugin;
+import com.zaxxer.hikari.HikariConfig;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Embedded H2 database in its MySQL compatibility mode. It's meant as fast local stand-in for benchmarks and load
+ * tests. Use {@code mem:name} as database to keep everything in memory. The H2 driver has to be on the classpath.
+ */
+public class H2Storage extends SQLStorage {
+
+    private static final String H2_PREFIX = "jdbc:h2:";
+    // keep the case of the names for the metadata lookups and keep an in-memory database until the JVM exits
+    // instead of dropping it with the last connection
+    private static final String H2_OPTIONS = ";MODE=MySQL;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE"
+            + ";DB_CLOSE_DELAY=-1";
+
+    public H2Storage(PlatformPlugin<?> plugin, String database, HikariConfig config) {
+        this(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(),
+                database.replace("{pluginDir}", plugin.getPluginFolder().toAbsolutePath().toString()), config);
+    }
+
+    /**
+     * @param log logger for database errors
+     * @param poolName name of the connection pool
+     * @param threadFactory factory for background threads or null
+     * @param database {@code mem:name} or the path to the database file without extension
+     * @param config pool settings
+     */
+    public H2Storage(Logger log, String poolName, ThreadFactory threadFactory, String database,
+                     HikariConfig config) {
+        super(log, poolName, threadFactory, setParams(config, database));
+    }
+
+    private static HikariConfig setParams(HikariConfig config, String database) {
+        config.setJdbcUrl(H2_PREFIX + database + H2_OPTIONS);
+        return config;
+    }
+
+    @Override
+    protected String getLastLoginBefore() {
+        return "`LastLogin` < DATEADD(DAY, -1 * ?, CURRENT_TIMESTAMP)";
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Snapshot;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Storage without any I/O for benchmarks and load simulations. It behaves like a database table: every lookup
+ * returns a new profile instance and changes are only visible after saving them. Nothing survives a restart.
+ * <p>
+ * Lookups only read concurrent maps. Writes are serialized to keep the name and UUID indexes consistent.
+ */
+public class InMemoryAuthStorage implements AuthStorage {
+
+    private final ConcurrentMap<Long, Snapshot> rows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> byName = new ConcurrentHashMap<>();
+    // like the UUID column of the table, UUIDs are not unique - the index points to the newest row
+    private final ConcurrentMap<UUID, Long> byId = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastRowId = new AtomicLong();
+    // a j.u.c lock doesn't pin virtual threads
+    private final Lock writeLock = new ReentrantLock();
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        StoredProfile profile = load(byName.get(toKey(name)));
+        if (profile == null) {
+            return new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+        }
+
+        return profile;
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        return load(byId.get(uuid));
+    }
+
+    private StoredProfile load(Long rowId) {
+        if (rowId == null) {
+            return null;
+        }
+
+        Snapshot row = rows.get(rowId);
+        if (row == null) {
+            return null;
+        }
+
+        return new StoredProfile(row.getRowId(), row.getId(), row.getName(), row.isOnlinemodePreferred(),
+                row.getFloodgate(), row.getLastIp(), row.getLastLogin());
+    }
+
+    @Override
+    public int deleteProfile(String name) {
+        writeLock.lock();
+        try {
+            Long rowId = byName.remove(toKey(name));
+            if (rowId == null) {
+                return 0;
+            }
+
+            Snapshot row = rows.remove(rowId);
+            if (row != null && row.getId() != null) {
+                byId.remove(row.getId(), rowId);
+            }
+
+            return 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        playerProfile.getSaveLock().lock();
+        try {
+            Snapshot snapshot = playerProfile.takeSnapshot();
+            writeLock.lock();
+            try {
+                long rowId = snapshot.getRowId();
+                if (rowId < 0 || !rows.containsKey(rowId)) {
+                    // another instance could have inserted the same name - update it like the SQL upsert
+                    Long existing = byName.get(toKey(snapshot.getName()));
+                    rowId = existing == null ? lastRowId.incrementAndGet() : existing;
+                    playerProfile.setRowId(rowId);
+                }
+
+                playerProfile.setLastLogin(Instant.now());
+                Snapshot row = playerProfile.getSnapshot();
+                Snapshot old = rows.put(rowId, row);
+                if (old != null && !toKey(old.getName()).equals(toKey(row.getName()))) {
+                    byName.remove(toKey(old.getName()), rowId);
+                }
+
+                if (old != null && old.getId() != null && !old.getId().equals(row.getId())) {
+                    byId.remove(old.getId(), rowId);
+                }
+
+                byName.put(toKey(row.getName()), rowId);
+                if (row.getId() != null) {
+                    byId.put(row.getId(), rowId);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            playerProfile.getSaveLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of stored profiles
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    private static String toKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
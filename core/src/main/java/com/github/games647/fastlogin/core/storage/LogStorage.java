@@ -0,0 +1,857 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Field;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Snapshot;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Storage engine for single servers without JDBC. Every change is appended to a log file as a checksummed record.
+ * A memory-mapped hash index points from the row id, the lower-cased name and the UUID to the newest record, so a
+ * lookup is a hash probe and a single positional read.
+ * <p>
+ * The index is only trusted after a clean shutdown. Otherwise, it's rebuilt by scanning the log. The scan stops at
+ * the first record with an invalid checksum, which is a partially written record of the crash, and cuts it off.
+ * Outdated records are removed by a periodic compaction that rewrites the log with only the current records.
+ */
+public class LogStorage implements AuthStorage {
+
+    static final String LOG_FILE = "profiles.log";
+    static final String INDEX_FILE = "profiles.idx";
+
+    private static final int INDEX_MAGIC = 0x464c4958;
+    private static final int INDEX_VERSION = 1;
+
+    // magic, version, capacity, clean flag, log length, next row id, live bytes
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_POS = 8;
+    private static final int CLEAN_POS = 12;
+    private static final int LOG_LENGTH_POS = 16;
+    private static final int NEXT_ROW_POS = 24;
+    private static final int LIVE_BYTES_POS = 32;
+
+    private static final int MIN_CAPACITY = 1 << 12;
+    private static final int MAX_CAPACITY = 1 << 24;
+
+    // payload length and checksum
+    private static final int RECORD_HEADER_SIZE = 8;
+    // names have at most 16 characters and addresses a few more - anything above is a corrupt length
+    private static final int MAX_PAYLOAD_SIZE = 1_024;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+
+    private static final int FLAG_HAS_ID = 1;
+    private static final int FLAG_PREMIUM = 1 << 1;
+
+    // skip compactions of small logs - rewriting them doesn't save much
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private static final HashFunction KEY_HASH = Hashing.sipHash24();
+
+    private final Logger log;
+    private final Path logFile;
+    private final Path indexFile;
+    private final boolean syncWrites;
+    private final Duration lastLoginRefresh;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel logChannel;
+    private long logLength;
+    private long liveBytes;
+    private long nextRowId = 1;
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer indexBuffer;
+    private int capacity;
+    private MappedHashIndex byRow;
+    private MappedHashIndex byName;
+    private MappedHashIndex byId;
+
+    private ScheduledExecutorService compactor;
+
+    /**
+     * @param log logger for errors
+     * @param folder directory of the log and index file
+     * @param syncWrites flush every write to the disk before returning
+     * @param lastLoginRefresh minimum time between two writes of an unchanged profile
+     * @throws IOException if the files couldn't be opened
+     */
+    public LogStorage(Logger log, Path folder, boolean syncWrites, Duration lastLoginRefresh) throws IOException {
+        this.log = log;
+        this.logFile = folder.resolve(LOG_FILE);
+        this.indexFile = folder.resolve(INDEX_FILE);
+        this.syncWrites = syncWrites;
+        this.lastLoginRefresh = lastLoginRefresh;
+
+        Files.createDirectories(folder);
+        logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            if (!loadIndex()) {
+                recover();
+            }
+
+            // a crash from now on leaves the index unclean
+            indexBuffer.put(CLEAN_POS, (byte) 0);
+            indexBuffer.force();
+        } catch (IOException | RuntimeException ex) {
+            logChannel.close();
+            indexChannel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Check the log for outdated records in the given interval and rewrite it if they use more than half of it.
+     *
+     * @param interval time between two checks
+     * @param threadFactory factory for the background thread or null
+     */
+    public void enableCompaction(Duration interval, ThreadFactory threadFactory) {
+        if (compactor != null) {
+            return;
+        }
+
+        if (threadFactory == null) {
+            compactor = Executors.newSingleThreadScheduledExecutor();
+        } else {
+            compactor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+
+        long minutes = Math.max(1, interval.toMinutes());
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compactIfWasteful();
+            } catch (IOException ioEx) {
+                log.error("Failed to compact the profile log", ioEx);
+            }
+        }, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    private boolean loadIndex() throws IOException {
+        long indexSize = indexChannel.size();
+        if (indexSize < HEADER_SIZE) {
+            return false;
+        }
+
+        MappedByteBuffer header = indexChannel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+        int storedCapacity = header.getInt(CAPACITY_POS);
+        if (header.getInt(0) != INDEX_MAGIC || header.getInt(4) != INDEX_VERSION || header.get(CLEAN_POS) != 1
+                || header.getLong(LOG_LENGTH_POS) != logChannel.size()
+                || storedCapacity < MIN_CAPACITY || storedCapacity > MAX_CAPACITY
+                || Integer.bitCount(storedCapacity) != 1 || indexSize < getIndexSize(storedCapacity)) {
+            log.info("Profile index wasn't closed cleanly. Rebuilding it from the log");
+            return false;
+        }
+
+        mapIndex(storedCapacity);
+        logLength = indexBuffer.getLong(LOG_LENGTH_POS);
+        nextRowId = indexBuffer.getLong(NEXT_ROW_POS);
+        liveBytes = indexBuffer.getLong(LIVE_BYTES_POS);
+        return true;
+    }
+
+    private void recover() throws IOException {
+        long fileSize = logChannel.size();
+        Map<Long, Long> rows = new HashMap<>();
+        long position = 0;
+        while (position < fileSize) {
+            Record record = readRecord(position, fileSize);
+            if (record == null) {
+                log.warn("Found incomplete profile record at position {}. Discarding {} bytes", position,
+                        fileSize - position);
+                logChannel.truncate(position);
+                break;
+            }
+
+            if (record.type == TYPE_PUT) {
+                rows.put(record.rowId, position);
+            } else {
+                rows.remove(record.rowId);
+            }
+
+            nextRowId = Math.max(nextRowId, record.rowId + 1);
+            position += record.size;
+        }
+
+        logLength = position;
+        long[] offsets = rows.values().stream().mapToLong(Long::longValue).toArray();
+        rebuildIndex(offsets, getCapacityFor(offsets.length));
+    }
+
+    private static int getCapacityFor(int entries) {
+        // keep the tables at most half full
+        int needed = Integer.highestOneBit(Math.max(1, entries) * 4 - 1) << 1;
+        return Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, needed));
+    }
+
+    private static long getIndexSize(int capacity) {
+        return HEADER_SIZE + 3L * capacity * MappedHashIndex.SLOT_SIZE;
+    }
+
+    private void mapIndex(int newCapacity) throws IOException {
+        indexBuffer = indexChannel.map(MapMode.READ_WRITE, 0, getIndexSize(newCapacity));
+        capacity = newCapacity;
+
+        int tableSize = newCapacity * MappedHashIndex.SLOT_SIZE;
+        byRow = new MappedHashIndex(slice(HEADER_SIZE, tableSize), newCapacity);
+        byName = new MappedHashIndex(slice(HEADER_SIZE + tableSize, tableSize), newCapacity);
+        byId = new MappedHashIndex(slice(HEADER_SIZE + 2 * tableSize, tableSize), newCapacity);
+    }
+
+    private ByteBuffer slice(int start, int length) {
+        ByteBuffer duplicate = indexBuffer.duplicate();
+        duplicate.position(start);
+        duplicate.limit(start + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * Replace the index with entries for the given records. They are added in the order of the writes, so the newest
+     * record of a duplicate UUID wins.
+     */
+    private void rebuildIndex(long[] offsets, int newCapacity) throws IOException {
+        Arrays.sort(offsets);
+
+        mapIndex(newCapacity);
+        byRow.clear();
+        byName.clear();
+        byId.clear();
+
+        indexBuffer.putInt(0, INDEX_MAGIC);
+        indexBuffer.putInt(4, INDEX_VERSION);
+        indexBuffer.putInt(CAPACITY_POS, newCapacity);
+
+        liveBytes = 0;
+        for (long offset : offsets) {
+            Record record = readRecord(offset, logLength);
+            if (record == null) {
+                throw new IOException("Unreadable profile record at position " + offset);
+            }
+
+            addToIndex(record, offset);
+            liveBytes += record.size;
+        }
+    }
+
+    private void addToIndex(Record record, long offset) {
+        long rowId = record.rowId;
+        byRow.put(hashRow(rowId), offset, existing -> isRow(existing, rowId));
+
+        String name = record.name;
+        byName.put(hashName(name), offset, existing -> hasName(existing, name));
+        if (record.id != null) {
+            UUID id = record.id;
+            // UUIDs aren't unique like in the table - the newest row wins
+            byId.put(hashId(id), offset, existing -> hasId(existing, id));
+        }
+    }
+
+    private void removeFromIndex(Record record) {
+        long rowId = record.rowId;
+        byRow.remove(hashRow(rowId), existing -> isRow(existing, rowId));
+        byName.remove(hashName(record.name), existing -> isRow(existing, rowId));
+        if (record.id != null) {
+            byId.remove(hashId(record.id), existing -> isRow(existing, rowId));
+        }
+    }
+
+    private void ensureIndexCapacity() throws IOException {
+        if (byRow.isCrowded() || byName.isCrowded() || byId.isCrowded()) {
+            // also drops the removed entries, which could be the reason instead of the number of profiles
+            int newCapacity = getCapacityFor(byRow.size() + 1);
+            if (newCapacity == capacity && capacity == MAX_CAPACITY && byRow.size() >= capacity / 2) {
+                throw new IOException("Profile index is full");
+            }
+
+            rebuildIndex(getLiveOffsets(), newCapacity);
+        }
+    }
+
+    private long[] getLiveOffsets() {
+        long[] offsets = new long[byRow.size()];
+        int[] index = {0};
+        byRow.forEach(offset -> offsets[index[0]++] = offset);
+        return offsets;
+    }
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        lock.readLock().lock();
+        try {
+            long offset = byName.get(hashName(name), existing -> hasName(existing, name));
+            if (offset != MappedHashIndex.NOT_FOUND) {
+                return readProfile(offset);
+            }
+        } catch (IOException ioEx) {
+            log.error("Failed to query profile: {}", name, ioEx);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            long offset = byId.get(hashId(uuid), existing -> hasId(existing, uuid));
+            if (offset != MappedHashIndex.NOT_FOUND) {
+                return readProfile(offset);
+            }
+        } catch (IOException ioEx) {
+            log.error("Failed to query profile: {}", uuid, ioEx);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return null;
+    }
+
+    private StoredProfile readProfile(long offset) throws IOException {
+        Record record = readRecord(offset, logLength);
+        if (record == null) {
+            throw new IOException("Unreadable profile record at position " + offset);
+        }
+
+        return record.toProfile();
+    }
+
+    @Override
+    public int deleteProfile(String name) {
+        lock.writeLock().lock();
+        try {
+            long offset = byName.get(hashName(name), existing -> hasName(existing, name));
+            if (offset == MappedHashIndex.NOT_FOUND) {
+                log.info("No profile data found for {}", name);
+                return 0;
+            }
+
+            Record record = readRecord(offset, logLength);
+            if (record == null) {
+                throw new IOException("Unreadable profile record at position " + offset);
+            }
+
+            append(encodeDelete(record.rowId));
+            removeFromIndex(record);
+            liveBytes -= record.size;
+
+            log.info("Deleted {}'s profile data", name);
+            return 1;
+        } catch (IOException ioEx) {
+            log.error("Failed to delete profile: {}", name, ioEx);
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        playerProfile.getSaveLock().lock();
+        try {
+            if (!isWriteRequired(playerProfile.getSnapshot())) {
+                return;
+            }
+
+            Snapshot snapshot = playerProfile.takeSnapshot();
+            lock.writeLock().lock();
+            try {
+                write(playerProfile, snapshot);
+            } catch (IOException ioEx) {
+                playerProfile.markDirty(snapshot.getDirtyFields());
+                log.error("Failed to save playerProfile {}", playerProfile, ioEx);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            playerProfile.getSaveLock().unlock();
+        }
+    }
+
+    private void write(StoredProfile playerProfile, Snapshot snapshot) throws IOException {
+        ensureIndexCapacity();
+
+        long rowId = snapshot.getRowId();
+        long oldOffset = rowId < 0 ? MappedHashIndex.NOT_FOUND
+                : byRow.get(hashRow(rowId), existing -> isRow(existing, rowId));
+        if (oldOffset == MappedHashIndex.NOT_FOUND) {
+            // another instance of the same name could have been saved in the meantime - update it like the SQL upsert
+            String name = snapshot.getName();
+            oldOffset = byName.get(hashName(name), existing -> hasName(existing, name));
+        }
+
+        Record old = null;
+        if (oldOffset == MappedHashIndex.NOT_FOUND) {
+            playerProfile.setRowId(nextRowId++);
+        } else {
+            old = readRecord(oldOffset, logLength);
+            if (old == null) {
+                throw new IOException("Unreadable profile record at position " + oldOffset);
+            }
+
+            checkNameAvailable(snapshot.getName(), old.rowId);
+            playerProfile.setRowId(old.rowId);
+        }
+
+        playerProfile.setLastLogin(Instant.now());
+        Record record = Record.of(playerProfile.getSnapshot());
+        byte[] data = encodePut(record);
+        long offset = append(data);
+        record.size = data.length;
+
+        if (old != null) {
+            removeFromIndex(old);
+            liveBytes -= old.size;
+        }
+
+        addToIndex(record, offset);
+        liveBytes += record.size;
+    }
+
+    /**
+     * Reject a rename to the name of another profile like the unique name constraint of the table. Otherwise, the
+     * other profile would lose its name index entry.
+     */
+    private void checkNameAvailable(String name, long rowId) throws IOException {
+        long offset = byName.get(hashName(name), existing -> hasName(existing, name));
+        if (offset != MappedHashIndex.NOT_FOUND && !isRow(offset, rowId)) {
+            throw new IOException("The name " + name + " is already used by another profile");
+        }
+    }
+
+    /**
+     * Same rules as the SQL storage: a changed IP alone waits for the next refresh of the last login.
+     */
+    private boolean isWriteRequired(Snapshot snapshot) {
+        if (!snapshot.isExistingPlayer()) {
+            return true;
+        }
+
+        for (Field changed : snapshot.getDirtyFields()) {
+            if (changed != Field.LAST_IP) {
+                return true;
+            }
+        }
+
+        Instant now = Instant.now();
+        Instant lastLogin = snapshot.getLastLogin();
+        return lastLogin == null || lastLogin.isAfter(now) || !lastLogin.plus(lastLoginRefresh).isAfter(now);
+    }
+
+    /**
+     * Copy all profiles of a database into this empty storage. Row ids and last login times are kept.
+     *
+     * @param source database to import
+     * @param batchSize number of rows to read at once
+     * @return number of imported profiles
+     * @throws SQLException if the source couldn't be read
+     * @throws IOException if the profiles couldn't be written
+     */
+    public long importProfiles(SQLStorage source, int batchSize) throws SQLException, IOException {
+        if (size() > 0) {
+            throw new IllegalStateException("Profiles can only be imported into an empty storage");
+        }
+
+        long imported = 0;
+        long lastId = 0;
+        List<StoredProfile> page;
+        do {
+            page = source.loadProfilesAfter(lastId, batchSize);
+            lock.writeLock().lock();
+            try {
+                for (StoredProfile profile : page) {
+                    ensureIndexCapacity();
+
+                    Record record = Record.of(profile.getSnapshot());
+                    byte[] data = encodePut(record);
+                    long offset = append(data);
+                    record.size = data.length;
+
+                    addToIndex(record, offset);
+                    liveBytes += record.size;
+                    nextRowId = Math.max(nextRowId, record.rowId + 1);
+                    lastId = record.rowId;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            imported += page.size();
+        } while (page.size() == batchSize);
+
+        if (!syncWrites) {
+            logChannel.force(false);
+        }
+
+        return imported;
+    }
+
+    private void compactIfWasteful() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (logLength > MIN_COMPACTION_SIZE && liveBytes < logLength / 2) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the log with only the current record of every profile.
+     *
+     * @throws IOException if the new log couldn't be written - the old one stays in place then
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long[] offsets = getLiveOffsets();
+            // keep the order of the writes
+            Arrays.sort(offsets);
+
+            long before = logLength;
+            Path compactFile = logFile.resolveSibling(LOG_FILE + ".compact");
+            long[] newOffsets = new long[offsets.length];
+            try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = 0;
+                for (int i = 0; i < offsets.length; i++) {
+                    Record record = readRecord(offsets[i], logLength);
+                    if (record == null) {
+                        throw new IOException("Unreadable profile record at position " + offsets[i]);
+                    }
+
+                    ByteBuffer data = ByteBuffer.allocate(record.size);
+                    readFully(offsets[i], data);
+                    data.flip();
+
+                    newOffsets[i] = position;
+                    while (data.hasRemaining()) {
+                        position += out.write(data, position);
+                    }
+                }
+
+                out.force(true);
+            }
+
+            logChannel.close();
+            Files.move(compactFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logChannel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logLength = logChannel.size();
+
+            rebuildIndex(newOffsets, getCapacityFor(newOffsets.length));
+            log.info("Compacted profile log from {} to {} bytes", before, logLength);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of stored profiles
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byRow.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return size of the log file in bytes
+     */
+    public long getLogLength() {
+        lock.readLock().lock();
+        try {
+            return logLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long append(byte[] data) throws IOException {
+        long offset = logLength;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += logChannel.write(buffer, position);
+        }
+
+        if (syncWrites) {
+            logChannel.force(false);
+        }
+
+        logLength = position;
+        return offset;
+    }
+
+    private Record readRecord(long offset, long limit) throws IOException {
+        if (offset + RECORD_HEADER_SIZE > limit) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(offset, header);
+        int length = header.getInt(0);
+        int checksum = header.getInt(4);
+        if (length <= 0 || length > MAX_PAYLOAD_SIZE || offset + RECORD_HEADER_SIZE + length > limit) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(offset + RECORD_HEADER_SIZE, payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        Record record = decode(payload.array());
+        record.size = RECORD_HEADER_SIZE + length;
+        return record;
+    }
+
+    private void readFully(long position, ByteBuffer buffer) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = logChannel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the profile log");
+            }
+
+            current += read;
+        }
+    }
+
+    private boolean isRow(long offset, long rowId) {
+        Record record = readQuietly(offset);
+        return record != null && record.rowId == rowId;
+    }
+
+    private boolean hasName(long offset, String name) {
+        Record record = readQuietly(offset);
+        return record != null && record.name.equalsIgnoreCase(name);
+    }
+
+    private boolean hasId(long offset, UUID id) {
+        Record record = readQuietly(offset);
+        return record != null && id.equals(record.id);
+    }
+
+    private Record readQuietly(long offset) {
+        try {
+            return readRecord(offset, logLength);
+        } catch (IOException ioEx) {
+            log.error("Failed to read profile record at position {}", offset, ioEx);
+            return null;
+        }
+    }
+
+    private static byte[] encodePut(Record record) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeByte(TYPE_PUT);
+            out.writeLong(record.rowId);
+
+            int flags = (record.id == null ? 0 : FLAG_HAS_ID) | (record.premium ? FLAG_PREMIUM : 0);
+            out.writeByte(flags);
+            if (record.id != null) {
+                out.writeLong(record.id.getMostSignificantBits());
+                out.writeLong(record.id.getLeastSignificantBits());
+            }
+
+            out.writeByte(record.floodgate == null ? -1 : record.floodgate.getValue());
+            out.writeUTF(record.name);
+            out.writeUTF(record.lastIp);
+            out.writeLong(record.lastLogin.toEpochMilli());
+        }
+
+        return frame(payload.toByteArray());
+    }
+
+    private static byte[] encodeDelete(long rowId) {
+        ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES);
+        payload.put(TYPE_DELETE);
+        payload.putLong(rowId);
+        return frame(payload.array());
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        return record.array();
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            Record record = new Record();
+            record.type = in.readByte();
+            record.rowId = in.readLong();
+            if (record.type == TYPE_DELETE) {
+                return record;
+            }
+
+            int flags = in.readByte();
+            if ((flags & FLAG_HAS_ID) != 0) {
+                record.id = new UUID(in.readLong(), in.readLong());
+            }
+
+            record.premium = (flags & FLAG_PREMIUM) != 0;
+            record.floodgate = FloodgateState.fromInt(in.readByte());
+            record.name = in.readUTF();
+            record.lastIp = in.readUTF();
+            record.lastLogin = Instant.ofEpochMilli(in.readLong());
+            return record;
+        }
+    }
+
+    private static long hashRow(long rowId) {
+        return nonZero(KEY_HASH.hashLong(rowId).asLong());
+    }
+
+    private static long hashName(String name) {
+        return nonZero(KEY_HASH.hashString(name.toLowerCase(Locale.ROOT), StandardCharsets.UTF_8).asLong());
+    }
+
+    private static long hashId(UUID id) {
+        return nonZero(KEY_HASH.newHasher()
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .hash().asLong());
+    }
+
+    // 0 marks empty slots of the index
+    private static long nonZero(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+
+        lock.writeLock().lock();
+        try {
+            logChannel.force(true);
+
+            indexBuffer.putLong(LOG_LENGTH_POS, logLength);
+            indexBuffer.putLong(NEXT_ROW_POS, nextRowId);
+            indexBuffer.putLong(LIVE_BYTES_POS, liveBytes);
+            indexBuffer.force();
+
+            // only mark it clean after everything else is on the disk
+            indexBuffer.put(CLEAN_POS, (byte) 1);
+            indexBuffer.force();
+
+            logChannel.close();
+            indexChannel.close();
+        } catch (IOException ioEx) {
+            log.error("Failed to close the profile log", ioEx);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Record {
+
+        private byte type = TYPE_PUT;
+        private long rowId;
+        private UUID id;
+        private String name;
+        private boolean premium;
+        private FloodgateState floodgate;
+        private String lastIp;
+        private Instant lastLogin;
+        private int size;
+
+        static Record of(Snapshot snapshot) {
+            Record record = new Record();
+            record.rowId = snapshot.getRowId();
+            record.id = snapshot.getId();
+            record.name = snapshot.getName();
+            record.premium = snapshot.isOnlinemodePreferred();
+            record.floodgate = snapshot.getFloodgate();
+            record.lastIp = Objects.toString(snapshot.getLastIp(), "");
+            record.lastLogin = snapshot.getLastLogin() == null ? Instant.now() : snapshot.getLastLogin();
+            return record;
+        }
+
+        StoredProfile toProfile() {
+            return new StoredProfile(rowId, id, name, premium, floodgate, lastIp, lastLogin);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Open addressing hash table inside a memory-mapped region. Every slot holds a 64-bit key hash and the position of
+ * the record in the log. Hash collisions are resolved by the caller, which checks the record at the position.
+ * <p>
+ * Not thread-safe. The owner guards it with a read-write lock.
+ */
+class MappedHashIndex {
+
+    static final int SLOT_SIZE = 16;
+    static final long NOT_FOUND = -1;
+
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+
+    private final ByteBuffer slots;
+    private final int capacity;
+    private final int mask;
+
+    // slots that are not empty, including removed ones, because they still extend probe sequences
+    private int used;
+    private int size;
+
+    /**
+     * @param slots region of the table - existing content is kept
+     * @param capacity number of slots - a power of two
+     */
+    MappedHashIndex(ByteBuffer slots, int capacity) {
+        this.slots = slots;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            if (getHash(slot) != EMPTY) {
+                used++;
+                if (getOffset(slot) >= 0) {
+                    size++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param hash key hash - never 0
+     * @param matches checks if the record at the position has the requested key
+     * @return position of the record or {@link #NOT_FOUND}
+     */
+    long get(long hash, LongPredicate matches) {
+        for (int slot = start(hash), probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            long slotHash = getHash(slot);
+            if (slotHash == EMPTY) {
+                return NOT_FOUND;
+            }
+
+            long offset = getOffset(slot);
+            if (slotHash == hash && offset >= 0 && matches.test(offset)) {
+                return offset;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Add the key or replace the position of an existing entry with the same key.
+     *
+     * @param hash key hash - never 0
+     * @param offset position of the record
+     * @param sameKey checks if the record at the position has the same key
+     */
+    void put(long hash, long offset, LongPredicate sameKey) {
+        int free = -1;
+        for (int slot = start(hash), probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            long slotHash = getHash(slot);
+            if (slotHash == EMPTY) {
+                if (free == -1) {
+                    free = slot;
+                }
+
+                break;
+            }
+
+            long existing = getOffset(slot);
+            if (existing < 0) {
+                if (free == -1) {
+                    free = slot;
+                }
+            } else if (slotHash == hash && sameKey.test(existing)) {
+                setOffset(slot, offset);
+                return;
+            }
+        }
+
+        if (free == -1) {
+            throw new IllegalStateException("Index is full");
+        }
+
+        if (getHash(free) == EMPTY) {
+            used++;
+        }
+
+        slots.putLong(free * SLOT_SIZE, hash);
+        setOffset(free, offset);
+        size++;
+    }
+
+    /**
+     * @param hash key hash - never 0
+     * @param matches checks if the record at the position should be removed
+     * @return true if an entry was removed
+     */
+    boolean remove(long hash, LongPredicate matches) {
+        for (int slot = start(hash), probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            long slotHash = getHash(slot);
+            if (slotHash == EMPTY) {
+                return false;
+            }
+
+            long offset = getOffset(slot);
+            if (slotHash == hash && offset >= 0 && matches.test(offset)) {
+                setOffset(slot, REMOVED);
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    void forEach(LongConsumer consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = getOffset(slot);
+            if (getHash(slot) != EMPTY && offset >= 0) {
+                consumer.accept(offset);
+            }
+        }
+    }
+
+    void clear() {
+        for (int slot = 0; slot < capacity; slot++) {
+            slots.putLong(slot * SLOT_SIZE, EMPTY);
+            setOffset(slot, EMPTY);
+        }
+
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * @return true if the table should be rebuilt with a higher capacity to keep the probe sequences short
+     */
+    boolean isCrowded() {
+        return used >= capacity / 2;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int start(long hash) {
+        // the lower bits of the hash are well distributed
+        return (int) hash & mask;
+    }
+
+    private long getHash(int slot) {
+        return slots.getLong(slot * SLOT_SIZE);
+    }
+
+    private long getOffset(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + Long.BYTES);
+    }
+
+    private void setOffset(int slot, long offset) {
+        slots.putLong(slot * SLOT_SIZE + Long.BYTES, offset);
+    }
+}
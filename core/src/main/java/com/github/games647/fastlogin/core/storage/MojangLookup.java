@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.craftapi.model.Profile;
+
+import java.time.Instant;
+
+/**
+ * Result of a name lookup at the Mojang API and the time it was requested there. It's shared through the database
+ * and between the resolver tiers.
+ */
+public final class MojangLookup {
+
+    private final String name;
+    private final Profile profile;
+    private final Instant fetched;
+
+    /**
+     * @param name requested name
+     * @param profile premium profile or null if the name isn't premium
+     * @param fetched time of the request to the Mojang API
+     */
+    public MojangLookup(String name, Profile profile, Instant fetched) {
+        this.name = name;
+        this.profile = profile;
+        this.fetched = fetched;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return premium profile or null if the name isn't premium
+     */
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public Instant getFetched() {
+        return fetched;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + '{'
+                + "name='" + name + '\''
+                + ", profile=" + profile
+                + ", fetched=" + fetched
+                + '}';
+    }
+}
@@ -26,9 +26,21 @@
 package com.github.games647.fastlogin.core.storage;
 
 import com.github.games647.fastlogin.core.shared.PlatformPlugin;
+import com.google.common.net.HostAndPort;
 import com.zaxxer.hikari.HikariConfig;
-
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Collectors;
 
 public class MySQLStorage extends SQLStorage {
 
@@ -36,10 +48,58 @@ public class MySQLStorage extends SQLStorage {
     private static final String MYSQL_DRIVER = "com.mysql.cj.jdbc.Driver";
     private static final String MARIADB_DRIVER = "fastlogin.mariadb.jdbc.Driver";
 
+    // named lock that is automatically released if the connection is lost
+    private static final String ACQUIRE_LOCK = "SELECT GET_LOCK(?, ?)";
+    private static final String RELEASE_LOCK = "SELECT RELEASE_LOCK(?)";
+    private static final String SCHEMA_LOCK = "fastlogin_schema_migration";
+    private static final int SCHEMA_LOCK_TIMEOUT = 60;
+
+    private static final int DEFAULT_PORT = 3306;
+    private static final long REPLICA_CONNECTION_TIMEOUT = 2_000;
+
+    private final HikariConfig config;
+    private final String driver;
+    private final String database;
+
     public MySQLStorage(PlatformPlugin<?> plugin, String driver, String host, int port, String database,
                         HikariConfig config, boolean useSSL) {
-        super(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(),
-                setParams(config, driver, host, port, database, useSSL));
+        this(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(), driver, host, port, database, config,
+                useSSL);
+    }
+
+    public MySQLStorage(Logger log, String poolName, ThreadFactory threadFactory,
+                        String driver, String host, int port, String database,
+                        HikariConfig config, boolean useSSL) {
+        super(log, poolName, threadFactory, setParams(config, driver, host, port, database, useSSL));
+
+        this.config = config;
+        this.driver = driver;
+        this.database = database;
+    }
+
+    /**
+     * Send profile lookups to read replicas of this database. They use the same credentials and pool settings.
+     *
+     * @param hosts replica addresses in the format host or host:port
+     * @param stickiness duration a written player is read from the primary - should be above the replication lag
+     */
+    public void enableReadReplicas(List<String> hosts, Duration stickiness) {
+        List<HikariConfig> replicaConfigs = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            HostAndPort address = HostAndPort.fromString(host.trim()).withDefaultPort(DEFAULT_PORT);
+
+            HikariConfig replicaConfig = new HikariConfig();
+            config.copyStateTo(replicaConfig);
+            replicaConfig.setPoolName(config.getPoolName() + "-Replica-" + (replicaConfigs.size() + 1));
+            replicaConfig.setJdbcUrl(JDBC_PROTOCOL + buildJDBCUrl(driver, address.getHost(), address.getPort(),
+                    database));
+            replicaConfig.setReadOnly(true);
+            // an unreachable replica shouldn't delay logins - the primary answers instead
+            replicaConfig.setConnectionTimeout(Math.min(config.getConnectionTimeout(), REPLICA_CONNECTION_TIMEOUT));
+            replicaConfigs.add(replicaConfig);
+        }
+
+        enableReplicaPools(replicaConfigs, stickiness);
     }
 
     private static HikariConfig setParams(HikariConfig config,
@@ -69,6 +129,43 @@ public class MySQLStorage extends SQLStorage {
         return config;
     }
 
+    @Override
+    protected void lockSchema(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement(ACQUIRE_LOCK)) {
+            stmt.setString(1, SCHEMA_LOCK);
+            stmt.setInt(2, SCHEMA_LOCK_TIMEOUT);
+
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (!resultSet.next() || resultSet.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another server to migrate the database");
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void unlockSchema(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement(RELEASE_LOCK)) {
+            stmt.setString(1, SCHEMA_LOCK);
+            stmt.executeQuery().close();
+        }
+    }
+
+    @Override
+    protected String getUpsertStmt(String insertStmt, List<String> columns) {
+        // LAST_INSERT_ID(expr) reports the id of the updated row as generated key
+        return insertStmt + " ON DUPLICATE KEY UPDATE "
+                + columns.stream().map(column -> '`' + column + "`=VALUES(`" + column + "`)")
+                .collect(Collectors.joining(", "))
+                + ", `LastLogin`=CURRENT_TIMESTAMP, `UserID`=LAST_INSERT_ID(`UserID`)";
+    }
+
+    @Override
+    protected void prepareStreaming(Statement stmt) throws SQLException {
+        // Connector/J only streams the result row by row with this value, otherwise the complete result is loaded
+        stmt.setFetchSize(Integer.MIN_VALUE);
+    }
+
     private static String buildJDBCUrl(String driver, String host, int port, String database) {
         MySQLVariant variant = MySQLVariant.fromDriver(driver);
         if (variant == null) {
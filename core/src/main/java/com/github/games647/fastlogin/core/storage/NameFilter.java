@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Probabilistic set of all stored player names. A negative answer is always correct, so a database lookup can be
+ * skipped for names that were never saved. Names are compared lower-cased to match case-insensitive collations.
+ */
+public class NameFilter {
+
+    private final BloomFilter<CharSequence> filter;
+
+    private final AtomicLong skippedLookups = new AtomicLong();
+
+    public NameFilter(long expectedNames, double falsePositiveRate) {
+        this.filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedNames,
+                falsePositiveRate);
+    }
+
+    public void add(String name) {
+        filter.put(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param name player name
+     * @return false if the name is definitely not stored, true if it could be stored
+     */
+    public boolean mightContain(String name) {
+        if (filter.mightContain(name.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+
+        skippedLookups.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return number of lookups that didn't need the database
+     */
+    public long getSkippedLookups() {
+        return skippedLookups.get();
+    }
+
+    public long getApproximateSize() {
+        return filter.approximateElementCount();
+    }
+
+    public double getExpectedFalsePositiveRate() {
+        return filter.expectedFpp();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.storage.SQLStorage.ResultMapper;
+import com.github.games647.fastlogin.core.storage.SQLStorage.StatementBinder;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection pools of read replicas. Queries are distributed round-robin between them.
+ * <p>
+ * Replicas could lag behind the primary. Therefore, players that were written recently are remembered for the
+ * configured stickiness, so the storage can read them from the primary instead.
+ */
+class ReplicaPool {
+
+    // bounds the memory usage during big join waves - players beyond it are only read from replicas earlier
+    private static final int MAX_RECENT_WRITES = 100_000;
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Cache<Object, Boolean> recentWrites;
+
+    ReplicaPool(List<HikariConfig> configs, Duration stickiness) {
+        this.recentWrites = CacheBuilder.newBuilder()
+                .expireAfterWrite(stickiness.toMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(MAX_RECENT_WRITES)
+                .build();
+
+        try {
+            for (HikariConfig config : configs) {
+                dataSources.add(new HikariDataSource(config));
+            }
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    void markWritten(String name, UUID id) {
+        recentWrites.put(name.toLowerCase(Locale.ROOT), Boolean.TRUE);
+        if (id != null) {
+            recentWrites.put(id, Boolean.TRUE);
+        }
+    }
+
+    boolean isRecentlyWritten(String name) {
+        return recentWrites.getIfPresent(name.toLowerCase(Locale.ROOT)) != null;
+    }
+
+    boolean isRecentlyWritten(UUID id) {
+        return recentWrites.getIfPresent(id) != null;
+    }
+
+    <T> T query(String sql, StatementBinder binder, ResultMapper<T> mapper) throws SQLException {
+        HikariDataSource dataSource = dataSources.get(Math.floorMod(next.getAndIncrement(), dataSources.size()));
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement(sql)) {
+            binder.bind(stmt);
+
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return mapper.map(resultSet);
+            }
+        }
+    }
+
+    /**
+     * @param statements statements to prepare on every idle connection
+     * @return number of prepared connections
+     */
+    int warmUp(Collection<String> statements) throws SQLException {
+        int prepared = 0;
+        for (HikariDataSource dataSource : dataSources) {
+            List<Connection> connections = new ArrayList<>();
+            try {
+                for (int i = 0; i < Math.max(1, dataSource.getMinimumIdle()); i++) {
+                    Connection con = dataSource.getConnection();
+                    connections.add(con);
+                    for (String sql : statements) {
+                        con.prepareStatement(sql).close();
+                    }
+                }
+            } finally {
+                for (Connection con : connections) {
+                    con.close();
+                }
+            }
+
+            prepared += connections.size();
+        }
+
+        return prepared;
+    }
+
+    int getMaxConnections() {
+        return dataSources.stream().mapToInt(HikariDataSource::getMaximumPoolSize).sum();
+    }
+
+    void close() {
+        for (HikariDataSource dataSource : dataSources) {
+            dataSource.close();
+        }
+
+        dataSources.clear();
+    }
+}
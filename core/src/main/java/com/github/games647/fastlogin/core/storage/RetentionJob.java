@@ -0,0 +1,159 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.slf4j.Logger;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes cracked profiles that didn't join for a configured number of days. The table is walked in small chunks
+ * ordered by the row id, so every delete is a short transaction and logins are never blocked for long.
+ */
+public class RetentionJob implements Runnable {
+
+    // leave the database some room between two chunks
+    private static final long PAUSE_MILLIS = 100;
+
+    private final Logger log;
+    private final SQLStorage storage;
+
+    private final int days;
+    private final int batchSize;
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong totalRemoved = new AtomicLong();
+    private volatile long lastRunRemoved;
+    private volatile long lastRunBatches;
+    private volatile long lastRunNanos;
+    private volatile long maxBatchNanos;
+
+    public RetentionJob(Logger log, SQLStorage storage, int days, int batchSize, Duration interval,
+                        ThreadFactory threadFactory) {
+        this.log = log;
+        this.storage = storage;
+        this.days = days;
+        this.batchSize = Math.max(1, batchSize);
+
+        if (threadFactory == null) {
+            this.executor = Executors.newSingleThreadScheduledExecutor();
+        } else {
+            this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+
+        long delay = Math.max(1, interval.toMinutes());
+        // the first run waits a bit to not slow down the server start
+        executor.scheduleWithFixedDelay(this, 1, delay, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void run() {
+        long removed = 0;
+        long batches = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+
+        long lastId = 0;
+        try {
+            while (running) {
+                long start = System.nanoTime();
+                SQLStorage.PruneResult result = storage.pruneBatch(lastId, days, batchSize);
+                long duration = System.nanoTime() - start;
+
+                batches++;
+                removed += result.getDeleted();
+                totalNanos += duration;
+                maxNanos = Math.max(maxNanos, duration);
+                log.debug("Removed {} stale profiles after id {} in {} ms", result.getDeleted(), lastId,
+                        TimeUnit.NANOSECONDS.toMillis(duration));
+
+                if (result.isCompleted()) {
+                    break;
+                }
+
+                lastId = result.getLastId();
+                Thread.sleep(PAUSE_MILLIS);
+            }
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException sqlEx) {
+            log.error("Failed to remove stale profiles after id {}", lastId, sqlEx);
+        }
+
+        totalRemoved.addAndGet(removed);
+        lastRunRemoved = removed;
+        lastRunBatches = batches;
+        lastRunNanos = totalNanos;
+        maxBatchNanos = maxNanos;
+
+        if (removed > 0) {
+            log.info("Removed {} cracked profiles older than {} days in {} batches ({} ms per batch, max {} ms)",
+                    removed, days, batches, TimeUnit.NANOSECONDS.toMillis(totalNanos / batches),
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos));
+        }
+    }
+
+    public long getTotalRemoved() {
+        return totalRemoved.get();
+    }
+
+    public long getLastRunRemoved() {
+        return lastRunRemoved;
+    }
+
+    public long getLastRunBatches() {
+        return lastRunBatches;
+    }
+
+    /**
+     * @return average database time per batch of the last run
+     */
+    public Duration getAverageBatchTime() {
+        long batches = lastRunBatches;
+        if (batches == 0) {
+            return Duration.ZERO;
+        }
+
+        return Duration.ofNanos(lastRunNanos / batches);
+    }
+
+    public Duration getMaxBatchTime() {
+        return Duration.ofNanos(maxBatchNanos);
+    }
+
+    public void close() {
+        running = false;
+        executor.shutdown();
+    }
+}
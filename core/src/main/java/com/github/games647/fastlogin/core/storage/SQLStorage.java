@@ -26,7 +26,14 @@
 package com.github.games647.fastlogin.core.storage;
 
 import com.github.games647.craftapi.UUIDAdapter;
+import com.github.games647.craftapi.model.Profile;
 import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.storage.StorageMetrics.Operation;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Field;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Snapshot;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
@@ -37,8 +44,23 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ThreadFactory;
 
@@ -61,6 +83,9 @@ public abstract class SQLStorage implements AuthStorage {
     protected static final String ADD_FLOODGATE_COLUMN_STMT = "ALTER TABLE `" + PREMIUM_TABLE
             + "` ADD COLUMN `Floodgate` INTEGER(3)";
 
+    protected static final String LOAD_ALL_NAMES = "SELECT `Name` FROM `" + PREMIUM_TABLE + '`';
+    protected static final String COUNT_PROFILES = "SELECT COUNT(*) FROM `" + PREMIUM_TABLE + '`';
+
     protected static final String LOAD_BY_NAME = "SELECT * FROM `" + PREMIUM_TABLE
             + "` WHERE `Name`=? LIMIT 1";
     protected static final String LOAD_BY_UUID = "SELECT * FROM `" + PREMIUM_TABLE
@@ -74,16 +99,119 @@ public abstract class SQLStorage implements AuthStorage {
             + "` SET `UUID`=?, `Name`=?, `Premium`=?, `Floodgate`=?, `LastIp`=?, "
             + "`LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
 
+    // 16 bytes for the UUID and 4 or 16 bytes for an IPv4 or IPv6 address instead of the text form
+    protected static final String ADD_BINARY_UUID_COLUMN_STMT = "ALTER TABLE `" + PREMIUM_TABLE
+            + "` ADD COLUMN `UUIDBin` BINARY(16)";
+    protected static final String ADD_BINARY_IP_COLUMN_STMT = "ALTER TABLE `" + PREMIUM_TABLE
+            + "` ADD COLUMN `LastIpBin` VARBINARY(16)";
+
+    protected static final String LOAD_BY_UUID_BINARY = "SELECT * FROM `" + PREMIUM_TABLE
+            + "` WHERE `UUIDBin`=? OR `UUID`=? LIMIT 1";
+    // every row has a binary id after the conversion
+    protected static final String LOAD_BY_UUID_BINARY_ONLY = "SELECT * FROM `" + PREMIUM_TABLE
+            + "` WHERE `UUIDBin`=? LIMIT 1";
+    protected static final String INSERT_PROFILE_BINARY = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`, `UUIDBin`, `LastIpBin`) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) ";
+    protected static final String UPDATE_PROFILE_BINARY = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `UUID`=?, `Name`=?, `Premium`=?, `Floodgate`=?, `LastIp`=?, `UUIDBin`=?, `LastIpBin`=?, "
+            + "`LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+
+    // inserted columns that will be overwritten if a row with the same name exists already
+    private static final List<String> UPSERT_COLUMNS = ImmutableList.of("UUID", "Premium", "Floodgate", "LastIp");
+    private static final List<String> UPSERT_BINARY_COLUMNS = ImmutableList.<String>builder()
+            .addAll(UPSERT_COLUMNS).add("UUIDBin", "LastIpBin").build();
+
+    // partial updates of profiles where only the login data changed
+    protected static final String UPDATE_LAST_IP = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `LastIp`=?, `LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+    protected static final String UPDATE_LAST_IP_BINARY = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `LastIp`=?, `LastIpBin`=?, `LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+    protected static final String UPDATE_LAST_LOGIN = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+
+    protected static final String LOAD_MAX_ID = "SELECT MAX(`UserID`) FROM `" + PREMIUM_TABLE + '`';
+    protected static final String COUNT_PROFILES_AFTER = "SELECT COUNT(*) FROM `" + PREMIUM_TABLE
+            + "` WHERE `UserID` > ?";
+    protected static final String LOAD_PROFILES_AFTER = "SELECT * FROM `" + PREMIUM_TABLE
+            + "` WHERE `UserID` > ? ORDER BY `UserID` LIMIT ?";
+    protected static final String LOAD_RECENT_PROFILES = "SELECT * FROM `" + PREMIUM_TABLE
+            + "` ORDER BY `LastLogin` DESC LIMIT ?";
+    // copies keep the row id and the last login of the source
+    protected static final String IMPORT_PROFILE = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`, `LastLogin`, `UserID`) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    protected static final String IMPORT_PROFILE_BINARY = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`, `UUIDBin`, `LastIpBin`, `LastLogin`, `UserID`) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // copies into a database with its own row ids
+    protected static final String IMPORT_COPY = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`, `LastLogin`) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+    protected static final String IMPORT_COPY_BINARY = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`, `UUIDBin`, `LastIpBin`, `LastLogin`) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // results of the Mojang API shared by all servers - the key is the lower case name, because names are unique
+    // regardless of the case at Mojang
+    protected static final String MOJANG_TABLE = "mojang_profiles";
+    protected static final String CREATE_MOJANG_TABLE_STMT = "CREATE TABLE IF NOT EXISTS `" + MOJANG_TABLE + "` ("
+            + "`Name` VARCHAR(16) NOT NULL PRIMARY KEY, "
+            // null if the name isn't premium
+            + "`UUID` CHAR(32), "
+            + "`ProfileName` VARCHAR(16), "
+            + "`Premium` BOOLEAN NOT NULL, "
+            // epoch millis to be independent of the time zone of the database
+            + "`Fetched` BIGINT NOT NULL"
+            + ')';
+    protected static final String LOAD_MOJANG_LOOKUP = "SELECT * FROM `" + MOJANG_TABLE + "` WHERE `Name`=?";
+    // supported by MySQL, SQLite and H2 in the MySQL mode
+    protected static final String SAVE_MOJANG_LOOKUP = "REPLACE INTO `" + MOJANG_TABLE
+            + "` (`Name`, `UUID`, `ProfileName`, `Premium`, `Fetched`) VALUES (?, ?, ?, ?, ?)";
+    protected static final String DELETE_MOJANG_LOOKUPS = "DELETE FROM `" + MOJANG_TABLE + "` WHERE `Fetched` < ?";
+
+    // recorded by the background conversion instead of running during the startup
+    protected static final Migration BINARY_CONVERSION = new Migration(5, "Convert existing rows to the binary format",
+            con -> { });
+
+    private static final int STREAM_FETCH_SIZE = 1_000;
+    // rows per cursor - the connection is released in between
+    private static final int STREAM_CHUNK_SIZE = 10_000;
+    // below the parameter limit of old SQLite versions (999)
+    private static final int BULK_CHUNK_SIZE = 512;
+
     protected final Logger log;
     protected final HikariDataSource dataSource;
+    private final ThreadFactory threadFactory;
+    private final StorageMetrics metrics;
+
+    private WriteBehindQueue writeBehind;
+    private RetentionJob retentionJob;
+    private NameFilter nameFilter;
+    private ReplicaPool replicas;
+
+    private boolean binaryFormat;
+    // set if the table contains the binary columns - they have to be read even if the format is disabled
+    private boolean binaryColumns;
+    // set if the text UUIDs of all rows were converted - lookups by id don't need to check the text column then
+    private volatile boolean binaryConverted;
+    private BinaryFormatConverter binaryConverter;
+
+    private String insertProfileStmt = INSERT_PROFILE;
+
+    private Duration lastLoginRefreshInterval = Duration.ZERO;
+    private boolean insertReturning;
 
     public SQLStorage(Logger log, String poolName, ThreadFactory threadFactory, HikariConfig config) {
         this.log = log;
+        this.threadFactory = threadFactory;
         config.setPoolName(poolName);
         if (threadFactory != null) {
             config.setThreadFactory(threadFactory);
         }
 
+        this.metrics = new StorageMetrics(log);
+        config.setMetricsTrackerFactory(metrics);
         this.dataSource = new HikariDataSource(config);
     }
 
@@ -91,39 +219,202 @@ public abstract class SQLStorage implements AuthStorage {
         // choose surrogate PK(ID), because UUID can be null for offline players
         // if UUID is always Premium UUID we would have to update offline player entries on insert
         // name cannot be PK, because it can be changed for premium players
-        //todo: add unique uuid index usage
-        try (Connection con = dataSource.getConnection();
-             Statement stmt = con.createStatement()) {
-            stmt.executeUpdate(getCreateTableStmt());
+        try (Connection con = dataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate(getCreateTableStmt());
+            }
+
+            // multiple servers could start at the same time with a shared database
+            SchemaMigrator migrator = new SchemaMigrator(log);
+            lockSchema(con);
+            try {
+                migrator.migrate(con, getMigrations());
+            } finally {
+                unlockSchema(con);
+            }
+
+            binaryColumns = !isColumnMissing(con, "UUIDBin");
+            binaryConverted = binaryColumns && migrator.isApplied(con, BINARY_CONVERSION.getVersion());
+        }
+
+        String insert = binaryColumns ? INSERT_PROFILE_BINARY : INSERT_PROFILE;
+        String upsert = getUpsertStmt(insert.trim(), binaryColumns ? UPSERT_BINARY_COLUMNS : UPSERT_COLUMNS);
+        if (upsert == null) {
+            insertProfileStmt = insert;
+            insertReturning = false;
+        } else {
+            insertProfileStmt = upsert;
+            insertReturning = isUpsertReturning();
+        }
+
+        if (binaryFormat && !binaryConverted) {
+            binaryConverter = new BinaryFormatConverter(log, this);
+            Thread thread;
+            if (threadFactory == null) {
+                thread = new Thread(binaryConverter);
+            } else {
+                thread = threadFactory.newThread(binaryConverter);
+            }
+
+            thread.start();
+        }
+    }
+
+    /**
+     * Store UUIDs and IP addresses in binary columns instead of text. Existing rows will be converted in the
+     * background after {@link #createTables()}. Every server sharing the database has to support this format,
+     * because older versions only read the text columns.
+     *
+     * @param binaryFormat write binary columns
+     */
+    public void setBinaryFormat(boolean binaryFormat) {
+        this.binaryFormat = binaryFormat;
+    }
+
+    /**
+     * Record that all existing rows were converted to the binary format. Lookups by id will only use the binary
+     * column afterward.
+     *
+     * @throws SQLException on database errors
+     */
+    synchronized void completeBinaryConversion() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            lockSchema(con);
+            try {
+                new SchemaMigrator(log).migrate(con, Collections.singletonList(BINARY_CONVERSION));
+            } finally {
+                unlockSchema(con);
+            }
+        }
+
+        binaryConverted = true;
+    }
+
+    /**
+     * All schema changes after the initial table layout. New migrations have to use the next higher version that
+     * isn't used by {@link #BINARY_CONVERSION}.
+     *
+     * @return migrations in any order
+     */
+    protected List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(1, "Add Floodgate column", con -> {
+            if (isColumnMissing(con, "Floodgate")) {
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeUpdate(ADD_FLOODGATE_COLUMN_STMT);
+                }
+            }
+        }));
+
+        // used by the name change check - UUIDs are not unique, because old entries could contain duplicates
+        migrations.add(new Migration(2, "Add UUID index", con -> createIndex(con, "idx_premium_uuid", "`UUID`")));
+
+        // optional - the version stays missing until the binary format is enabled
+        if (binaryFormat) {
+            migrations.add(new Migration(3, "Add binary UUID and IP columns", con -> {
+                if (isColumnMissing(con, "UUIDBin")) {
+                    try (Statement stmt = con.createStatement()) {
+                        stmt.executeUpdate(ADD_BINARY_UUID_COLUMN_STMT);
+                        stmt.executeUpdate(ADD_BINARY_IP_COLUMN_STMT);
+                    }
+                }
+
+                createIndex(con, "idx_premium_uuid_bin", "`UUIDBin`");
+            }));
+        }
+
+        // used by the retention job and the preloading of recent players
+        migrations.add(new Migration(4, "Add LastLogin index",
+                con -> createIndex(con, "idx_premium_last_login", "`LastLogin`")));
+
+        return migrations;
+    }
+
+    /**
+     * Extend the insert statement, so that it updates the existing row if a profile with the same name was inserted
+     * in the meantime, for example by another proxy. This saves new players in a single statement without failing on
+     * the unique name constraint.
+     *
+     * @param insertStmt insert statement of a new profile
+     * @param columns inserted columns that should be overwritten on a conflict
+     * @return upsert statement that provides the row id of the inserted or updated row or null if not supported
+     */
+    protected String getUpsertStmt(String insertStmt, List<String> columns) {
+        return null;
+    }
+
+    /**
+     * @return true if the upsert statement returns the row id as result set instead of generated keys
+     */
+    protected boolean isUpsertReturning() {
+        return false;
+    }
+
+    /**
+     * Prevent other instances from migrating the schema concurrently. The lock is released by
+     * {@link #unlockSchema(Connection)} using the same connection.
+     *
+     * @param con connection that will run the migrations
+     * @throws SQLException if the lock couldn't be acquired
+     */
+    protected void lockSchema(Connection con) throws SQLException {
+        // a SQLite file is only used by a single server
+    }
+
+    protected void unlockSchema(Connection con) throws SQLException {
+        // no lock by default
+    }
+
+    protected void createIndex(Connection con, String indexName, String columns) throws SQLException {
+        if (isIndexMissing(con, indexName)) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("CREATE INDEX `" + indexName + "` ON `" + PREMIUM_TABLE + "` (" + columns + ')');
+            }
+        }
+    }
 
-            // add Floodgate column
-            DatabaseMetaData md = con.getMetaData();
-            if (isColumnMissing(md, "Floodgate")) {
-                stmt.executeUpdate(ADD_FLOODGATE_COLUMN_STMT);
+    private boolean isIndexMissing(Connection con, String indexName) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(con.getCatalog(), null, PREMIUM_TABLE, false, true)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return false;
+                }
             }
 
+            return true;
         }
     }
 
-    private boolean isColumnMissing(DatabaseMetaData metaData, String columnName) throws SQLException {
-        try (ResultSet rs = metaData.getColumns(null, null, PREMIUM_TABLE, columnName)) {
+    private boolean isColumnMissing(Connection con, String columnName) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        try (ResultSet rs = metaData.getColumns(con.getCatalog(), null, PREMIUM_TABLE, columnName)) {
             return !rs.next();
         }
     }
 
     @Override
     public StoredProfile loadProfile(String name) {
-        try (Connection con = dataSource.getConnection();
-             PreparedStatement loadStmt = con.prepareStatement(LOAD_BY_NAME)
-        ) {
-            loadStmt.setString(1, name);
-
-            try (ResultSet resultSet = loadStmt.executeQuery()) {
-                return parseResult(resultSet).orElseGet(() -> new StoredProfile(null, name, false,
-                        FloodgateState.FALSE, ""));
+        if (writeBehind != null) {
+            StoredProfile pending = writeBehind.getPending(name);
+            if (pending != null) {
+                return pending;
             }
+        }
+
+        if (nameFilter != null && !nameFilter.mightContain(name)) {
+            return new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+        }
+
+        long start = System.nanoTime();
+        try {
+            boolean recentlyWritten = replicas != null && replicas.isRecentlyWritten(name);
+            return readQuery(recentlyWritten, LOAD_BY_NAME, stmt -> stmt.setString(1, name), this::parseResult)
+                    .orElseGet(() -> new StoredProfile(null, name, false, FloodgateState.FALSE, ""));
         } catch (SQLException sqlEx) {
             log.error("Failed to query profile: {}", name, sqlEx);
+        } finally {
+            metrics.record(Operation.LOAD, name, start);
         }
 
         return null;
@@ -131,24 +422,205 @@ public abstract class SQLStorage implements AuthStorage {
 
     @Override
     public StoredProfile loadProfile(UUID uuid) {
-        try (Connection con = dataSource.getConnection();
-             PreparedStatement loadStmt = con.prepareStatement(LOAD_BY_UUID)) {
-            loadStmt.setString(1, UUIDAdapter.toMojangId(uuid));
+        if (writeBehind != null) {
+            StoredProfile pending = writeBehind.getPending(uuid);
+            if (pending != null) {
+                return pending;
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            boolean recentlyWritten = replicas != null && replicas.isRecentlyWritten(uuid);
+            if (binaryConverted) {
+                return readQuery(recentlyWritten, LOAD_BY_UUID_BINARY_ONLY,
+                        stmt -> stmt.setBytes(1, BinaryColumns.fromUUID(uuid)), this::parseResult).orElse(null);
+            }
 
-            try (ResultSet resultSet = loadStmt.executeQuery()) {
-                return parseResult(resultSet).orElse(null);
+            if (binaryColumns) {
+                // rows are only converted in the background
+                return readQuery(recentlyWritten, LOAD_BY_UUID_BINARY, stmt -> {
+                    stmt.setBytes(1, BinaryColumns.fromUUID(uuid));
+                    stmt.setString(2, UUIDAdapter.toMojangId(uuid));
+                }, this::parseResult).orElse(null);
             }
+
+            return readQuery(recentlyWritten, LOAD_BY_UUID,
+                    stmt -> stmt.setString(1, UUIDAdapter.toMojangId(uuid)), this::parseResult).orElse(null);
         } catch (SQLException sqlEx) {
             log.error("Failed to query profile: {}", uuid, sqlEx);
+        } finally {
+            metrics.record(Operation.LOAD, uuid, start);
         }
 
         return null;
     }
 
+    @Override
+    public Map<String, StoredProfile> loadProfilesByName(Collection<String> names) {
+        Map<String, StoredProfile> profiles = new HashMap<>(names.size());
+
+        Collection<String> queried = new LinkedHashSet<>();
+        for (String name : names) {
+            StoredProfile pending = writeBehind == null ? null : writeBehind.getPending(name);
+            if (pending != null) {
+                profiles.put(name, pending);
+            } else if (nameFilter != null && !nameFilter.mightContain(name)) {
+                profiles.put(name, new StoredProfile(null, name, false, FloodgateState.FALSE, ""));
+            } else {
+                queried.add(name);
+            }
+        }
+
+        for (List<String> chunk : Iterables.partition(queried, BULK_CHUNK_SIZE)) {
+            long start = System.nanoTime();
+            try {
+                boolean recentlyWritten = replicas != null && chunk.stream().anyMatch(replicas::isRecentlyWritten);
+                String sql = buildInQuery("`Name`", chunk.size());
+                List<StoredProfile> loaded = readQuery(recentlyWritten, sql, stmt -> {
+                    int index = 1;
+                    for (String name : padChunk(chunk)) {
+                        stmt.setString(index++, name);
+                    }
+                }, this::parseResults);
+
+                Map<String, StoredProfile> byName = new HashMap<>(loaded.size());
+                // MySQL compares names case-insensitive
+                Map<String, StoredProfile> byLowerName = new HashMap<>(loaded.size());
+                for (StoredProfile profile : loaded) {
+                    byName.put(profile.getName(), profile);
+                    byLowerName.put(profile.getName().toLowerCase(Locale.ROOT), profile);
+                }
+
+                for (String name : chunk) {
+                    StoredProfile profile = byName.get(name);
+                    if (profile == null) {
+                        profile = byLowerName.get(name.toLowerCase(Locale.ROOT));
+                    }
+
+                    if (profile == null) {
+                        profile = new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+                    }
+
+                    profiles.put(name, profile);
+                }
+            } catch (SQLException sqlEx) {
+                log.error("Failed to query {} profiles", chunk.size(), sqlEx);
+            } finally {
+                metrics.record(Operation.BULK_LOAD, chunk.size() + " profiles", start);
+            }
+        }
+
+        return profiles;
+    }
+
+    @Override
+    public Map<UUID, StoredProfile> loadProfilesById(Collection<UUID> uuids) {
+        Map<UUID, StoredProfile> profiles = new HashMap<>(uuids.size());
+
+        Collection<UUID> queried = new LinkedHashSet<>();
+        for (UUID uuid : uuids) {
+            StoredProfile pending = writeBehind == null ? null : writeBehind.getPending(uuid);
+            if (pending == null) {
+                queried.add(uuid);
+            } else {
+                profiles.put(uuid, pending);
+            }
+        }
+
+        for (List<UUID> chunk : Iterables.partition(queried, BULK_CHUNK_SIZE)) {
+            List<UUID> padded = padChunk(chunk);
+            boolean recentlyWritten = replicas != null && chunk.stream().anyMatch(replicas::isRecentlyWritten);
+            long start = System.nanoTime();
+            try {
+                List<StoredProfile> loaded;
+                if (binaryConverted) {
+                    loaded = readQuery(recentlyWritten, buildInQuery("`UUIDBin`", chunk.size()), stmt -> {
+                        int index = 1;
+                        for (UUID uuid : padded) {
+                            stmt.setBytes(index++, BinaryColumns.fromUUID(uuid));
+                        }
+                    }, this::parseResults);
+                } else if (binaryColumns) {
+                    String sql = buildInQuery("`UUIDBin`", chunk.size()) + " OR `UUID` IN "
+                            + buildPlaceholders(chunk.size());
+                    loaded = readQuery(recentlyWritten, sql, stmt -> {
+                        int index = 1;
+                        for (UUID uuid : padded) {
+                            stmt.setBytes(index++, BinaryColumns.fromUUID(uuid));
+                        }
+
+                        for (UUID uuid : padded) {
+                            stmt.setString(index++, UUIDAdapter.toMojangId(uuid));
+                        }
+                    }, this::parseResults);
+                } else {
+                    loaded = readQuery(recentlyWritten, buildInQuery("`UUID`", chunk.size()), stmt -> {
+                        int index = 1;
+                        for (UUID uuid : padded) {
+                            stmt.setString(index++, UUIDAdapter.toMojangId(uuid));
+                        }
+                    }, this::parseResults);
+                }
+
+                for (StoredProfile profile : loaded) {
+                    // UUIDs aren't unique in old databases - keep the first row like the single lookup
+                    profiles.putIfAbsent(profile.getId(), profile);
+                }
+            } catch (SQLException sqlEx) {
+                log.error("Failed to query {} profiles", chunk.size(), sqlEx);
+            } finally {
+                metrics.record(Operation.BULK_LOAD, chunk.size() + " profiles", start);
+            }
+        }
+
+        return profiles;
+    }
+
+    private static String buildInQuery(String column, int size) {
+        return "SELECT * FROM `" + PREMIUM_TABLE + "` WHERE " + column + " IN " + buildPlaceholders(size);
+    }
+
+    // round the number of parameters up to a power of two, so only a few different statements are prepared and cached
+    private static String buildPlaceholders(int size) {
+        return '(' + String.join(", ", Collections.nCopies(getPaddedSize(size), "?")) + ')';
+    }
+
+    private static int getPaddedSize(int size) {
+        return Math.max(1, Math.min(BULK_CHUNK_SIZE, Integer.highestOneBit(size - 1) << 1));
+    }
+
+    private static <T> List<T> padChunk(List<T> chunk) {
+        int size = chunk.size();
+        int padded = getPaddedSize(size);
+        if (padded == size) {
+            return chunk;
+        }
+
+        // repeated values don't change the result
+        List<T> paddedChunk = new ArrayList<>(padded);
+        paddedChunk.addAll(chunk);
+        while (paddedChunk.size() < padded) {
+            paddedChunk.add(chunk.get(size - 1));
+        }
+
+        return paddedChunk;
+    }
+
     @Override
     public int deleteProfile(String name) {
+        if (writeBehind != null) {
+            writeBehind.discard(name);
+        }
+
+        if (replicas != null) {
+            replicas.markWritten(name, null);
+        }
+
+        long start = System.nanoTime();
         try (Connection con = dataSource.getConnection();
             PreparedStatement deleteStmt = con.prepareStatement(DELETE_BY_NAME)) {
+            metrics.applyQueryTimeout(deleteStmt);
             deleteStmt.setString(1, name);
 
             int rowsDeleted = deleteStmt.executeUpdate();
@@ -161,89 +633,1037 @@ public abstract class SQLStorage implements AuthStorage {
         } catch (SQLException sqlEx) {
             log.error("Failed to query profile: {}", name, sqlEx);
             return 0;
+        } finally {
+            metrics.record(Operation.DELETE, name, start);
         }
     }
 
-    private Optional<StoredProfile> parseResult(ResultSet resultSet) throws SQLException {
-        if (resultSet.next()) {
-            long userId = resultSet.getInt("UserID");
+    /**
+     * Create the table of the shared Mojang lookups. It's independent of the profile table and only required if the
+     * lookups are shared through the database.
+     *
+     * @throws SQLException on database errors
+     */
+    public void createMojangTable() throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(CREATE_MOJANG_TABLE_STMT);
+        }
+    }
+
+    /**
+     * @param name player name
+     * @return the last lookup of this name by any server or null if the name wasn't requested yet
+     * @throws SQLException on database errors
+     */
+    public MojangLookup loadMojangLookup(String name) throws SQLException {
+        String key = name.toLowerCase(Locale.ROOT);
+        return readQuery(false, LOAD_MOJANG_LOOKUP, stmt -> stmt.setString(1, key), resultSet -> {
+            if (!resultSet.next()) {
+                return null;
+            }
 
-            UUID uuid = Optional.ofNullable(resultSet.getString("UUID")).map(UUIDAdapter::parseId).orElse(null);
+            Profile profile = null;
+            if (resultSet.getBoolean("Premium")) {
+                UUID id = UUIDAdapter.parseId(resultSet.getString("UUID"));
+                profile = new Profile(id, resultSet.getString("ProfileName"));
+            }
 
-            String name = resultSet.getString("Name");
-            boolean premium = resultSet.getBoolean("Premium");
-            int floodgateNum = resultSet.getInt("Floodgate");
-            FloodgateState floodgate;
+            Instant fetched = Instant.ofEpochMilli(resultSet.getLong("Fetched"));
+            return new MojangLookup(name, profile, fetched);
+        });
+    }
 
-            // if the player wasn't migrated to the new database format
-            if (resultSet.wasNull()) {
-                floodgate = FloodgateState.NOT_MIGRATED;
+    /**
+     * Store the result of a Mojang lookup for the other servers. It replaces older results of the same name.
+     *
+     * @param name requested player name
+     * @param profile premium profile or null if the name isn't premium
+     * @param fetched time of the request
+     * @throws SQLException on database errors
+     */
+    public void saveMojangLookup(String name, Profile profile, Instant fetched) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement(SAVE_MOJANG_LOOKUP)) {
+            metrics.applyQueryTimeout(stmt);
+            stmt.setString(1, name.toLowerCase(Locale.ROOT));
+            if (profile == null) {
+                stmt.setNull(2, Types.CHAR);
+                stmt.setNull(3, Types.VARCHAR);
             } else {
-                floodgate = FloodgateState.fromInt(floodgateNum);
+                stmt.setString(2, UUIDAdapter.toMojangId(profile.getId()));
+                stmt.setString(3, profile.getName());
+            }
+
+            stmt.setBoolean(4, profile != null);
+            stmt.setLong(5, fetched.toEpochMilli());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @param fetchedBefore results that were requested before this time will be deleted
+     * @return number of deleted results
+     * @throws SQLException on database errors
+     */
+    public int deleteMojangLookups(Instant fetchedBefore) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement(DELETE_MOJANG_LOOKUPS)) {
+            stmt.setLong(1, fetchedBefore.toEpochMilli());
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Run a read-only query. Subclasses could route it to different connections than the writes.
+     *
+     * @param sql query
+     * @param binder sets the parameters of the statement
+     * @param mapper converts the result
+     * @param <T> result type
+     * @return the mapped result
+     * @throws SQLException on database errors
+     */
+    protected <T> T query(String sql, StatementBinder binder, ResultMapper<T> mapper) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement(sql)) {
+            binder.bind(stmt);
+
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return mapper.map(resultSet);
+            }
+        }
+    }
+
+    /**
+     * Run a profile lookup on a read replica if they are enabled. Lookups of recently written players and lookups that
+     * failed on the replica are sent to the primary.
+     */
+    private <T> T readQuery(boolean recentlyWritten, String sql, StatementBinder binder, ResultMapper<T> mapper)
+            throws SQLException {
+        StatementBinder limitedBinder = stmt -> {
+            metrics.applyQueryTimeout(stmt);
+            binder.bind(stmt);
+        };
+
+        if (replicas != null && !recentlyWritten) {
+            try {
+                return replicas.query(sql, limitedBinder, mapper);
+            } catch (SQLException sqlEx) {
+                log.warn("Failed to query read replica. Using the primary database instead", sqlEx);
             }
+        }
+
+        return query(sql, limitedBinder, mapper);
+    }
 
-            String lastIp = resultSet.getString("LastIp");
-            Instant lastLogin = resultSet.getTimestamp("LastLogin").toInstant();
-            return Optional.of(new StoredProfile(userId, uuid, name, premium, floodgate, lastIp, lastLogin));
+    private Optional<StoredProfile> parseResult(ResultSet resultSet) throws SQLException {
+        if (resultSet.next()) {
+            return Optional.of(parseRow(resultSet));
         }
 
         return Optional.empty();
     }
 
+    private List<StoredProfile> parseResults(ResultSet resultSet) throws SQLException {
+        List<StoredProfile> profiles = new ArrayList<>();
+        while (resultSet.next()) {
+            profiles.add(parseRow(resultSet));
+        }
+
+        return profiles;
+    }
+
+    private StoredProfile parseRow(ResultSet resultSet) throws SQLException {
+        long userId = resultSet.getInt("UserID");
+
+        UUID uuid = null;
+        if (binaryColumns) {
+            uuid = Optional.ofNullable(resultSet.getBytes("UUIDBin")).map(BinaryColumns::toUUID).orElse(null);
+        }
+
+        if (uuid == null) {
+            uuid = Optional.ofNullable(resultSet.getString("UUID")).map(UUIDAdapter::parseId).orElse(null);
+        }
+
+        String name = resultSet.getString("Name");
+        boolean premium = resultSet.getBoolean("Premium");
+        int floodgateNum = resultSet.getInt("Floodgate");
+        FloodgateState floodgate;
+
+        // if the player wasn't migrated to the new database format
+        if (resultSet.wasNull()) {
+            floodgate = FloodgateState.NOT_MIGRATED;
+        } else {
+            floodgate = FloodgateState.fromInt(floodgateNum);
+        }
+
+        String lastIp = resultSet.getString("LastIp");
+        if (binaryColumns) {
+            byte[] binaryIp = resultSet.getBytes("LastIpBin");
+            if (binaryIp != null) {
+                lastIp = BinaryColumns.toAddress(binaryIp);
+            }
+        }
+
+        Instant lastLogin = readTimestamp(resultSet, "LastLogin");
+        return new StoredProfile(userId, uuid, name, premium, floodgate, lastIp, lastLogin);
+    }
+
     @Override
     public void save(StoredProfile playerProfile) {
+        if (nameFilter != null) {
+            nameFilter.add(playerProfile.getName());
+        }
+
+        if (!isWriteRequired(playerProfile)) {
+            return;
+        }
+
+        if (replicas != null) {
+            replicas.markWritten(playerProfile.getName(), playerProfile.getId());
+        }
+
+        // the queue is closed on shutdown - write the remaining saves directly
+        if (writeBehind != null && writeBehind.enqueue(playerProfile)) {
+            return;
+        }
+
+        long start = System.nanoTime();
         try (Connection con = dataSource.getConnection()) {
-            String uuid = playerProfile.getOptId().map(UUIDAdapter::toMojangId).orElse(null);
+            if (!saveProfile(con, playerProfile)) {
+                logDeleted(playerProfile);
+            }
+        } catch (SQLException ex) {
+            log.error("Failed to save playerProfile {}", playerProfile, ex);
+        } finally {
+            metrics.record(Operation.SAVE, playerProfile.getName(), start);
+        }
+    }
+
+    /**
+     * Write all profiles using a single connection and transaction. Updates are sent as one JDBC batch. If the batch
+     * fails, the profiles will be saved one by one, so a single broken entry doesn't discard the others.
+     *
+     * @param profiles dirty profiles
+     * @return profiles that couldn't be written - they are still marked as dirty
+     * @throws SQLException if the database isn't reachable, nothing was written then
+     */
+    protected Collection<StoredProfile> saveBatch(Collection<StoredProfile> profiles) throws SQLException {
+        for (StoredProfile profile : profiles) {
+            if (nameFilter != null) {
+                nameFilter.add(profile.getName());
+            }
+
+            // the stickiness starts again after the delay of the write-behind queue
+            if (replicas != null) {
+                replicas.markWritten(profile.getName(), profile.getId());
+            }
+        }
 
-            playerProfile.getSaveLock().lock();
+        long start = System.nanoTime();
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+
+            Collection<StoredProfile> inserted = new ArrayList<>();
+            Map<StoredProfile, Set<Field>> written = new IdentityHashMap<>(profiles.size());
+            Set<StoredProfile> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
             try {
-                if (playerProfile.isExistingPlayer()) {
-                    try (PreparedStatement saveStmt = con.prepareStatement(UPDATE_PROFILE)) {
-                        saveStmt.setString(1, uuid);
-                        saveStmt.setString(2, playerProfile.getName());
-                        saveStmt.setBoolean(3, playerProfile.isOnlinemodePreferred());
-                        saveStmt.setInt(4, playerProfile.getFloodgate().getValue());
-                        saveStmt.setString(5, playerProfile.getLastIp());
-
-                        saveStmt.setLong(6, playerProfile.getRowId());
-                        saveStmt.execute();
+                writeBatch(con, profiles, inserted, written, deleted);
+                con.commit();
+
+                Instant now = Instant.now();
+                for (StoredProfile profile : written.keySet()) {
+                    if (!deleted.contains(profile)) {
+                        profile.setLastLogin(now);
                     }
-                } else {
-                    try (PreparedStatement saveStmt = con.prepareStatement(INSERT_PROFILE, RETURN_GENERATED_KEYS)) {
-                        saveStmt.setString(1, uuid);
-
-                        saveStmt.setString(2, playerProfile.getName());
-                        saveStmt.setBoolean(3, playerProfile.isOnlinemodePreferred());
-                        saveStmt.setBoolean(3, playerProfile.isOnlinemodePreferred());
-                        saveStmt.setInt(4, playerProfile.getFloodgate().getValue());
-                        saveStmt.setString(5, playerProfile.getLastIp());
-
-                        saveStmt.execute();
-                        try (ResultSet generatedKeys = saveStmt.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                playerProfile.setRowId(generatedKeys.getInt(1));
-                            }
+                }
+
+                deleted.forEach(this::logDeleted);
+                return Collections.emptyList();
+            } catch (SQLException batchEx) {
+                // generated ids of the rolled back inserts are no longer valid
+                for (StoredProfile profile : inserted) {
+                    profile.setRowId(-1);
+                }
+
+                written.forEach(StoredProfile::markDirty);
+                con.rollback();
+
+                log.warn("Failed to save batch of {} profiles. Saving them one by one", profiles.size(), batchEx);
+                con.setAutoCommit(true);
+
+                Collection<StoredProfile> failed = new ArrayList<>();
+                for (StoredProfile profile : profiles) {
+                    try {
+                        if (!saveProfile(con, profile)) {
+                            logDeleted(profile);
                         }
+                    } catch (SQLException ex) {
+                        log.error("Failed to save playerProfile {}", profile, ex);
+                        failed.add(profile);
                     }
                 }
-            } finally {
-                playerProfile.getSaveLock().unlock();
+
+                return failed;
             }
-        } catch (SQLException ex) {
-            log.error("Failed to save playerProfile {}", playerProfile, ex);
+        } finally {
+            metrics.record(Operation.SAVE, profiles.size() + " profiles", start);
         }
     }
 
-    /**
-     * SQLite has a slightly different syntax, so this will be overridden by SQLiteStorage
-     * @return An SQL Statement to create the `premium` table
-     */
-    protected String getCreateTableStmt() {
-        return CREATE_TABLE_STMT;
+    private void writeBatch(Connection con, Collection<StoredProfile> profiles, Collection<StoredProfile> inserted,
+                            Map<StoredProfile, Set<Field>> written, Collection<StoredProfile> deleted)
+            throws SQLException {
+        Map<UpdateType, PreparedStatement> updateStmts = new EnumMap<>(UpdateType.class);
+        Map<UpdateType, List<StoredProfile>> updated = new EnumMap<>(UpdateType.class);
+        try (PreparedStatement insertStmt = prepareInsert(con)) {
+            for (StoredProfile profile : profiles) {
+                profile.getSaveLock().lock();
+                try {
+                    Snapshot snapshot = profile.takeSnapshot();
+                    written.put(profile, snapshot.getDirtyFields());
+                    if (snapshot.isExistingPlayer()) {
+                        UpdateType type = UpdateType.fromChanges(snapshot.getDirtyFields());
+                        PreparedStatement updateStmt = updateStmts.get(type);
+                        if (updateStmt == null) {
+                            updateStmt = prepareUpdate(con, type);
+                            updateStmts.put(type, updateStmt);
+                            updated.put(type, new ArrayList<>());
+                        }
+
+                        bindUpdate(updateStmt, type, snapshot);
+                        updateStmt.addBatch();
+                        updated.get(type).add(profile);
+                    } else {
+                        // inserts are executed directly, because not every driver returns keys for batches
+                        executeInsert(insertStmt, profile, snapshot);
+                        inserted.add(profile);
+                    }
+                } finally {
+                    profile.getSaveLock().unlock();
+                }
+            }
+
+            for (Map.Entry<UpdateType, PreparedStatement> entry : updateStmts.entrySet()) {
+                int[] updateCounts = entry.getValue().executeBatch();
+                List<StoredProfile> batch = updated.get(entry.getKey());
+                for (int i = 0; i < updateCounts.length && i < batch.size(); i++) {
+                    if (updateCounts[i] == 0) {
+                        StoredProfile profile = batch.get(i);
+                        deleted.add(profile);
+                    }
+                }
+            }
+        } finally {
+            for (PreparedStatement updateStmt : updateStmts.values()) {
+                updateStmt.close();
+            }
+        }
+    }
+
+    /**
+     * @return false if the row of the existing player was deleted in the meantime, for example by another server
+     */
+    private boolean saveProfile(Connection con, StoredProfile playerProfile) throws SQLException {
+        playerProfile.getSaveLock().lock();
+        Snapshot snapshot = playerProfile.takeSnapshot();
+        try {
+            if (snapshot.isExistingPlayer()) {
+                UpdateType type = UpdateType.fromChanges(snapshot.getDirtyFields());
+                try (PreparedStatement saveStmt = prepareUpdate(con, type)) {
+                    bindUpdate(saveStmt, type, snapshot);
+                    if (saveStmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+            } else {
+                try (PreparedStatement saveStmt = prepareInsert(con)) {
+                    executeInsert(saveStmt, playerProfile, snapshot);
+                }
+            }
+
+            playerProfile.setLastLogin(Instant.now());
+            return true;
+        } catch (SQLException sqlEx) {
+            playerProfile.markDirty(snapshot.getDirtyFields());
+            throw sqlEx;
+        } finally {
+            playerProfile.getSaveLock().unlock();
+        }
+    }
+
+    /**
+     * Unchanged profiles only need to be written if the last login should be refreshed. A changed IP alone is
+     * delayed until then too, so players that reconnect quickly don't cause a write on every login.
+     */
+    private boolean isWriteRequired(StoredProfile playerProfile) {
+        Snapshot snapshot = playerProfile.getSnapshot();
+        if (!snapshot.isExistingPlayer()) {
+            return true;
+        }
+
+        for (Field changed : snapshot.getDirtyFields()) {
+            if (changed != Field.LAST_IP) {
+                return true;
+            }
+        }
+
+        // a timestamp in the future means the clocks or time zones of the database and this server differ
+        Instant now = Instant.now();
+        Instant lastLogin = snapshot.getLastLogin();
+        return lastLogin == null || lastLogin.isAfter(now) || !lastLogin.plus(lastLoginRefreshInterval).isAfter(now);
+    }
+
+    /**
+     * The row was deleted after the profile was loaded. It isn't inserted again, because the deletion was requested
+     * explicitly, like by the delete command on another server.
+     */
+    private void logDeleted(StoredProfile playerProfile) {
+        playerProfile.markDeleted();
+        log.warn("Profile {} was deleted in the meantime. The changes of this session are not saved", playerProfile);
+    }
+
+    private PreparedStatement prepareInsert(Connection con) throws SQLException {
+        PreparedStatement stmt;
+        if (insertReturning) {
+            stmt = con.prepareStatement(insertProfileStmt);
+        } else {
+            stmt = con.prepareStatement(insertProfileStmt, RETURN_GENERATED_KEYS);
+        }
+
+        metrics.applyQueryTimeout(stmt);
+        return stmt;
+    }
+
+    private PreparedStatement prepareUpdate(Connection con, UpdateType type) throws SQLException {
+        PreparedStatement stmt = con.prepareStatement(getUpdateStmt(type));
+        metrics.applyQueryTimeout(stmt);
+        return stmt;
+    }
+
+    private void executeInsert(PreparedStatement insertStmt, StoredProfile playerProfile, Snapshot snapshot)
+            throws SQLException {
+        bindProfile(insertStmt, snapshot);
+        if (insertReturning) {
+            try (ResultSet resultSet = insertStmt.executeQuery()) {
+                if (resultSet.next()) {
+                    playerProfile.setRowId(resultSet.getLong(1));
+                }
+            }
+        } else {
+            insertStmt.executeUpdate();
+            readGeneratedId(insertStmt, playerProfile);
+        }
+    }
+
+    private String getUpdateStmt(UpdateType type) {
+        switch (type) {
+            case LAST_IP:
+                return binaryColumns ? UPDATE_LAST_IP_BINARY : UPDATE_LAST_IP;
+            case LAST_LOGIN:
+                return UPDATE_LAST_LOGIN;
+            case FULL:
+            default:
+                return binaryColumns ? UPDATE_PROFILE_BINARY : UPDATE_PROFILE;
+        }
+    }
+
+    private void bindUpdate(PreparedStatement stmt, UpdateType type, Snapshot snapshot) throws SQLException {
+        int rowIdIndex;
+        switch (type) {
+            case LAST_IP:
+                rowIdIndex = bindLastIp(stmt, snapshot.getLastIp());
+                break;
+            case LAST_LOGIN:
+                rowIdIndex = 1;
+                break;
+            case FULL:
+            default:
+                rowIdIndex = bindProfile(stmt, snapshot);
+                break;
+        }
+
+        stmt.setLong(rowIdIndex, snapshot.getRowId());
+    }
+
+    private int bindLastIp(PreparedStatement stmt, String lastIp) throws SQLException {
+        byte[] binaryIp = binaryFormat ? BinaryColumns.fromAddress(lastIp) : null;
+        stmt.setString(1, binaryIp == null ? lastIp : "");
+        if (!binaryColumns) {
+            return 2;
+        }
+
+        stmt.setBytes(2, binaryIp);
+        return 3;
+    }
+
+    /**
+     * @return index of the next unbound parameter
+     */
+    private int bindProfile(PreparedStatement stmt, Snapshot snapshot) throws SQLException {
+        UUID id = snapshot.getId();
+        String lastIp = snapshot.getLastIp();
+
+        byte[] binaryId = id == null || !binaryColumns ? null : BinaryColumns.fromUUID(id);
+        byte[] binaryIp = binaryFormat ? BinaryColumns.fromAddress(lastIp) : null;
+
+        // the text column stays readable for older versions while the format is disabled
+        stmt.setString(1, id == null || binaryFormat ? null : UUIDAdapter.toMojangId(id));
+        stmt.setString(2, snapshot.getName());
+        stmt.setBoolean(3, snapshot.isOnlinemodePreferred());
+        stmt.setInt(4, snapshot.getFloodgate().getValue());
+        // not nullable - values that are no IP literals stay in the text column
+        stmt.setString(5, binaryIp == null ? lastIp : "");
+        if (!binaryColumns) {
+            return 6;
+        }
+
+        // the binary id is always written, so converted tables don't need the text column for lookups
+        stmt.setBytes(6, binaryId);
+        // clear stale binary values if the format was disabled again
+        stmt.setBytes(7, binaryIp);
+        return 8;
+    }
+
+    private void readGeneratedId(PreparedStatement insertStmt, StoredProfile playerProfile) throws SQLException {
+        try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
+            if (generatedKeys.next()) {
+                playerProfile.setRowId(generatedKeys.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Skip saves of unchanged profiles if the last login was refreshed within this interval.
+     *
+     * @param interval minimum time between two writes of the last login or zero to refresh it on every save
+     */
+    public void setLastLoginRefreshInterval(Duration interval) {
+        this.lastLoginRefreshInterval = interval;
+    }
+
+    /**
+     * Queue saves and write them in batches in the background instead of writing each profile immediately.
+     *
+     * @param batchSize number of queued profiles that trigger a flush
+     * @param maxQueueSize maximum number of queued profiles while the database is unreachable
+     * @param flushInterval maximum time a save stays queued
+     */
+    public void enableWriteBehind(int batchSize, int maxQueueSize, Duration flushInterval) {
+        if (writeBehind == null) {
+            writeBehind = new WriteBehindQueue(log, this, batchSize, maxQueueSize, flushInterval, threadFactory);
+        }
+    }
+
+    /**
+     * Periodically delete cracked profiles that didn't join for the given number of days.
+     *
+     * @param days minimum age of the last login
+     * @param batchSize maximum number of rows deleted in one transaction
+     * @param interval time between two runs
+     */
+    public void enableRetention(int days, int batchSize, Duration interval) {
+        if (retentionJob == null) {
+            retentionJob = new RetentionJob(log, this, days, batchSize, interval, threadFactory);
+        }
+    }
+
+    /**
+     * @return latencies of the database operations and the state of the connection pool
+     */
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the retention job or null if it's disabled
+     */
+    public RetentionJob getRetentionJob() {
+        return retentionJob;
+    }
+
+    /**
+     * Delete the next chunk of stale cracked profiles. Bedrock players are kept, because their entry isn't created by
+     * a cracked login.
+     *
+     * @param afterId only rows with a higher id will be checked
+     * @param days minimum age of the last login
+     * @param limit maximum number of rows to delete
+     * @return number of deleted rows and the position to continue
+     * @throws SQLException on database errors
+     */
+    protected PruneResult pruneBatch(long afterId, int days, int limit) throws SQLException {
+        String staleCondition = "`Premium` = ? AND (`Floodgate` IS NULL OR `Floodgate` <> ?) AND "
+                + getLastLoginBefore();
+        String selectStmt = "SELECT `UserID` FROM `" + PREMIUM_TABLE + "` WHERE `UserID` > ? AND " + staleCondition
+                + " ORDER BY `UserID` LIMIT ?";
+
+        try (Connection con = dataSource.getConnection()) {
+            List<Long> ids = new ArrayList<>(limit);
+            try (PreparedStatement stmt = con.prepareStatement(selectStmt)) {
+                stmt.setLong(1, afterId);
+                int index = bindStaleCondition(stmt, 2, days);
+                stmt.setInt(index, limit);
+
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong(1));
+                    }
+                }
+            }
+
+            if (ids.isEmpty()) {
+                return new PruneResult(afterId, 0, true);
+            }
+
+            int deleted = 0;
+            for (List<Long> chunk : Lists.partition(ids, BULK_CHUNK_SIZE)) {
+                // check the condition again in case the player joined in the meantime
+                String deleteStmt = "DELETE FROM `" + PREMIUM_TABLE + "` WHERE `UserID` IN "
+                        + buildPlaceholders(chunk.size()) + " AND " + staleCondition;
+                try (PreparedStatement stmt = con.prepareStatement(deleteStmt)) {
+                    int index = 1;
+                    for (long id : padChunk(chunk)) {
+                        stmt.setLong(index++, id);
+                    }
+
+                    bindStaleCondition(stmt, index, days);
+                    deleted += stmt.executeUpdate();
+                }
+            }
+
+            return new PruneResult(ids.get(ids.size() - 1), deleted, ids.size() < limit);
+        }
+    }
+
+    private static int bindStaleCondition(PreparedStatement stmt, int startIndex, int days) throws SQLException {
+        stmt.setBoolean(startIndex, false);
+        stmt.setInt(startIndex + 1, FloodgateState.TRUE.getValue());
+        stmt.setInt(startIndex + 2, days);
+        return startIndex + 3;
+    }
+
+    /**
+     * @return condition that compares the last login with the current time minus the number of days bound as
+     * parameter. It has to use the same clock as CURRENT_TIMESTAMP.
+     */
+    protected String getLastLoginBefore() {
+        return "`LastLogin` < DATE_SUB(CURRENT_TIMESTAMP, INTERVAL ? DAY)";
+    }
+
+    /**
+     * Send profile lookups to read replicas. Writes and lookups of players written within the stickiness are still
+     * handled by the primary, so a player always reads their own changes.
+     *
+     * @param replicaConfigs pool configuration per replica
+     * @param stickiness duration a written player is read from the primary - should be above the replication lag
+     */
+    protected void enableReplicaPools(List<HikariConfig> replicaConfigs, Duration stickiness) {
+        if (replicas == null && !replicaConfigs.isEmpty()) {
+            for (HikariConfig replicaConfig : replicaConfigs) {
+                // copied from the primary config - the replica pools would replace its pool stats
+                if (replicaConfig.getMetricsTrackerFactory() == metrics) {
+                    replicaConfig.setMetricsTrackerFactory(null);
+                }
+            }
+
+            replicas = new ReplicaPool(replicaConfigs, stickiness);
+        }
+    }
+
+    /**
+     * Skip database lookups for names that were never stored. The filter will be filled with all stored names
+     * before this method returns.
+     *
+     * @param expectedNames minimum number of names the filter should be sized for
+     * @param falsePositiveRate probability that a lookup for an unknown name still queries the database
+     * @throws SQLException if the existing names couldn't be loaded
+     */
+    public void enableNameFilter(long expectedNames, double falsePositiveRate) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            long rows;
+            try (ResultSet resultSet = stmt.executeQuery(COUNT_PROFILES)) {
+                resultSet.next();
+                rows = resultSet.getLong(1);
+            }
+
+            // leave room for new players
+            NameFilter filter = new NameFilter(Math.max(expectedNames, rows * 2), falsePositiveRate);
+
+            // the count is only an estimate, because players could join in the meantime
+            long loaded = 0;
+            prepareStreaming(stmt);
+            try (ResultSet resultSet = stmt.executeQuery(LOAD_ALL_NAMES)) {
+                while (resultSet.next()) {
+                    filter.add(resultSet.getString(1));
+                    loaded++;
+                }
+            }
+
+            log.info("Loaded {} player names into the lookup filter", loaded);
+            this.nameFilter = filter;
+        }
+    }
+
+    /**
+     * @return maximum number of requests that can use a database connection at the same time
+     */
+    public int getMaxConnections() {
+        if (replicas != null) {
+            return dataSource.getMaximumPoolSize() + replicas.getMaxConnections();
+        }
+
+        return dataSource.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the name filter or null if every lookup queries the database
+     */
+    public NameFilter getNameFilter() {
+        return nameFilter;
+    }
+
+    /**
+     * @return highest row id or 0 if the table is empty
+     * @throws SQLException on database errors
+     */
+    public long getMaxRowId() throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet resultSet = stmt.executeQuery(LOAD_MAX_ID)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * @param afterId only rows with a higher id will be counted
+     * @return number of stored profiles
+     * @throws SQLException on database errors
+     */
+    public long countProfiles(long afterId) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement(COUNT_PROFILES_AFTER)) {
+            stmt.setLong(1, afterId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Read all profiles ordered by their row id with forward-only cursors, so the memory usage doesn't depend on the
+     * size of the table. The connection is released after every chunk of rows.
+     *
+     * @param afterId only rows with a higher id will be read
+     * @param consumer receives every profile
+     * @throws SQLException on database errors or if the consumer failed
+     */
+    public void streamProfiles(long afterId, ProfileConsumer consumer) throws SQLException {
+        long lastId = afterId;
+        int rows;
+        do {
+            rows = 0;
+            try (Connection con = dataSource.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(LOAD_PROFILES_AFTER,
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                prepareStreaming(stmt);
+                stmt.setLong(1, lastId);
+                stmt.setInt(2, STREAM_CHUNK_SIZE);
+
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        StoredProfile profile = parseRow(resultSet);
+                        consumer.accept(profile);
+
+                        lastId = profile.getRowId();
+                        rows++;
+                    }
+                }
+            }
+        } while (rows == STREAM_CHUNK_SIZE);
+    }
+
+    /**
+     * Insert copies of profiles from another storage as one batch and transaction. The row ids and the last login
+     * times are kept, so a partial import can be continued after the highest imported row id.
+     *
+     * @param profiles profiles of another storage
+     * @throws SQLException on database errors - nothing of this batch will be written then
+     */
+    public void importProfiles(Collection<StoredProfile> profiles) throws SQLException {
+        importProfiles(profiles, true);
+    }
+
+    /**
+     * Insert copies of profiles from another storage as one batch and transaction. The last login times are kept.
+     *
+     * @param profiles profiles of another storage
+     * @param keepRowIds true to insert the rows with the row id of the source, false to generate new ids
+     * @throws SQLException on database errors - nothing of this batch will be written then
+     */
+    public void importProfiles(Collection<StoredProfile> profiles, boolean keepRowIds) throws SQLException {
+        String importStmt;
+        if (keepRowIds) {
+            importStmt = binaryColumns ? IMPORT_PROFILE_BINARY : IMPORT_PROFILE;
+        } else {
+            importStmt = binaryColumns ? IMPORT_COPY_BINARY : IMPORT_COPY;
+        }
+
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement stmt = con.prepareStatement(importStmt)) {
+                for (StoredProfile profile : profiles) {
+                    Snapshot snapshot = profile.getSnapshot();
+                    int index = bindProfile(stmt, snapshot);
+                    bindTimestamp(stmt, index, snapshot.getLastLogin());
+                    if (keepRowIds) {
+                        stmt.setLong(index + 1, snapshot.getRowId());
+                    }
+
+                    stmt.addBatch();
+                }
+
+                stmt.executeBatch();
+                con.commit();
+            } catch (SQLException sqlEx) {
+                con.rollback();
+                throw sqlEx;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Load a page of profiles ordered by their row id. The connection is released before this method returns, so
+     * the caller can write to the same database while walking the table.
+     *
+     * @param afterId only rows with a higher id will be read
+     * @param limit maximum number of profiles
+     * @return loaded profiles - fewer than the limit if the end of the table was reached
+     * @throws SQLException on database errors
+     */
+    public List<StoredProfile> loadProfilesAfter(long afterId, int limit) throws SQLException {
+        return query(LOAD_PROFILES_AFTER, stmt -> {
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, limit);
+        }, this::parseResults);
+    }
+
+    /**
+     * Open the idle connections of the pool and prepare the statements of a login on each of them. Otherwise, the
+     * first logins after a restart pay for creating the connections. Drivers with a statement cache, like MySQL, also
+     * keep the statements prepared.
+     *
+     * @return number of prepared connections
+     * @throws SQLException if a connection couldn't be opened
+     */
+    public int warmUp() throws SQLException {
+        int size = Math.max(1, dataSource.getMinimumIdle());
+        List<Connection> connections = new ArrayList<>(size);
+        try {
+            // hold all of them at the same time, so the pool has to open new ones
+            for (int i = 0; i < size; i++) {
+                Connection con = dataSource.getConnection();
+                connections.add(con);
+
+                for (String sql : getLoadStatements()) {
+                    con.prepareStatement(sql).close();
+                }
+
+                prepareInsert(con).close();
+                prepareUpdate(con, UpdateType.FULL).close();
+            }
+        } finally {
+            for (Connection con : connections) {
+                con.close();
+            }
+        }
+
+        int prepared = connections.size();
+        if (replicas != null) {
+            prepared += replicas.warmUp(getLoadStatements());
+        }
+
+        return prepared;
+    }
+
+    /**
+     * @return statements used to look up a player during the login
+     */
+    protected List<String> getLoadStatements() {
+        if (binaryConverted) {
+            return Arrays.asList(LOAD_BY_NAME, LOAD_BY_UUID_BINARY_ONLY);
+        }
+
+        return Arrays.asList(LOAD_BY_NAME, binaryColumns ? LOAD_BY_UUID_BINARY : LOAD_BY_UUID);
+    }
+
+    /**
+     * @param limit maximum number of profiles
+     * @return the profiles with the latest logins, starting with the most recent one
+     * @throws SQLException on database errors
+     */
+    public List<StoredProfile> loadRecentProfiles(int limit) throws SQLException {
+        return query(LOAD_RECENT_PROFILES, stmt -> stmt.setInt(1, limit), this::parseResults);
+    }
+
+    /**
+     * @param rowIds row ids of the profiles
+     * @return number of deleted rows
+     * @throws SQLException on database errors
+     */
+    public int deleteRows(Collection<Long> rowIds) throws SQLException {
+        int deleted = 0;
+        try (Connection con = dataSource.getConnection()) {
+            for (List<Long> chunk : Iterables.partition(rowIds, BULK_CHUNK_SIZE)) {
+                String deleteStmt = "DELETE FROM `" + PREMIUM_TABLE + "` WHERE `UserID` IN "
+                        + buildPlaceholders(chunk.size());
+                try (PreparedStatement stmt = con.prepareStatement(deleteStmt)) {
+                    int index = 1;
+                    for (long id : padChunk(chunk)) {
+                        stmt.setLong(index++, id);
+                    }
+
+                    deleted += stmt.executeUpdate();
+                }
+            }
+        }
+
+        return deleted;
+    }
+
+    protected void bindTimestamp(PreparedStatement stmt, int index, Instant time) throws SQLException {
+        stmt.setTimestamp(index, Timestamp.from(time));
+    }
+
+    /**
+     * @param resultSet current row
+     * @param column timestamp column
+     * @return the timestamp as written by CURRENT_TIMESTAMP or {@link #bindTimestamp(PreparedStatement, int, Instant)}
+     * @throws SQLException on database errors
+     */
+    protected Instant readTimestamp(ResultSet resultSet, String column) throws SQLException {
+        return resultSet.getTimestamp(column).toInstant();
+    }
+
+    /**
+     * Configure the statement to fetch the results in small chunks instead of loading the complete result set into
+     * memory.
+     *
+     * @param stmt statement that will run a query over the complete table
+     * @throws SQLException if the driver rejects the fetch size
+     */
+    protected void prepareStreaming(Statement stmt) throws SQLException {
+        stmt.setFetchSize(STREAM_FETCH_SIZE);
+    }
+
+    /**
+     * @return the write-behind queue or null if saves are written directly
+     */
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehind;
+    }
+
+    /**
+     * SQLite has a slightly different syntax, so this will be overridden by SQLiteStorage
+     * @return An SQL Statement to create the `premium` table
+     */
+    protected String getCreateTableStmt() {
+        return CREATE_TABLE_STMT;
     }
 
     @Override
     public void close() {
+        if (binaryConverter != null) {
+            binaryConverter.stop();
+        }
+
+        if (retentionJob != null) {
+            retentionJob.close();
+        }
+
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+
+        if (replicas != null) {
+            replicas.close();
+        }
+
+        metrics.close();
         dataSource.close();
     }
+
+    protected static final class PruneResult {
+
+        private final long lastId;
+        private final int deleted;
+        private final boolean completed;
+
+        PruneResult(long lastId, int deleted, boolean completed) {
+            this.lastId = lastId;
+            this.deleted = deleted;
+            this.completed = completed;
+        }
+
+        /**
+         * @return highest checked row id
+         */
+        public long getLastId() {
+            return lastId;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return true if the end of the table was reached
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    private enum UpdateType {
+
+        FULL,
+
+        LAST_IP,
+
+        LAST_LOGIN;
+
+        static UpdateType fromChanges(Set<Field> changed) {
+            if (changed.isEmpty()) {
+                return LAST_LOGIN;
+            }
+
+            if (changed.size() == 1 && changed.contains(Field.LAST_IP)) {
+                return LAST_IP;
+            }
+
+            return FULL;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProfileConsumer {
+
+        void accept(StoredProfile profile) throws SQLException;
+    }
+
+    @FunctionalInterface
+    protected interface StatementBinder {
+
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    @FunctionalInterface
+    protected interface ResultMapper<T> {
+
+        T map(ResultSet resultSet) throws SQLException;
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.storage.SQLStorage.ResultMapper;
+import com.github.games647.fastlogin.core.storage.SQLStorage.StatementBinder;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of read-only SQLite connections for the WAL journal mode. In this mode readers don't block each other nor
+ * the writer. The connections live as long as the storage, so their prepared statements are cached too. A reader that
+ * failed is closed and reopened on its next use, so a broken connection isn't handed out again.
+ */
+class SQLiteReadPool {
+
+    private final Collection<ReadConnection> connections = new ArrayList<>();
+    private final BlockingQueue<ReadConnection> idle;
+    private final long timeoutMillis;
+
+    SQLiteReadPool(SQLiteConfig config, String url, int size, long timeoutMillis) throws SQLException {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.timeoutMillis = timeoutMillis;
+
+        SQLiteDataSource source = new SQLiteDataSource(config);
+        source.setUrl(url);
+        try {
+            for (int i = 0; i < size; i++) {
+                ReadConnection connection = new ReadConnection(source);
+                connections.add(connection);
+                connection.open();
+                idle.add(connection);
+            }
+        } catch (SQLException sqlEx) {
+            close();
+            throw sqlEx;
+        }
+    }
+
+    <T> T query(String sql, StatementBinder binder, ResultMapper<T> mapper) throws SQLException {
+        ReadConnection connection = borrow();
+        try {
+            PreparedStatement stmt = connection.prepare(sql);
+            stmt.clearParameters();
+            binder.bind(stmt);
+
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return mapper.map(resultSet);
+            }
+        } catch (SQLException sqlEx) {
+            connection.close();
+            throw sqlEx;
+        } finally {
+            idle.add(connection);
+        }
+    }
+
+    /**
+     * @param statements statements to cache on every connection
+     * @return number of prepared connections
+     */
+    int warmUp(Collection<String> statements) throws SQLException {
+        List<ReadConnection> borrowed = new ArrayList<>(connections.size());
+        try {
+            for (int i = 0; i < connections.size(); i++) {
+                ReadConnection connection = borrow();
+                borrowed.add(connection);
+                for (String sql : statements) {
+                    try {
+                        connection.prepare(sql);
+                    } catch (SQLException sqlEx) {
+                        connection.close();
+                        throw sqlEx;
+                    }
+                }
+            }
+        } finally {
+            idle.addAll(borrowed);
+        }
+
+        return borrowed.size();
+    }
+
+    private ReadConnection borrow() throws SQLException {
+        try {
+            ReadConnection connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (connection == null) {
+                throw new SQLTimeoutException("No SQLite reader available after " + timeoutMillis + "ms");
+            }
+
+            return connection;
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a SQLite reader", interruptedEx);
+        }
+    }
+
+    void close() {
+        for (ReadConnection connection : connections) {
+            connection.close();
+        }
+
+        connections.clear();
+        idle.clear();
+    }
+
+    private static class ReadConnection {
+
+        private final SQLiteDataSource source;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private Connection connection;
+
+        ReadConnection(SQLiteDataSource source) {
+            this.source = source;
+        }
+
+        // only accessed by the thread that borrowed this connection
+        void open() throws SQLException {
+            if (connection == null) {
+                connection = source.getConnection();
+            }
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            open();
+
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+
+            return stmt;
+        }
+
+        /**
+         * Close the connection and its statements. The next {@link #prepare(String)} opens a new connection.
+         */
+        void close() {
+            try {
+                for (PreparedStatement stmt : statements.values()) {
+                    stmt.close();
+                }
+
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException ignored) {
+                // closing anyway
+            } finally {
+                statements.clear();
+                connection = null;
+            }
+        }
+    }
+}
@@ -27,13 +27,31 @@ package com.github.games647.fastlogin.core.storage;
 
 import com.github.games647.fastlogin.core.shared.PlatformPlugin;
 import com.zaxxer.hikari.HikariConfig;
+import org.slf4j.Logger;
 import org.sqlite.JDBC;
 import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConfig.SynchronousMode;
 
 import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 public class SQLiteStorage extends SQLStorage {
 
@@ -49,39 +67,152 @@ public class SQLiteStorage extends SQLStorage {
             + ')';
 
     private static final String SQLITE_DRIVER = "org.sqlite.SQLiteDataSource";
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneOffset.UTC);
+    // length of the formatted timestamp without milliseconds
+    private static final int TIMESTAMP_LENGTH = "yyyy-MM-dd HH:mm:ss".length();
+
+    // RETURNING is available since SQLite 3.35 - older drivers are still shipped by old servers
+    private static final int RETURNING_MAJOR = 3;
+    private static final int RETURNING_MINOR = 35;
+
     private final Lock lock = new ReentrantLock();
 
+    private final String url;
+    private final WalOptions walOptions;
+    private final long connectionTimeout;
+
+    private SQLiteReadPool readPool;
+    private boolean returningSupported;
+
     public SQLiteStorage(PlatformPlugin<?> plugin, String databasePath, HikariConfig config) {
-        super(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(),
-                setParams(config, replacePathVariables(plugin.getPluginFolder(), databasePath)));
+        this(plugin, databasePath, config, null);
+    }
+
+    /**
+     * @param plugin plugin instance
+     * @param databasePath path to the database file, which can include the {pluginDir} variable
+     * @param config pool configuration of the writing connection
+     * @param walOptions enables the WAL journal mode with separate read connections or null to use a single
+     *                   connection for everything
+     */
+    public SQLiteStorage(PlatformPlugin<?> plugin, String databasePath, HikariConfig config, WalOptions walOptions) {
+        this(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(),
+                replacePathVariables(plugin.getPluginFolder(), databasePath), config, walOptions);
+    }
+
+    /**
+     * @param log logger for database errors
+     * @param poolName name of the connection pools
+     * @param threadFactory factory for background threads
+     * @param databasePath resolved path to the database file
+     * @param config pool configuration of the writing connection
+     * @param walOptions WAL journal options or null to use a single connection for everything
+     */
+    public SQLiteStorage(Logger log, String poolName, ThreadFactory threadFactory, String databasePath,
+                         HikariConfig config, WalOptions walOptions) {
+        super(log, poolName, threadFactory, setParams(config, databasePath, walOptions));
+
+        this.url = JDBC.PREFIX + databasePath;
+        this.walOptions = walOptions;
+        this.connectionTimeout = config.getConnectionTimeout();
     }
 
-    private static HikariConfig setParams(HikariConfig config, String path) {
+    private static HikariConfig setParams(HikariConfig config, String path, WalOptions walOptions) {
         config.setDataSourceClassName(SQLITE_DRIVER);
 
         config.setConnectionTestQuery("SELECT 1");
+        // SQLite allows only a single writer at the same time
         config.setMaximumPoolSize(1);
 
         config.addDataSourceProperty("url", JDBC.PREFIX + path);
 
+        SQLiteConfig sqLiteConfig = createSQLiteConfig(walOptions, false);
+        if (sqLiteConfig != null) {
+            config.addDataSourceProperty("config", sqLiteConfig);
+        }
+
+        return config;
+    }
+
+    private static SQLiteConfig createSQLiteConfig(WalOptions walOptions, boolean readOnly) {
+        SQLiteConfig sqLiteConfig = new SQLiteConfig();
+
         // a try to fix https://www.spigotmc.org/threads/fastlogin.101192/page-26#post-1874647
         // format strings retrieved by the timestamp column to match them from MySQL
         // vs the default: yyyy-MM-dd HH:mm:ss.SSS
         try {
             SQLiteConfig.class.getDeclaredMethod("setDateStringFormat", String.class);
-
-            SQLiteConfig sqLiteConfig = new SQLiteConfig();
             sqLiteConfig.setDateStringFormat("yyyy-MM-dd HH:mm:ss");
-            config.addDataSourceProperty("config", sqLiteConfig);
         } catch (NoSuchMethodException noSuchMethodException) {
             // Versions below this driver version do set the default timestamp value, so this change is not necessary
+            if (walOptions == null) {
+                return null;
+            }
         }
 
-        return config;
+        if (walOptions != null) {
+            walOptions.apply(sqLiteConfig, readOnly);
+        }
+
+        return sqLiteConfig;
+    }
+
+    @Override
+    public void createTables() throws SQLException {
+        // the driver is provided by the server and could be older than this plugin
+        try (Connection con = dataSource.getConnection()) {
+            String engineVersion = getEngineVersion(con);
+            returningSupported = isReturningSupported(engineVersion);
+            if (!returningSupported) {
+                log.debug("SQLite {} doesn't support RETURNING. New profiles are saved with a plain insert",
+                        engineVersion);
+            }
+        }
+
+        super.createTables();
+
+        // the writer switched the database file to WAL already, so readers can be opened now
+        if (walOptions != null && readPool == null) {
+            SQLiteConfig readerConfig = createSQLiteConfig(walOptions, true);
+            readPool = new SQLiteReadPool(readerConfig, url, walOptions.getReaders(), connectionTimeout);
+        }
+    }
+
+    @Override
+    public int warmUp() throws SQLException {
+        int prepared = super.warmUp();
+        if (readPool != null) {
+            prepared += readPool.warmUp(getLoadStatements());
+        }
+
+        return prepared;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        if (walOptions != null) {
+            return walOptions.getReaders() + 1;
+        }
+
+        return super.getMaxConnections();
+    }
+
+    @Override
+    protected <T> T query(String sql, StatementBinder binder, ResultMapper<T> mapper) throws SQLException {
+        if (readPool != null) {
+            return readPool.query(sql, binder, mapper);
+        }
+
+        return super.query(sql, binder, mapper);
     }
 
     @Override
     public StoredProfile loadProfile(String name) {
+        if (readPool != null) {
+            return super.loadProfile(name);
+        }
+
         lock.lock();
         try {
             return super.loadProfile(name);
@@ -92,6 +223,10 @@ public class SQLiteStorage extends SQLStorage {
 
     @Override
     public StoredProfile loadProfile(UUID uuid) {
+        if (readPool != null) {
+            return super.loadProfile(uuid);
+        }
+
         lock.lock();
         try {
             return super.loadProfile(uuid);
@@ -100,6 +235,34 @@ public class SQLiteStorage extends SQLStorage {
         }
     }
 
+    @Override
+    public Map<String, StoredProfile> loadProfilesByName(Collection<String> names) {
+        if (readPool != null) {
+            return super.loadProfilesByName(names);
+        }
+
+        lock.lock();
+        try {
+            return super.loadProfilesByName(names);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<UUID, StoredProfile> loadProfilesById(Collection<UUID> uuids) {
+        if (readPool != null) {
+            return super.loadProfilesById(uuids);
+        }
+
+        lock.lock();
+        try {
+            return super.loadProfilesById(uuids);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void save(StoredProfile playerProfile) {
         lock.lock();
@@ -110,14 +273,165 @@ public class SQLiteStorage extends SQLStorage {
         }
     }
 
+    @Override
+    protected Collection<StoredProfile> saveBatch(Collection<StoredProfile> profiles) throws SQLException {
+        lock.lock();
+        try {
+            return super.saveBatch(profiles);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param con connection of this database
+     * @return version of the SQLite engine bundled with the driver, for example 3.45.1
+     * @throws SQLException on database errors
+     */
+    protected String getEngineVersion(Connection con) throws SQLException {
+        return con.getMetaData().getDatabaseProductVersion();
+    }
+
+    static boolean isReturningSupported(String engineVersion) {
+        String[] parts = engineVersion == null ? new String[0] : engineVersion.trim().split("\\.");
+        if (parts.length < 2) {
+            return false;
+        }
+
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = Integer.parseInt(parts[1]);
+            return major > RETURNING_MAJOR || (major == RETURNING_MAJOR && minor >= RETURNING_MINOR);
+        } catch (NumberFormatException numberFormatException) {
+            return false;
+        }
+    }
+
+    @Override
+    protected String getUpsertStmt(String insertStmt, List<String> columns) {
+        if (!returningSupported) {
+            // insert and read the generated keys like before
+            return null;
+        }
+
+        return insertStmt + " ON CONFLICT (`Name`) DO UPDATE SET "
+                + columns.stream().map(column -> '`' + column + "`=excluded.`" + column + '`')
+                .collect(Collectors.joining(", "))
+                + ", `LastLogin`=CURRENT_TIMESTAMP RETURNING `UserID`";
+    }
+
+    @Override
+    protected boolean isUpsertReturning() {
+        // the last inserted row id isn't changed by the update
+        return true;
+    }
+
+    @Override
+    protected PruneResult pruneBatch(long afterId, int days, int limit) throws SQLException {
+        lock.lock();
+        try {
+            return super.pruneBatch(afterId, days, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void importProfiles(Collection<StoredProfile> profiles, boolean keepRowIds) throws SQLException {
+        lock.lock();
+        try {
+            super.importProfiles(profiles, keepRowIds);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void bindTimestamp(PreparedStatement stmt, int index, Instant time) throws SQLException {
+        // the driver would store the milliseconds - use the text format of CURRENT_TIMESTAMP instead
+        stmt.setString(index, TIMESTAMP_FORMAT.format(time));
+    }
+
+    @Override
+    protected Instant readTimestamp(ResultSet resultSet, String column) throws SQLException {
+        // the driver would parse the UTC text of CURRENT_TIMESTAMP in the local time zone
+        String text = resultSet.getString(column);
+        if (text != null && text.length() >= TIMESTAMP_LENGTH) {
+            try {
+                return Instant.from(TIMESTAMP_FORMAT.parse(text.substring(0, TIMESTAMP_LENGTH)));
+            } catch (DateTimeParseException parseEx) {
+                // stored as epoch millis by older driver versions
+            }
+        }
+
+        return super.readTimestamp(resultSet, column);
+    }
+
+    @Override
+    protected String getLastLoginBefore() {
+        // CURRENT_TIMESTAMP is stored as UTC text in the same format
+        return "`LastLogin` < datetime('now', '-' || ? || ' days')";
+    }
+
     @Override
     protected String getCreateTableStmt() {
         // SQLite has a different syntax for auto increment
         return CREATE_TABLE_STMT.replace("AUTO_INCREMENT", "AUTOINCREMENT");
     }
 
+    @Override
+    public void close() {
+        if (readPool != null) {
+            readPool.close();
+        }
+
+        super.close();
+    }
+
     private static String replacePathVariables(Path dataFolder, String input) {
         String pluginFolder = dataFolder.toAbsolutePath().toString();
         return input.replace("{pluginDir}", pluginFolder);
     }
+
+    /**
+     * Settings for the write-ahead log journal mode.
+     */
+    public static class WalOptions {
+
+        private final int readers;
+        private final String synchronous;
+        private final int cacheSize;
+        private final long mmapSize;
+
+        /**
+         * @param readers number of read-only connections
+         * @param synchronous synchronous level like NORMAL or FULL. NORMAL is safe against corruption in WAL mode
+         * @param cacheSize page cache size per connection in KiB
+         * @param mmapSize maximum number of bytes used for memory-mapped I/O
+         */
+        public WalOptions(int readers, String synchronous, int cacheSize, long mmapSize) {
+            this.readers = Math.max(1, readers);
+            this.synchronous = synchronous.toUpperCase(Locale.ROOT);
+            this.cacheSize = cacheSize;
+            this.mmapSize = mmapSize;
+        }
+
+        public int getReaders() {
+            return readers;
+        }
+
+        private void apply(SQLiteConfig config, boolean readOnly) {
+            if (readOnly) {
+                // changing the journal mode requires write access, but it's persisted in the file anyway
+                config.setReadOnly(true);
+            } else {
+                config.setJournalMode(JournalMode.WAL);
+            }
+
+            config.setSynchronous(SynchronousMode.valueOf(synchronous));
+            // negative values are interpreted as KiB instead of pages
+            config.setCacheSize(-cacheSize);
+            config.setPragma(Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+        }
+    }
 }
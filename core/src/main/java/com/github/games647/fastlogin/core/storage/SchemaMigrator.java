@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies all migrations that are not recorded in the database yet in ascending order. Each applied migration is
+ * recorded, so it only runs once. Optional migrations can therefore be applied later, even if newer versions are
+ * already present.
+ */
+public class SchemaMigrator {
+
+    protected static final String VERSION_TABLE = "fastlogin_schema";
+
+    private static final String CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS `" + VERSION_TABLE + "` ("
+            + "`Version` INTEGER PRIMARY KEY, "
+            + "`Description` VARCHAR(255) NOT NULL, "
+            + "`AppliedAt` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"
+            + ')';
+
+    private static final String LOAD_VERSIONS = "SELECT `Version` FROM `" + VERSION_TABLE + '`';
+    private static final String INSERT_VERSION = "INSERT INTO `" + VERSION_TABLE
+            + "` (`Version`, `Description`) VALUES (?, ?)";
+
+    private final Logger log;
+
+    public SchemaMigrator(Logger log) {
+        this.log = log;
+    }
+
+    /**
+     * Bring the schema to the latest version. Callers have to make sure that no other instance migrates the same
+     * database at the same time.
+     *
+     * @param con database connection
+     * @param migrations all known migrations
+     * @return the highest applied schema version after the migration
+     * @throws SQLException if a migration failed. Earlier successful migrations stay recorded.
+     */
+    public int migrate(Connection con, List<Migration> migrations) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(CREATE_VERSION_TABLE);
+        }
+
+        Set<Integer> applied = getAppliedVersions(con);
+
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort(Comparator.comparingInt(Migration::getVersion));
+        for (Migration migration : sorted) {
+            if (applied.contains(migration.getVersion())) {
+                continue;
+            }
+
+            log.info("Migrating database schema to version {}: {}", migration.getVersion(),
+                    migration.getDescription());
+            migration.apply(con);
+
+            try (PreparedStatement stmt = con.prepareStatement(INSERT_VERSION)) {
+                stmt.setInt(1, migration.getVersion());
+                stmt.setString(2, migration.getDescription());
+                stmt.executeUpdate();
+            }
+
+            applied.add(migration.getVersion());
+        }
+
+        return getVersion(applied);
+    }
+
+    /**
+     * @param con database connection
+     * @param version migration version
+     * @return true if the migration was applied to this database
+     * @throws SQLException on database errors
+     */
+    public boolean isApplied(Connection con, int version) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(CREATE_VERSION_TABLE);
+        }
+
+        return getAppliedVersions(con).contains(version);
+    }
+
+    public int getVersion(Connection con) throws SQLException {
+        return getVersion(getAppliedVersions(con));
+    }
+
+    private static int getVersion(Set<Integer> applied) {
+        int version = 0;
+        for (int appliedVersion : applied) {
+            version = Math.max(version, appliedVersion);
+        }
+
+        return version;
+    }
+
+    private Set<Integer> getAppliedVersions(Connection con) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = con.createStatement();
+             ResultSet resultSet = stmt.executeQuery(LOAD_VERSIONS)) {
+            while (resultSet.next()) {
+                versions.add(resultSet.getInt(1));
+            }
+        }
+
+        return versions;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.storage.StoredProfile.Snapshot;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates a candidate storage under live load. Every request is answered by the primary storage. Saves, deletes
+ * and a sample of the single lookups are repeated on the shadow storage in the background. The latencies of both and
+ * the lookups with a different result are recorded for the report.
+ * <p>
+ * The mirrored requests run on a single thread in the order of the originals, so a lookup sees the saves before it.
+ * If the shadow storage can't keep up, further requests are dropped instead of slowing down the logins.
+ * <p>
+ * The shadow storage isn't filled with the existing profiles. Therefore, only lookups of players that were saved or
+ * deleted since the start are compared.
+ */
+public class ShadowAuthStorage implements AuthStorage {
+
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    // shadow profiles of recently saved players, so renames update the same row
+    private static final int MAX_MIRRORED_PROFILES = 10_000;
+
+    // bounds the memory usage - lookups of players beyond it are no longer compared
+    private static final int MAX_WRITTEN_KEYS = 100_000;
+
+    // log only the first divergences - the counter shows the rest
+    private static final int MAX_LOGGED_DIVERGENCES = 20;
+
+    private final Logger log;
+    private final AuthStorage primary;
+    private final AuthStorage shadow;
+    private final double readSampleRate;
+    private final ThreadPoolExecutor executor;
+
+    // keyed by the identity of the primary profile - a write-behind primary assigns the row id only later
+    private final Cache<StoredProfile, StoredProfile> mirrored = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_MIRRORED_PROFILES)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    // names and ids that were saved or deleted since the start, so both storages should know them
+    private final Cache<Object, Boolean> written = CacheBuilder.newBuilder()
+            .maximumSize(MAX_WRITTEN_KEYS)
+            .build();
+
+    private final LatencyHistogram primaryLoads = new LatencyHistogram();
+    private final LatencyHistogram shadowLoads = new LatencyHistogram();
+    private final LatencyHistogram primarySaves = new LatencyHistogram();
+    private final LatencyHistogram shadowSaves = new LatencyHistogram();
+
+    private final LongAdder comparedReads = new LongAdder();
+    private final LongAdder divergentReads = new LongAdder();
+    private final LongAdder shadowErrors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param log logger for divergent results
+     * @param primary storage that answers all requests
+     * @param shadow candidate storage that receives the mirrored requests
+     * @param readSampleRate share of the single lookups that are repeated on the shadow storage between 0 and 1
+     * @param queueLimit maximum number of mirrored requests waiting for the shadow storage
+     * @param threadFactory platform thread factory or null for the default one
+     */
+    public ShadowAuthStorage(Logger log, AuthStorage primary, AuthStorage shadow, double readSampleRate,
+                             int queueLimit, ThreadFactory threadFactory) {
+        this.log = log;
+        this.primary = primary;
+        this.shadow = shadow;
+        this.readSampleRate = readSampleRate;
+
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueLimit));
+        if (threadFactory != null) {
+            executor.setThreadFactory(threadFactory);
+        }
+    }
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        long start = System.nanoTime();
+        StoredProfile profile = primary.loadProfile(name);
+        primaryLoads.record(System.nanoTime() - start);
+
+        if (profile != null && isWritten(name) && isSampled()) {
+            Snapshot expected = profile.getSnapshot();
+            mirror(() -> compare(name, expected, timeLoad(() -> shadow.loadProfile(name))));
+        }
+
+        return profile;
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        long start = System.nanoTime();
+        StoredProfile profile = primary.loadProfile(uuid);
+        primaryLoads.record(System.nanoTime() - start);
+
+        if (isWritten(uuid) && isSampled()) {
+            // null is a valid result for deleted players
+            Snapshot expected = profile == null ? null : profile.getSnapshot();
+            mirror(() -> compare(uuid, expected, timeLoad(() -> shadow.loadProfile(uuid))));
+        }
+
+        return profile;
+    }
+
+    @Override
+    public Map<String, StoredProfile> loadProfilesByName(Collection<String> names) {
+        return primary.loadProfilesByName(names);
+    }
+
+    @Override
+    public Map<UUID, StoredProfile> loadProfilesById(Collection<UUID> uuids) {
+        return primary.loadProfilesById(uuids);
+    }
+
+    @Override
+    public int deleteProfile(String name) {
+        int deleted = primary.deleteProfile(name);
+        markWritten(name, null);
+        mirror(() -> {
+            shadow.deleteProfile(name);
+            mirrored.asMap().values().removeIf(profile -> profile.getName().equalsIgnoreCase(name));
+        });
+        return deleted;
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        long start = System.nanoTime();
+        primary.save(playerProfile);
+        primarySaves.record(System.nanoTime() - start);
+
+        // a write-behind primary hasn't written the profile yet, so mirror the requested values
+        Snapshot values = playerProfile.getSnapshot();
+        markWritten(values.getName(), values.getId());
+        mirror(() -> saveShadow(playerProfile, values));
+    }
+
+    private void saveShadow(StoredProfile original, Snapshot written) {
+        StoredProfile copy = mirrored.getIfPresent(original);
+        if (copy == null) {
+            copy = shadow.loadProfile(written.getName());
+            if (copy == null) {
+                shadowErrors.increment();
+                return;
+            }
+
+            mirrored.put(original, copy);
+        }
+
+        // the row ids of both storages are independent - copy only the values
+        copy.setPlayerName(written.getName());
+        copy.setId(written.getId());
+        copy.setOnlinemodePreferred(written.isOnlinemodePreferred());
+        copy.setFloodgate(written.getFloodgate());
+        copy.setLastIp(written.getLastIp());
+
+        long start = System.nanoTime();
+        shadow.save(copy);
+        shadowSaves.record(System.nanoTime() - start);
+    }
+
+    private void markWritten(String name, UUID id) {
+        written.put(name.toLowerCase(Locale.ROOT), Boolean.TRUE);
+        if (id != null) {
+            written.put(id, Boolean.TRUE);
+        }
+    }
+
+    private boolean isWritten(String name) {
+        return written.getIfPresent(name.toLowerCase(Locale.ROOT)) != null;
+    }
+
+    private boolean isWritten(UUID id) {
+        return written.getIfPresent(id) != null;
+    }
+
+    private boolean isSampled() {
+        return readSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < readSampleRate;
+    }
+
+    private StoredProfile timeLoad(Supplier<StoredProfile> load) {
+        long start = System.nanoTime();
+        StoredProfile profile = load.get();
+        shadowLoads.record(System.nanoTime() - start);
+        return profile;
+    }
+
+    private void mirror(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    shadowErrors.increment();
+                    log.warn("Mirrored request to the shadow storage failed", ex);
+                }
+            });
+        } catch (RejectedExecutionException rejectedEx) {
+            dropped.increment();
+        }
+    }
+
+    private void compare(Object key, Snapshot expected, StoredProfile actual) {
+        comparedReads.increment();
+        if (isSame(expected, actual == null ? null : actual.getSnapshot())) {
+            return;
+        }
+
+        divergentReads.increment();
+        if (divergentReads.sum() <= MAX_LOGGED_DIVERGENCES) {
+            log.info("Shadow storage returned a different profile for {}: expected {} but got {}", key,
+                    describe(expected), describe(actual == null ? null : actual.getSnapshot()));
+        }
+    }
+
+    private static boolean isSame(Snapshot expected, Snapshot actual) {
+        if (expected == null || actual == null) {
+            return expected == actual;
+        }
+
+        // row ids, IP addresses and login times are allowed to differ
+        return expected.isExistingPlayer() == actual.isExistingPlayer()
+                && expected.getName().equalsIgnoreCase(actual.getName())
+                && Objects.equals(expected.getId(), actual.getId())
+                && expected.isOnlinemodePreferred() == actual.isOnlinemodePreferred()
+                && expected.getFloodgate() == actual.getFloodgate();
+    }
+
+    private static String describe(Snapshot snapshot) {
+        if (snapshot == null) {
+            return "nothing";
+        }
+
+        return snapshot.getName() + " (existing=" + snapshot.isExistingPlayer() + ", id=" + snapshot.getId()
+                + ", premium=" + snapshot.isOnlinemodePreferred() + ", floodgate=" + snapshot.getFloodgate() + ')';
+    }
+
+    /**
+     * @return human-readable comparison of both storages
+     */
+    public List<String> getReport() {
+        long compared = comparedReads.sum();
+        double divergence = compared == 0 ? 0 : divergentReads.sum() * 100.0 / compared;
+        return Arrays.asList(
+                "Loads primary: " + primaryLoads,
+                "Loads shadow: " + shadowLoads,
+                "Saves primary: " + primarySaves,
+                "Saves shadow: " + shadowSaves,
+                String.format("Compared lookups: %d, divergent: %d (%.2f%%)", compared, divergentReads.sum(),
+                        divergence),
+                "Shadow errors: " + shadowErrors.sum() + ", dropped: " + dropped.sum()
+                        + ", queued: " + executor.getQueue().size()
+        );
+    }
+
+    public LatencyHistogram getPrimaryLoads() {
+        return primaryLoads;
+    }
+
+    public LatencyHistogram getShadowLoads() {
+        return shadowLoads;
+    }
+
+    public LatencyHistogram getPrimarySaves() {
+        return primarySaves;
+    }
+
+    public LatencyHistogram getShadowSaves() {
+        return shadowSaves;
+    }
+
+    public long getComparedReads() {
+        return comparedReads.sum();
+    }
+
+    public long getDivergentReads() {
+        return divergentReads.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public AuthStorage getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Wait until the mirrored requests queued so far are processed.
+     */
+    void awaitMirrored() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(latch::countDown);
+        latch.await();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        primary.close();
+        shadow.close();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Spreads the profiles over multiple databases by a hash of the lower-cased name. Consistent hashing is used, so
+ * appending a new database only moves about 1/n of the profiles to it (see {@link ShardRebalancer}). The order of
+ * the databases must therefore never change.
+ * <p>
+ * Names are looked up on a single shard. UUID lookups don't know the shard, so they ask all shards one after another.
+ * The shards of recently seen UUIDs are remembered to skip this fan-out for reconnecting players.
+ */
+public class ShardedAuthStorage implements AuthStorage {
+
+    private static final HashFunction NAME_HASH = Hashing.sipHash24();
+    private static final int MAX_KNOWN_IDS = 100_000;
+
+    private final Logger log;
+    private final List<SQLStorage> shards;
+
+    private final Cache<UUID, SQLStorage> idShards = CacheBuilder.newBuilder()
+            .maximumSize(MAX_KNOWN_IDS)
+            .build();
+
+    // shard the profile instance was loaded from - weak keys compare by identity
+    private final Cache<StoredProfile, SQLStorage> origins = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    public ShardedAuthStorage(Logger log, List<SQLStorage> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+
+        this.log = log;
+        this.shards = ImmutableList.copyOf(shards);
+    }
+
+    public static int getShardIndex(String name, int shardCount) {
+        String key = name.toLowerCase(Locale.ROOT);
+        return Hashing.consistentHash(NAME_HASH.hashString(key, StandardCharsets.UTF_8), shardCount);
+    }
+
+    public SQLStorage getShard(String name) {
+        return shards.get(getShardIndex(name, shards.size()));
+    }
+
+    public List<SQLStorage> getShards() {
+        return shards;
+    }
+
+    public int getMaxConnections() {
+        return shards.stream().mapToInt(SQLStorage::getMaxConnections).sum();
+    }
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        SQLStorage shard = getShard(name);
+        return register(shard.loadProfile(name), shard);
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        SQLStorage known = idShards.getIfPresent(uuid);
+        if (known != null) {
+            StoredProfile profile = known.loadProfile(uuid);
+            if (profile != null) {
+                return register(profile, known);
+            }
+        }
+
+        for (SQLStorage shard : shards) {
+            if (shard != known) {
+                StoredProfile profile = shard.loadProfile(uuid);
+                if (profile != null) {
+                    return register(profile, shard);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Map<String, StoredProfile> loadProfilesByName(Collection<String> names) {
+        Map<SQLStorage, List<String>> byShard = new HashMap<>();
+        for (String name : names) {
+            byShard.computeIfAbsent(getShard(name), shard -> new ArrayList<>()).add(name);
+        }
+
+        Map<String, StoredProfile> profiles = new HashMap<>(names.size());
+        byShard.forEach((shard, shardNames) -> {
+            for (Map.Entry<String, StoredProfile> entry : shard.loadProfilesByName(shardNames).entrySet()) {
+                profiles.put(entry.getKey(), register(entry.getValue(), shard));
+            }
+        });
+
+        return profiles;
+    }
+
+    @Override
+    public Map<UUID, StoredProfile> loadProfilesById(Collection<UUID> uuids) {
+        Set<UUID> missing = new LinkedHashSet<>(uuids);
+        Map<UUID, StoredProfile> profiles = new HashMap<>(missing.size());
+
+        // first ask the remembered shards, then all shards for the remaining ones
+        Map<SQLStorage, List<UUID>> byShard = new HashMap<>();
+        for (UUID uuid : missing) {
+            SQLStorage known = idShards.getIfPresent(uuid);
+            if (known != null) {
+                byShard.computeIfAbsent(known, shard -> new ArrayList<>()).add(uuid);
+            }
+        }
+
+        byShard.forEach((shard, shardIds) -> loadProfilesById(shard, shardIds, missing, profiles));
+        for (SQLStorage shard : shards) {
+            if (missing.isEmpty()) {
+                break;
+            }
+
+            loadProfilesById(shard, missing, missing, profiles);
+        }
+
+        return profiles;
+    }
+
+    private void loadProfilesById(SQLStorage shard, Collection<UUID> uuids, Set<UUID> missing,
+                                  Map<UUID, StoredProfile> profiles) {
+        Map<UUID, StoredProfile> loaded = shard.loadProfilesById(new ArrayList<>(uuids));
+        for (Map.Entry<UUID, StoredProfile> entry : loaded.entrySet()) {
+            profiles.put(entry.getKey(), register(entry.getValue(), shard));
+            missing.remove(entry.getKey());
+        }
+    }
+
+    @Override
+    public int deleteProfile(String name) {
+        // a renamed player could still be stored on another shard
+        int deleted = 0;
+        for (SQLStorage shard : shards) {
+            deleted += shard.deleteProfile(name);
+        }
+
+        return deleted;
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        SQLStorage target = getShard(playerProfile.getName());
+        SQLStorage origin = origins.getIfPresent(playerProfile);
+        if (origin == null || origin == target || !playerProfile.isExistingPlayer()) {
+            target.save(playerProfile);
+            register(playerProfile, target);
+            return;
+        }
+
+        // a premium player changed the name and the new name belongs to another shard
+        long oldRowId = playerProfile.getRowId();
+        playerProfile.setRowId(-1);
+
+        // bypass a write-behind queue, so the old row is only deleted if the new one exists
+        try {
+            target.saveBatch(Collections.singletonList(playerProfile));
+        } catch (SQLException sqlEx) {
+            log.error("Failed to write profile {} to its new shard", playerProfile, sqlEx);
+        }
+
+        if (!playerProfile.isExistingPlayer()) {
+            playerProfile.setRowId(oldRowId);
+            log.error("Failed to move profile {} to its new shard", playerProfile);
+            return;
+        }
+
+        register(playerProfile, target);
+        try {
+            origin.deleteRows(Collections.singletonList(oldRowId));
+        } catch (SQLException sqlEx) {
+            log.error("Failed to delete the old row of the moved profile {}", playerProfile, sqlEx);
+        }
+    }
+
+    private StoredProfile register(StoredProfile profile, SQLStorage shard) {
+        if (profile != null) {
+            origins.put(profile, shard);
+            if (profile.getId() != null) {
+                idShards.put(profile.getId(), shard);
+            }
+        }
+
+        return profile;
+    }
+
+    @Override
+    public void close() {
+        for (SQLStorage shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.slf4j.Logger;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of the database operations and the state of the connection pool. Hikari reports the time threads waited
+ * for a connection through the metrics tracker, so a login stalled by a full pool can be told apart from a slow query.
+ */
+public class StorageMetrics implements MetricsTrackerFactory {
+
+    private final Logger log;
+
+    private final Map<Operation, LatencyHistogram> operations = new EnumMap<>(Operation.class);
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder slowQueries = new LongAdder();
+
+    private volatile PoolStats poolStats;
+
+    private volatile long slowQueryNanos = Long.MAX_VALUE;
+    private volatile int queryTimeoutSeconds;
+
+    private ScheduledExecutorService reporter;
+
+    public StorageMetrics(Logger log) {
+        this.log = log;
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquire.record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                acquireTimeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * @param threshold operations taking longer will be logged or zero to disable it
+     */
+    public void setSlowQueryThreshold(Duration threshold) {
+        slowQueryNanos = threshold.isZero() || threshold.isNegative() ? Long.MAX_VALUE : threshold.toNanos();
+    }
+
+    /**
+     * @param timeout maximum execution time of a statement or zero for no limit. JDBC only supports whole seconds.
+     */
+    public void setQueryTimeout(Duration timeout) {
+        queryTimeoutSeconds = (int) Math.max(0, (timeout.toMillis() + 999) / 1_000);
+    }
+
+    void applyQueryTimeout(Statement stmt) throws SQLException {
+        if (queryTimeoutSeconds > 0) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+        }
+    }
+
+    /**
+     * @param operation type of the operation
+     * @param target player name, UUID or number of profiles for the slow query log
+     * @param startNanos {@link System#nanoTime()} before the operation including the connection acquisition
+     */
+    void record(Operation operation, Object target, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        operations.get(operation).record(elapsed);
+        if (elapsed >= slowQueryNanos) {
+            slowQueries.increment();
+            log.warn("Slow database {} of {} took {}ms (pool: {})", operation.getName(), target,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), formatPool());
+        }
+    }
+
+    /**
+     * Log a summary in the given interval.
+     *
+     * @param interval time between two reports
+     * @param threadFactory factory for the background thread or null
+     */
+    public void enableReporting(Duration interval, ThreadFactory threadFactory) {
+        if (reporter != null) {
+            return;
+        }
+
+        if (threadFactory == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor();
+        } else {
+            reporter = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+
+        long minutes = Math.max(1, interval.toMinutes());
+        reporter.scheduleWithFixedDelay(() -> log.info("Database metrics - {}", this), minutes, minutes,
+                TimeUnit.MINUTES);
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return operations.get(operation);
+    }
+
+    public LatencyHistogram getAcquireLatency() {
+        return acquire;
+    }
+
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.sum();
+    }
+
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    public int getActiveConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getIdleConnections();
+    }
+
+    public int getPendingThreads() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getPendingThreads();
+    }
+
+    private String formatPool() {
+        return "active=" + getActiveConnections() + " idle=" + getIdleConnections()
+                + " pending=" + getPendingThreads();
+    }
+
+    void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("pool: ").append(formatPool())
+                .append(", acquire: ").append(acquire)
+                .append(", timeouts: ").append(getAcquireTimeouts())
+                .append(", slow: ").append(getSlowQueries());
+        operations.forEach((operation, histogram) -> builder.append(", ").append(operation.getName()).append(": ")
+                .append(histogram));
+        return builder.toString();
+    }
+
+    public enum Operation {
+
+        LOAD("load"),
+
+        BULK_LOAD("bulk load"),
+
+        SAVE("save"),
+
+        DELETE("delete");
+
+        private final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
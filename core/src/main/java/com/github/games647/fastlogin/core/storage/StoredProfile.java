@@ -29,30 +29,40 @@ import com.github.games647.craftapi.model.Profile;
 import com.github.games647.fastlogin.core.shared.FloodgateState;
 
 import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.function.UnaryOperator;
+
+/**
+ * Mutable handle of a stored player. The state is kept in immutable {@link Snapshot snapshots} that are replaced
+ * atomically on every change, so reads never block and concurrent updates don't need a monitor. This matters for
+ * virtual threads, which would pin their carrier thread inside synchronized methods.
+ * <p>
+ * The id and name fields inherited from {@link Profile} mirror the latest snapshot for code that reads them directly.
+ */
 public class StoredProfile extends Profile {
 
-    private long rowId;
+    // orders concurrent writes of the same profile - a j.u.c lock doesn't pin virtual threads
     private final ReentrantLock saveLock = new ReentrantLock();
+    private final AtomicReference<Snapshot> state;
 
-    private boolean premium;
-    private FloodgateState floodgate;
-    private String lastIp;
-    private Instant lastLogin;
+    // the row was deleted by another instance or a cleanup while this profile was in use
+    private volatile boolean deleted;
 
     public StoredProfile(long rowId, UUID uuid, String playerName, boolean premium, FloodgateState floodgate,
                          String lastIp, Instant lastLogin) {
         super(uuid, playerName);
 
-        this.rowId = rowId;
-        this.premium = premium;
-        this.floodgate = floodgate;
-        this.lastIp = lastIp;
-        this.lastLogin = lastLogin;
+        Set<Field> clean = Collections.unmodifiableSet(EnumSet.noneOf(Field.class));
+        this.state = new AtomicReference<>(
+                new Snapshot(rowId, uuid, playerName, premium, floodgate, lastIp, lastLogin, clean)
+        );
     }
 
     public StoredProfile(UUID uuid, String playerName, boolean premium, FloodgateState isFloodgate, String lastIp) {
@@ -68,33 +78,52 @@ public class StoredProfile extends Profile {
         return saveLock;
     }
 
-    public synchronized boolean isExistingPlayer() {
-        return rowId >= 0;
+    /**
+     * @return consistent view of all values at this moment
+     */
+    public Snapshot getSnapshot() {
+        return state.get();
+    }
+
+    private void update(UnaryOperator<Snapshot> change) {
+        Snapshot updated = state.updateAndGet(change);
+        this.id = updated.id;
+        this.name = updated.name;
     }
 
-    public synchronized void setPlayerName(String playerName) {
-        this.name = playerName;
+    public boolean isExistingPlayer() {
+        return state.get().isExistingPlayer();
     }
 
-    public synchronized long getRowId() {
-        return rowId;
+    public void setPlayerName(String playerName) {
+        update(snapshot -> snapshot.withName(playerName));
     }
 
-    public synchronized void setRowId(long generatedId) {
-        this.rowId = generatedId;
+    @Override
+    public String getName() {
+        return state.get().name;
+    }
+
+    public long getRowId() {
+        return state.get().rowId;
+    }
+
+    public void setRowId(long generatedId) {
+        update(snapshot -> snapshot.withRowId(generatedId));
     }
 
     // can be null
-    public synchronized UUID getId() {
-        return id;
+    @Override
+    public UUID getId() {
+        return state.get().id;
     }
 
-    public synchronized Optional<UUID> getOptId() {
-        return Optional.ofNullable(id);
+    public Optional<UUID> getOptId() {
+        return Optional.ofNullable(getId());
     }
 
-    public synchronized void setId(UUID uniqueId) {
-        this.id = uniqueId;
+    public void setId(UUID uniqueId) {
+        update(snapshot -> snapshot.withId(uniqueId));
     }
 
     /**
@@ -103,8 +132,8 @@ public class StoredProfile extends Profile {
      * meaning
      */
     @Deprecated
-    public synchronized boolean isPremium() {
-        return premium;
+    public boolean isPremium() {
+        return isOnlinemodePreferred();
     }
 
     /**
@@ -117,8 +146,8 @@ public class StoredProfile extends Profile {
      *
      * @return whether the online mode should be enabled for this player
      */
-    public synchronized boolean isOnlinemodePreferred() {
-        return premium;
+    public boolean isOnlinemodePreferred() {
+        return state.get().premium;
     }
 
     /**
@@ -126,44 +155,91 @@ public class StoredProfile extends Profile {
      * @deprecated {@link #setOnlinemodePreferred(boolean)} is recommended, because of the better method name
      */
     @Deprecated
-    public synchronized void setPremium(boolean premium) {
-        this.premium = premium;
+    public void setPremium(boolean premium) {
+        setOnlinemodePreferred(premium);
     }
 
-    public synchronized void setOnlinemodePreferred(boolean premium) {
-        this.premium = premium;
+    public void setOnlinemodePreferred(boolean premium) {
+        update(snapshot -> snapshot.withPremium(premium));
     }
 
-    public synchronized FloodgateState getFloodgate() {
-        return floodgate;
+    public FloodgateState getFloodgate() {
+        return state.get().floodgate;
     }
 
-    public synchronized boolean isFloodgateMigrated() {
-        return floodgate != FloodgateState.NOT_MIGRATED;
+    public boolean isFloodgateMigrated() {
+        return getFloodgate() != FloodgateState.NOT_MIGRATED;
     }
 
-    public synchronized void setFloodgate(FloodgateState floodgate) {
-        this.floodgate = floodgate;
+    public void setFloodgate(FloodgateState floodgate) {
+        update(snapshot -> snapshot.withFloodgate(floodgate));
     }
 
-    public synchronized String getLastIp() {
-        return lastIp;
+    public String getLastIp() {
+        return state.get().lastIp;
     }
 
-    public synchronized void setLastIp(String lastIp) {
-        this.lastIp = lastIp;
+    public void setLastIp(String lastIp) {
+        update(snapshot -> snapshot.withLastIp(lastIp));
     }
 
-    public synchronized Instant getLastLogin() {
-        return lastLogin;
+    public Instant getLastLogin() {
+        return state.get().lastLogin;
     }
 
-    public synchronized void setLastLogin(Instant lastLogin) {
-        this.lastLogin = lastLogin;
+    public void setLastLogin(Instant lastLogin) {
+        update(snapshot -> snapshot.withLastLogin(lastLogin));
+    }
+
+    /**
+     * @return fields that were changed since the profile was loaded or saved
+     */
+    public Set<Field> getDirtyFields() {
+        Set<Field> dirtyFields = state.get().dirtyFields;
+        return dirtyFields.isEmpty() ? EnumSet.noneOf(Field.class) : EnumSet.copyOf(dirtyFields);
+    }
+
+    public boolean isDirty() {
+        return !state.get().dirtyFields.isEmpty();
+    }
+
+    /**
+     * Mark the current values as written. Changes made afterwards are tracked again.
+     *
+     * @return the values to write including the fields that were changed until now
+     */
+    Snapshot takeSnapshot() {
+        return state.getAndUpdate(snapshot -> snapshot.withDirtyFields(EnumSet.noneOf(Field.class)));
+    }
+
+    /**
+     * Restore the fields taken by {@link #takeSnapshot()} after a failed write.
+     */
+    void markDirty(Set<Field> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+
+        update(snapshot -> {
+            Set<Field> dirtyFields = EnumSet.copyOf(fields);
+            dirtyFields.addAll(snapshot.dirtyFields);
+            return snapshot.withDirtyFields(dirtyFields);
+        });
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Remember that an update found no row anymore, so caches can drop this instance.
+     */
+    void markDeleted() {
+        deleted = true;
     }
 
     @Override
-    public synchronized boolean equals(Object o) {
+    public boolean equals(Object o) {
         if (this == o) {
             return true;
         }
@@ -172,28 +248,175 @@ public class StoredProfile extends Profile {
             return false;
         }
 
-        StoredProfile that = (StoredProfile) o;
-        if (!super.equals(o)) {
-            return false;
-        }
-
-        return rowId == that.rowId && premium == that.premium
-                && Objects.equals(lastIp, that.lastIp) && lastLogin.equals(that.lastLogin);
+        Snapshot snapshot = state.get();
+        Snapshot that = ((StoredProfile) o).state.get();
+        return snapshot.rowId == that.rowId && snapshot.premium == that.premium
+                && Objects.equals(snapshot.id, that.id) && Objects.equals(snapshot.name, that.name)
+                && Objects.equals(snapshot.lastIp, that.lastIp) && snapshot.lastLogin.equals(that.lastLogin);
     }
 
     @Override
-    public synchronized int hashCode() {
-        return Objects.hash(super.hashCode(), rowId, premium, lastIp, lastLogin);
+    public int hashCode() {
+        Snapshot snapshot = state.get();
+        return Objects.hash(snapshot.id, snapshot.name, snapshot.rowId, snapshot.premium, snapshot.lastIp,
+                snapshot.lastLogin);
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
+        Snapshot snapshot = state.get();
         return this.getClass().getSimpleName() + '{'
-                + "rowId=" + rowId
-                + ", premium=" + premium
-                + ", floodgate=" + floodgate
-                + ", lastIp='" + lastIp + '\''
-                + ", lastLogin=" + lastLogin
-                + "} " + super.toString();
+                + "rowId=" + snapshot.rowId
+                + ", premium=" + snapshot.premium
+                + ", floodgate=" + snapshot.floodgate
+                + ", lastIp='" + snapshot.lastIp + '\''
+                + ", lastLogin=" + snapshot.lastLogin
+                + "} Profile{id=" + snapshot.id + ", name='" + snapshot.name + "'}";
+    }
+
+    /**
+     * Immutable state of a profile at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final long rowId;
+        private final UUID id;
+        private final String name;
+        private final boolean premium;
+        private final FloodgateState floodgate;
+        private final String lastIp;
+        private final Instant lastLogin;
+        private final Set<Field> dirtyFields;
+
+        private Snapshot(long rowId, UUID id, String name, boolean premium, FloodgateState floodgate,
+                         String lastIp, Instant lastLogin, Set<Field> dirtyFields) {
+            this.rowId = rowId;
+            this.id = id;
+            this.name = name;
+            this.premium = premium;
+            this.floodgate = floodgate;
+            this.lastIp = lastIp;
+            this.lastLogin = lastLogin;
+            this.dirtyFields = dirtyFields;
+        }
+
+        private Snapshot withRowId(long rowId) {
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin, dirtyFields);
+        }
+
+        private Snapshot withId(UUID id) {
+            if (Objects.equals(this.id, id)) {
+                return this;
+            }
+
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin, markChanged(Field.ID));
+        }
+
+        private Snapshot withName(String name) {
+            if (Objects.equals(this.name, name)) {
+                return this;
+            }
+
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin, markChanged(Field.NAME));
+        }
+
+        private Snapshot withPremium(boolean premium) {
+            if (this.premium == premium) {
+                return this;
+            }
+
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin, markChanged(Field.PREMIUM));
+        }
+
+        private Snapshot withFloodgate(FloodgateState floodgate) {
+            if (this.floodgate == floodgate) {
+                return this;
+            }
+
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin,
+                    markChanged(Field.FLOODGATE));
+        }
+
+        private Snapshot withLastIp(String lastIp) {
+            if (Objects.equals(this.lastIp, lastIp)) {
+                return this;
+            }
+
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin, markChanged(Field.LAST_IP));
+        }
+
+        private Snapshot withLastLogin(Instant lastLogin) {
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin, dirtyFields);
+        }
+
+        private Snapshot withDirtyFields(Set<Field> fields) {
+            return new Snapshot(rowId, id, name, premium, floodgate, lastIp, lastLogin,
+                    Collections.unmodifiableSet(fields));
+        }
+
+        private Set<Field> markChanged(Field field) {
+            if (dirtyFields.contains(field)) {
+                return dirtyFields;
+            }
+
+            Set<Field> changedFields = EnumSet.of(field);
+            changedFields.addAll(dirtyFields);
+            return Collections.unmodifiableSet(changedFields);
+        }
+
+        public boolean isExistingPlayer() {
+            return rowId >= 0;
+        }
+
+        public long getRowId() {
+            return rowId;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isOnlinemodePreferred() {
+            return premium;
+        }
+
+        public FloodgateState getFloodgate() {
+            return floodgate;
+        }
+
+        public String getLastIp() {
+            return lastIp;
+        }
+
+        public Instant getLastLogin() {
+            return lastLogin;
+        }
+
+        /**
+         * @return fields that were changed since the last write
+         */
+        public Set<Field> getDirtyFields() {
+            return dirtyFields;
+        }
+    }
+
+    /**
+     * Persisted values that can be changed.
+     */
+    public enum Field {
+
+        ID,
+
+        NAME,
+
+        PREMIUM,
+
+        FLOODGATE,
+
+        LAST_IP
     }
 }
@@ -0,0 +1,387 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects dirty profiles and writes them in JDBC batches instead of opening one transaction per save. Repeated saves
+ * of the same player are merged, so only the latest state will be written. Saves that couldn't be written stay queued
+ * and will be retried on the next flush.
+ * <p>
+ * The queue is limited while the database is unreachable. Saves of players that aren't queued yet are dropped once the
+ * limit is reached, so an outage cannot use up the memory of the server.
+ */
+public class WriteBehindQueue {
+
+    // a profile that fails this often while the database is reachable is most likely broken
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final Logger log;
+    private final SQLStorage storage;
+
+    private final int batchSize;
+    private final int maxQueueSize;
+    private final ScheduledExecutorService executor;
+
+    // queued entries stay in the map until they are written to allow reads of not yet flushed profiles
+    private final Map<String, PendingSave> pending = new ConcurrentHashMap<>();
+    private final Map<UUID, PendingSave> pendingById = new ConcurrentHashMap<>();
+    private final Lock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // skip the size triggered flushes until the database is reachable again
+    private volatile boolean failing;
+    private volatile boolean closed;
+
+    private final AtomicLong mergedSaves = new AtomicLong();
+    private final AtomicLong droppedSaves = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedProfiles = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    public WriteBehindQueue(Logger log, SQLStorage storage, int batchSize, int maxQueueSize, Duration flushInterval,
+                            ThreadFactory threadFactory) {
+        this.log = log;
+        this.storage = storage;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxQueueSize = Math.max(this.batchSize, maxQueueSize);
+
+        if (threadFactory == null) {
+            this.executor = Executors.newSingleThreadScheduledExecutor();
+        } else {
+            this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+
+        long interval = Math.max(1, flushInterval.toMillis());
+        executor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue the profile for the next flush. After {@link #close()} the profile isn't accepted anymore and has to be
+     * written directly by the caller.
+     *
+     * @param profile dirty profile
+     * @return false if the queue is closed
+     */
+    public boolean enqueue(StoredProfile profile) {
+        if (closed) {
+            return false;
+        }
+
+        String name = profile.getName();
+        PendingSave save = new PendingSave(name, profile);
+        if (pending.size() >= maxQueueSize && !pending.containsKey(name)) {
+            droppedSaves.incrementAndGet();
+            log.error("Dropping save of {}, because {} saves are waiting for the database already", profile,
+                    pending.size());
+            return true;
+        }
+
+        PendingSave previous = pending.put(name, save);
+        if (previous != null) {
+            mergedSaves.incrementAndGet();
+            removeId(previous);
+        }
+
+        if (save.id != null) {
+            pendingById.put(save.id, save);
+        }
+
+        if (closed) {
+            // the final flush could be over already - if it is still queued, the caller writes it
+            return !remove(save);
+        }
+
+        if (!failing && pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException rejectedEx) {
+                // closing - the final flush writes it
+                flushRequested.set(false);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param name player name
+     * @return the queued profile that isn't written yet or null if there is none
+     */
+    public StoredProfile getPending(String name) {
+        PendingSave save = pending.get(name);
+        if (save == null) {
+            return null;
+        }
+
+        return save.profile;
+    }
+
+    /**
+     * @param id premium UUID of the player
+     * @return the queued profile that isn't written yet or null if there is none
+     */
+    public StoredProfile getPending(UUID id) {
+        PendingSave save = pendingById.get(id);
+        if (save == null) {
+            return null;
+        }
+
+        // a concurrent save of the same player could have replaced the indexed entry
+        PendingSave current = pending.get(save.name);
+        if (current != save) {
+            pendingById.remove(id, save);
+        }
+
+        // the id could be changed by a later save
+        if (current == null || !id.equals(current.profile.getId())) {
+            return null;
+        }
+
+        return current.profile;
+    }
+
+    /**
+     * Drop a queued save, because the profile is going to be deleted.
+     *
+     * @param name player name
+     */
+    public void discard(String name) {
+        PendingSave save = pending.remove(name);
+        if (save != null) {
+            removeId(save);
+        }
+    }
+
+    private boolean remove(PendingSave save) {
+        // only remove the entry if it wasn't queued again in the meantime
+        if (pending.remove(save.name, save)) {
+            removeId(save);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void removeId(PendingSave save) {
+        if (save.id != null) {
+            pendingById.remove(save.id, save);
+        }
+    }
+
+    /**
+     * Write all queued profiles in batches of the configured size. Blocks until every entry that was queued before
+     * calling this method is written or failed.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Set<PendingSave> attempted = new HashSet<>();
+            List<PendingSave> batch;
+            while (!(batch = nextBatch(attempted)).isEmpty()) {
+                attempted.addAll(batch);
+
+                Collection<StoredProfile> profiles = new ArrayList<>(batch.size());
+                for (PendingSave save : batch) {
+                    profiles.add(save.profile);
+                }
+
+                long start = System.nanoTime();
+                Collection<StoredProfile> failed;
+                try {
+                    failed = storage.saveBatch(profiles);
+                } catch (SQLException sqlEx) {
+                    // keep everything queued until the next flush
+                    failing = true;
+                    log.error("Failed to flush {} queued profile saves. Retrying later", pending.size(), sqlEx);
+                    return;
+                }
+
+                failing = false;
+                recordFlush(System.nanoTime() - start, profiles.size() - failed.size());
+                for (PendingSave save : batch) {
+                    if (isFailed(failed, save.profile)) {
+                        save.attempts++;
+                        if (save.attempts < MAX_ATTEMPTS) {
+                            continue;
+                        }
+
+                        log.error("Dropping save of {} after {} failed attempts", save.profile, save.attempts);
+                    }
+
+                    remove(save);
+                }
+            }
+        } catch (Exception ex) {
+            log.error("Failed to flush queued profile saves", ex);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private static boolean isFailed(Collection<StoredProfile> failed, StoredProfile profile) {
+        for (StoredProfile failedProfile : failed) {
+            if (failedProfile == profile) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private List<PendingSave> nextBatch(Set<PendingSave> attempted) {
+        List<PendingSave> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        for (PendingSave save : pending.values()) {
+            if (batch.size() >= batchSize) {
+                break;
+            }
+
+            // failed entries are retried on the next flush
+            if (!attempted.contains(save)) {
+                batch.add(save);
+            }
+        }
+
+        return batch;
+    }
+
+    private void recordFlush(long durationNanos, int size) {
+        flushes.incrementAndGet();
+        flushedProfiles.addAndGet(size);
+        totalFlushNanos.addAndGet(durationNanos);
+        lastFlushNanos.set(durationNanos);
+        maxFlushNanos.accumulateAndGet(durationNanos, Math::max);
+    }
+
+    /**
+     * Stop the background flushes and write all remaining profiles before returning, so the database can be closed
+     * afterwards. Later saves are rejected by {@link #enqueue(StoredProfile)}.
+     */
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for the profile flush thread");
+            }
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("Failed to write {} queued profile saves before shutdown", pending.size());
+        }
+
+        log.info("Wrote {} profiles in {} batches ({} saves merged, {} dropped), average flush took {} ms",
+                flushedProfiles.get(), flushes.get(), mergedSaves.get(), droppedSaves.get(),
+                getAverageFlushLatency().toMillis());
+    }
+
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public long getMergedSaves() {
+        return mergedSaves.get();
+    }
+
+    /**
+     * @return number of saves that were skipped, because the queue was full
+     */
+    public long getDroppedSaves() {
+        return droppedSaves.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getFlushedProfiles() {
+        return flushedProfiles.get();
+    }
+
+    public Duration getLastFlushLatency() {
+        return Duration.ofNanos(lastFlushNanos.get());
+    }
+
+    public Duration getMaxFlushLatency() {
+        return Duration.ofNanos(maxFlushNanos.get());
+    }
+
+    public Duration getAverageFlushLatency() {
+        long count = flushes.get();
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+
+        return Duration.ofNanos(totalFlushNanos.get() / count);
+    }
+
+    private static final class PendingSave {
+
+        private final String name;
+        private final StoredProfile profile;
+
+        // the id of the profile at the time it was queued
+        private final UUID id;
+
+        // only accessed while holding the flush lock
+        private int attempts;
+
+        PendingSave(String name, StoredProfile profile) {
+            this.name = name;
+            this.profile = profile;
+            this.id = profile.getId();
+        }
+    }
+}
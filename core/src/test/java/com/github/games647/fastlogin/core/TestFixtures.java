@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.fastlogin.core.storage.SQLiteStorage;
+import com.zaxxer.hikari.HikariConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.UUID;
+
+public final class TestFixtures {
+
+    public static final UUID PLAYER_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    public static final Profile NOTCH = new Profile(PLAYER_ID, "Notch");
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestFixtures.class);
+
+    private TestFixtures() {
+        throw new RuntimeException("No instantiation of utility classes allowed");
+    }
+
+    /**
+     * @param dataFolder temporary directory of the test
+     * @param fileName name of the database file
+     * @return SQLite database with an up-to-date table
+     * @throws SQLException if the table couldn't be created
+     */
+    public static SQLiteStorage createSQLiteStorage(Path dataFolder, String fileName) throws SQLException {
+        String path = dataFolder.resolve(fileName).toString();
+        SQLiteStorage storage = new SQLiteStorage(LOG, "FastLogin", null, path, new HikariConfig(), null);
+        storage.createTables();
+        return storage;
+    }
+}
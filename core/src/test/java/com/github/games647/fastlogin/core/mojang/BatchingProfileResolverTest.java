@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.games647.fastlogin.core.TestFixtures.NOTCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchingProfileResolverTest {
+
+    private static final String BULK_RESPONSE = "[{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"},"
+            + "{\"id\":\"853c80ef3c3749fdaa49938b674adae6\",\"name\":\"jeb_\"}]";
+
+    private HttpServer mojang;
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private int responseCode = 200;
+
+    private ExecutorService executor;
+    private ProfileResolver delegate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mojang = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mojang.createContext("/profiles", this::handleBulkRequest);
+        mojang.start();
+
+        executor = Executors.newCachedThreadPool();
+        delegate = mock(ProfileResolver.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        mojang.stop(0);
+    }
+
+    private void handleBulkRequest(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            requestBodies.add(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+        }
+
+        byte[] response = BULK_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(responseCode, responseCode == 200 ? response.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (responseCode == 200) {
+                out.write(response);
+            }
+        }
+    }
+
+    private BatchingProfileResolver createResolver(Duration maxDelay) {
+        URI bulkUrl = URI.create("http://" + mojang.getAddress().getHostString() + ':'
+                + mojang.getAddress().getPort() + "/profiles");
+        RateBudget budget = new RateBudget(Collections.emptyList(), 600, RateBudget.MOJANG_WINDOW,
+                Collections.singletonMap(LookupPriority.LOGIN, Duration.ofSeconds(5)));
+        return new BatchingProfileResolver(delegate, bulkUrl, budget, maxDelay, 10);
+    }
+
+    /**
+     * Keep a lookup running, so the following lookups are batched.
+     *
+     * @return latch that finishes the running lookup
+     */
+    private CountDownLatch startRunningLookup(BatchingProfileResolver resolver) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.findProfile(eq("running"), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return Optional.empty();
+        });
+
+        lookup(resolver, "running");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private List<Future<Optional<Profile>>> lookup(BatchingProfileResolver resolver, String... names) {
+        List<Future<Optional<Profile>>> lookups = new ArrayList<>();
+        for (String name : names) {
+            lookups.add(executor.submit(() -> resolver.findProfile(name)));
+        }
+
+        return lookups;
+    }
+
+    @Test
+    void concurrentLookupsAreBatched() throws Exception {
+        BatchingProfileResolver resolver = createResolver(Duration.ofSeconds(5));
+        CountDownLatch running = startRunningLookup(resolver);
+        String[] names = {"Notch", "jeb_", "Cracked1", "Cracked2", "Cracked3",
+                "Cracked4", "Cracked5", "Cracked6", "Cracked7", "Cracked8"};
+        List<Future<Optional<Profile>>> lookups = lookup(resolver, names);
+
+        assertEquals(Optional.of(NOTCH), lookups.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals("jeb_", lookups.get(1).get(5, TimeUnit.SECONDS).map(Profile::getName).orElse(null));
+        for (Future<Optional<Profile>> lookup : lookups.subList(2, lookups.size())) {
+            assertFalse(lookup.get(5, TimeUnit.SECONDS).isPresent());
+        }
+
+        // a full batch is sent without waiting for the delay
+        assertEquals(1, requestBodies.size());
+        assertTrue(requestBodies.get(0).contains("\"notch\""));
+        assertEquals(1, resolver.getBulkRequests());
+        assertEquals(10, resolver.getBatchedNames());
+        // only the running lookup
+        verify(delegate, times(1)).findProfile(anyString(), any());
+        running.countDown();
+    }
+
+    @Test
+    void batchIsSentAfterDelay() throws Exception {
+        BatchingProfileResolver resolver = createResolver(Duration.ofMillis(200));
+        CountDownLatch running = startRunningLookup(resolver);
+        List<Future<Optional<Profile>>> lookups = lookup(resolver, "Notch", "Cracked", "notch");
+
+        assertEquals(Optional.of(NOTCH), lookups.get(0).get(5, TimeUnit.SECONDS));
+        assertFalse(lookups.get(1).get(5, TimeUnit.SECONDS).isPresent());
+        assertEquals(Optional.of(NOTCH), lookups.get(2).get(5, TimeUnit.SECONDS));
+        assertTrue(resolver.getBulkRequests() >= 1);
+        running.countDown();
+    }
+
+    @Test
+    void singleLookupUsesDelegate() throws IOException, RateLimitException {
+        when(delegate.findProfile(eq("notch"), any())).thenReturn(Optional.of(NOTCH));
+
+        // waits neither for the delay nor for other lookups
+        BatchingProfileResolver resolver = createResolver(Duration.ofSeconds(5));
+        long start = System.nanoTime();
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, resolver.getBulkRequests());
+        assertTrue(requestBodies.isEmpty());
+    }
+
+    @Test
+    void rateLimitIsPassedToEveryLookup() throws Exception {
+        responseCode = 429;
+
+        BatchingProfileResolver resolver = createResolver(Duration.ofSeconds(5));
+        CountDownLatch running = startRunningLookup(resolver);
+        String[] names = new String[10];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Player" + i;
+        }
+
+        for (Future<Optional<Profile>> lookup : lookup(resolver, names)) {
+            ExecutionException executionEx = assertThrows(ExecutionException.class,
+                    () -> lookup.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(RateLimitException.class, executionEx.getCause());
+        }
+
+        running.countDown();
+    }
+}
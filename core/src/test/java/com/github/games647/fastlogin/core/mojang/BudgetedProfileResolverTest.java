@@ -0,0 +1,120 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.mojang.RateBudget.Route;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Proxy.Type;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.github.games647.fastlogin.core.TestFixtures.NOTCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BudgetedProfileResolverTest {
+
+    private Map<LookupPriority, Duration> deadlines;
+    private ProfileResolver delegate;
+
+    @BeforeEach
+    void setUp() {
+        deadlines = new EnumMap<>(LookupPriority.class);
+        deadlines.put(LookupPriority.LOGIN, Duration.ofSeconds(5));
+        deadlines.put(LookupPriority.BACKGROUND, Duration.ofMillis(50));
+
+        delegate = mock(ProfileResolver.class);
+    }
+
+    @Test
+    void rejectedRequestIsRetried() throws IOException, RateLimitException {
+        when(delegate.findProfile(eq("Notch"), any()))
+                .thenThrow(new RateLimitException())
+                .thenReturn(Optional.of(NOTCH));
+
+        // one request per 100ms
+        RateBudget budget = new RateBudget(Collections.emptyList(), 10, Duration.ofSeconds(1), deadlines);
+        ProfileResolver resolver = new BudgetedProfileResolver(budget, route -> delegate);
+
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        verify(delegate, times(2)).findProfile(eq("Notch"), any());
+        assertEquals(0, budget.getRemaining());
+    }
+
+    @Test
+    void lookupUsesResolverOfRoute() throws IOException, RateLimitException {
+        Proxy first = new Proxy(Type.HTTP, InetSocketAddress.createUnresolved("first.example", 8080));
+        Proxy second = new Proxy(Type.HTTP, InetSocketAddress.createUnresolved("second.example", 8080));
+        RateBudget budget = new RateBudget(Arrays.asList(first, second), 1, Duration.ofHours(1), deadlines);
+
+        Map<Proxy, ProfileResolver> routeResolvers = new HashMap<>();
+        ProfileResolver resolver = new BudgetedProfileResolver(budget, route -> {
+            ProfileResolver routeResolver = mock(ProfileResolver.class);
+            routeResolvers.put(route.getProxy(), routeResolver);
+            return routeResolver;
+        });
+
+        // rejected by Mojang, so only the route of the first proxy is exhausted
+        when(routeResolvers.get(first).findProfile(eq("Notch"), any())).thenThrow(new RateLimitException());
+        when(routeResolvers.get(second).findProfile(eq("Notch"), any())).thenReturn(Optional.of(NOTCH));
+
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        verify(routeResolvers.get(first), times(1)).findProfile(eq("Notch"), any());
+        verify(routeResolvers.get(second), times(1)).findProfile(eq("Notch"), any());
+        for (Route route : budget.getRoutes()) {
+            assertEquals(0, budget.getRemaining(route));
+        }
+    }
+
+    @Test
+    void exhaustedBudgetSkipsRequest() throws IOException, RateLimitException {
+        when(delegate.findProfile(eq("Notch"), any())).thenReturn(Optional.of(NOTCH));
+
+        RateBudget budget = new RateBudget(Collections.emptyList(), 1, Duration.ofHours(1), deadlines);
+        ProfileResolver resolver = new BudgetedProfileResolver(budget, route -> delegate);
+
+        resolver.findProfile("Notch", LookupPriority.BACKGROUND);
+        assertThrows(RateLimitException.class, () -> resolver.findProfile("Notch", LookupPriority.BACKGROUND));
+        verify(delegate, times(1)).findProfile(eq("Notch"), any());
+    }
+}
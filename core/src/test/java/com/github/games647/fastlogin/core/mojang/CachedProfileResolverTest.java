@@ -0,0 +1,155 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.FakeTicker;
+import com.github.games647.fastlogin.core.storage.MojangLookup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static com.github.games647.fastlogin.core.TestFixtures.NOTCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachedProfileResolverTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private FakeTicker ticker;
+    private ProfileResolver delegate;
+    private CachedProfileResolver resolver;
+
+    @BeforeEach
+    void setUp() throws IOException, RateLimitException {
+        ticker = new FakeTicker(0);
+        delegate = mock(ProfileResolver.class, CALLS_REAL_METHODS);
+        when(delegate.findProfile(eq("Notch"), any())).thenReturn(Optional.of(NOTCH));
+        when(delegate.findProfile(eq("Cracked"), any())).thenReturn(Optional.empty());
+
+        resolver = createResolver();
+    }
+
+    private CachedProfileResolver createResolver() {
+        return new CachedProfileResolver(LoggerFactory.getLogger(CachedProfileResolverTest.class), delegate, ticker,
+                100, Duration.ofHours(6), Duration.ofMinutes(10));
+    }
+
+    @Test
+    void sharedResultKeepsItsAge() throws IOException, RateLimitException {
+        // half of the premium TTL passed already in the shared tier
+        MojangLookup shared = new MojangLookup("Shared", NOTCH, Instant.now().minus(Duration.ofHours(3)));
+        doReturn(shared).when(delegate).findLookup(eq("Shared"), any());
+
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Shared"));
+        ticker.add(Duration.ofHours(2));
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Shared"));
+        verify(delegate, times(1)).findLookup(eq("Shared"), any());
+
+        // expires together with the shared entry instead of a full local TTL later
+        ticker.add(Duration.ofMinutes(61));
+        resolver.findProfile("Shared");
+        verify(delegate, times(2)).findLookup(eq("Shared"), any());
+    }
+
+    @Test
+    void repeatedLookupIsCached() throws IOException, RateLimitException {
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("notch"));
+
+        verify(delegate, times(1)).findProfile(eq("Notch"), any());
+        assertEquals(1, resolver.getHits());
+        assertEquals(1, resolver.getMisses());
+        assertEquals(0.5, resolver.getHitRatio());
+    }
+
+    @Test
+    void notFoundExpiresEarlier() throws IOException, RateLimitException {
+        resolver.findProfile("Notch");
+        assertFalse(resolver.findProfile("Cracked").isPresent());
+
+        ticker.add(Duration.ofMinutes(11));
+        resolver.findProfile("Notch");
+        resolver.findProfile("Cracked");
+
+        verify(delegate, times(1)).findProfile(eq("Notch"), any());
+        verify(delegate, times(2)).findProfile(eq("Cracked"), any());
+    }
+
+    @Test
+    void failedLookupIsNotCached() throws IOException, RateLimitException {
+        when(delegate.findProfile(eq("Broken"), any()))
+                .thenThrow(new IOException("unavailable"))
+                .thenReturn(Optional.empty());
+
+        try {
+            resolver.findProfile("Broken");
+        } catch (IOException expected) {
+            // retried below
+        }
+
+        assertFalse(resolver.findProfile("Broken").isPresent());
+        verify(delegate, times(2)).findProfile(eq("Broken"), any());
+    }
+
+    @Test
+    void snapshotSurvivesRestart() throws IOException, RateLimitException {
+        resolver.findProfile("Notch");
+        resolver.findProfile("Cracked");
+
+        Path file = dataFolder.resolve("mojang-cache.bin");
+        resolver.saveSnapshot(file);
+
+        CachedProfileResolver restarted = createResolver();
+        assertEquals(2, restarted.loadSnapshot(file));
+        assertEquals(Optional.of(NOTCH), restarted.findProfile("NOTCH"));
+        assertFalse(restarted.findProfile("Cracked").isPresent());
+        verify(delegate, times(1)).findProfile(eq("Notch"), any());
+        verify(delegate, times(1)).findProfile(eq("Cracked"), any());
+    }
+
+    @Test
+    void missingSnapshotIsIgnored() {
+        assertEquals(0, resolver.loadSnapshot(dataFolder.resolve("missing.bin")));
+    }
+}
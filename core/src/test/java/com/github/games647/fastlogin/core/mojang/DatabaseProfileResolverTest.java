@@ -0,0 +1,179 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.FakeTicker;
+import com.github.games647.fastlogin.core.shared.PlatformPlugin;
+import com.github.games647.fastlogin.core.storage.SQLStorage;
+import com.github.games647.fastlogin.core.storage.SQLiteStorage;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static com.github.games647.fastlogin.core.TestFixtures.NOTCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DatabaseProfileResolverTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private SQLiteStorage storage;
+    private ProfileResolver delegate;
+    private ProfileResolver otherDelegate;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException, RateLimitException {
+        PlatformPlugin<?> plugin = mock(PlatformPlugin.class);
+        when(plugin.getLog()).thenReturn(LoggerFactory.getLogger(DatabaseProfileResolverTest.class));
+        when(plugin.getName()).thenReturn("FastLogin");
+        when(plugin.getPluginFolder()).thenReturn(dataFolder);
+
+        storage = new SQLiteStorage(plugin, "{pluginDir}/FastLogin.db", new HikariConfig());
+        storage.createTables();
+        storage.createMojangTable();
+
+        delegate = mock(ProfileResolver.class, CALLS_REAL_METHODS);
+        when(delegate.findProfile(eq("Notch"), any())).thenReturn(Optional.of(NOTCH));
+        when(delegate.findProfile(eq("Cracked"), any())).thenReturn(Optional.empty());
+        otherDelegate = mock(ProfileResolver.class, CALLS_REAL_METHODS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    private DatabaseProfileResolver createResolver(ProfileResolver mojang) {
+        return new DatabaseProfileResolver(LoggerFactory.getLogger(DatabaseProfileResolverTest.class),
+                () -> storage, mojang, Duration.ofHours(6), Duration.ofMinutes(10));
+    }
+
+    @Test
+    void lookupIsSharedWithOtherServers() throws IOException, RateLimitException {
+        DatabaseProfileResolver server = createResolver(delegate);
+        DatabaseProfileResolver otherServer = createResolver(otherDelegate);
+
+        assertEquals(Optional.of(NOTCH), server.findProfile("Notch"));
+        assertFalse(server.findProfile("Cracked").isPresent());
+
+        assertEquals(Optional.of(NOTCH), otherServer.findProfile("notch"));
+        assertFalse(otherServer.findProfile("Cracked").isPresent());
+
+        verify(otherDelegate, never()).findProfile(eq("notch"), any());
+        verify(otherDelegate, never()).findProfile(eq("Cracked"), any());
+        assertEquals(2, otherServer.getHits());
+        assertEquals(0, otherServer.getMisses());
+    }
+
+    @Test
+    void expiredLookupIsRequestedAgain() throws SQLException, IOException, RateLimitException {
+        Instant fetched = Instant.now().minus(Duration.ofMinutes(11));
+        storage.saveMojangLookup("Cracked", null, fetched);
+        storage.saveMojangLookup("Notch", NOTCH, fetched);
+
+        DatabaseProfileResolver resolver = createResolver(delegate);
+        resolver.findProfile("Cracked");
+        resolver.findProfile("Notch");
+
+        verify(delegate, times(1)).findProfile(eq("Cracked"), any());
+        verify(delegate, never()).findProfile(eq("Notch"), any());
+        assertEquals(Instant.now().getEpochSecond(),
+                storage.loadMojangLookup("Cracked").getFetched().getEpochSecond(), 1);
+    }
+
+    @Test
+    void oldLookupsAreDeleted() throws SQLException {
+        storage.saveMojangLookup("Notch", NOTCH, Instant.now().minus(Duration.ofDays(1)));
+        storage.saveMojangLookup("Cracked", null, Instant.now());
+
+        assertEquals(1, storage.deleteMojangLookups(createResolver(delegate).getExpiredBefore()));
+        assertNull(storage.loadMojangLookup("Notch"));
+        assertNull(storage.loadMojangLookup("cracked").getProfile());
+    }
+
+    @Test
+    void expiredLookupsAreCleanedUp() throws SQLException {
+        storage.saveMojangLookup("Notch", NOTCH, Instant.now().minus(Duration.ofDays(1)));
+        storage.saveMojangLookup("Cracked", null, Instant.now());
+
+        assertEquals(1, createResolver(delegate).deleteExpired());
+        assertNull(storage.loadMojangLookup("Notch"));
+    }
+
+    @Test
+    void failedDatabaseIsSkippedForAWhile() throws SQLException, IOException, RateLimitException {
+        SQLStorage failing = mock(SQLStorage.class);
+        when(failing.loadMojangLookup(anyString())).thenThrow(new SQLException("Connection is not available"));
+
+        FakeTicker ticker = new FakeTicker(0);
+        DatabaseProfileResolver resolver = new DatabaseProfileResolver(
+                LoggerFactory.getLogger(DatabaseProfileResolverTest.class), () -> failing, delegate,
+                Duration.ofHours(6), Duration.ofMinutes(10), ticker);
+
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        assertEquals(0, resolver.deleteExpired());
+        verify(failing, times(1)).loadMojangLookup(anyString());
+        verify(failing, never()).deleteMojangLookups(any());
+
+        ticker.add(Duration.ofSeconds(31));
+        resolver.findProfile("Notch");
+        verify(failing, times(2)).loadMojangLookup(anyString());
+    }
+
+    @Test
+    void missingDatabaseIsSkipped() throws IOException, RateLimitException {
+        DatabaseProfileResolver resolver = new DatabaseProfileResolver(
+                LoggerFactory.getLogger(DatabaseProfileResolverTest.class), () -> null, delegate,
+                Duration.ofHours(6), Duration.ofMinutes(10));
+
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+        assertEquals(0, resolver.getMisses());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.mojang.RateBudget.Route;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Proxy.Type;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateBudgetTest {
+
+    private ExecutorService executor;
+    private Map<LookupPriority, Duration> deadlines;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+        deadlines = new EnumMap<>(LookupPriority.class);
+        deadlines.put(LookupPriority.LOGIN, Duration.ofSeconds(5));
+        deadlines.put(LookupPriority.BACKGROUND, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void exhaustedBudgetWaitsForRefill() throws Exception {
+        RateBudget budget = new RateBudget(Collections.emptyList(), 1, Duration.ofMillis(200), deadlines);
+
+        budget.acquire(LookupPriority.LOGIN);
+        long start = System.nanoTime();
+        budget.acquire(LookupPriority.LOGIN);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(2, budget.getWaitTime(LookupPriority.LOGIN).getCount());
+        assertEquals(0, budget.getTimeouts());
+    }
+
+    @Test
+    void deadlineFailsLookup() throws Exception {
+        deadlines.put(LookupPriority.BACKGROUND, Duration.ofMillis(50));
+        RateBudget budget = new RateBudget(Collections.emptyList(), 1, Duration.ofHours(1), deadlines);
+
+        budget.acquire(LookupPriority.BACKGROUND);
+        assertThrows(RateLimitException.class, () -> budget.acquire(LookupPriority.BACKGROUND));
+        assertEquals(1, budget.getTimeouts());
+        assertEquals(0, budget.getQueueLength());
+    }
+
+    @Test
+    void loginGoesBeforeBackground() throws Exception {
+        RateBudget budget = new RateBudget(Collections.emptyList(), 1, Duration.ofMillis(300), deadlines);
+        budget.acquire(LookupPriority.LOGIN);
+
+        List<LookupPriority> order = new CopyOnWriteArrayList<>();
+        Future<?> background = executor.submit(() -> {
+            budget.acquire(LookupPriority.BACKGROUND);
+            return order.add(LookupPriority.BACKGROUND);
+        });
+
+        while (budget.getQueueLength() < 1) {
+            Thread.sleep(1);
+        }
+
+        Future<?> login = executor.submit(() -> {
+            budget.acquire(LookupPriority.LOGIN);
+            return order.add(LookupPriority.LOGIN);
+        });
+
+        login.get(5, TimeUnit.SECONDS);
+        background.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(LookupPriority.LOGIN, LookupPriority.BACKGROUND), order);
+    }
+
+    @Test
+    void everyProxyHasOwnBudget() throws Exception {
+        List<Proxy> proxies = Arrays.asList(
+                new Proxy(Type.HTTP, InetSocketAddress.createUnresolved("proxy1", 8080)),
+                new Proxy(Type.HTTP, InetSocketAddress.createUnresolved("proxy2", 8080))
+        );
+
+        RateBudget budget = new RateBudget(proxies, 1, Duration.ofHours(1), deadlines);
+        assertEquals(2, budget.getRemaining());
+
+        Route first = budget.acquire(LookupPriority.LOGIN);
+        Route second = budget.acquire(LookupPriority.LOGIN);
+        assertNotSame(first, second);
+        assertEquals(0, budget.getRemaining());
+    }
+}
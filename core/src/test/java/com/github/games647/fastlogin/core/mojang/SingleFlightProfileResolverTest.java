@@ -0,0 +1,202 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.games647.fastlogin.core.TestFixtures.NOTCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SingleFlightProfileResolverTest {
+
+    private static final int LOOKUPS = 8;
+
+    private ExecutorService executor;
+    private CountDownLatch requestStarted;
+    private CountDownLatch releaseRequest;
+
+    private ProfileResolver delegate;
+    private SingleFlightProfileResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(LOOKUPS);
+        requestStarted = new CountDownLatch(1);
+        releaseRequest = new CountDownLatch(1);
+
+        delegate = mock(ProfileResolver.class, CALLS_REAL_METHODS);
+        resolver = new SingleFlightProfileResolver(delegate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private List<Future<Optional<Profile>>> startLookups() throws InterruptedException {
+        List<Future<Optional<Profile>>> lookups = new ArrayList<>();
+        lookups.add(executor.submit(() -> resolver.findProfile("Notch")));
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i < LOOKUPS; i++) {
+            String name = i % 2 == 0 ? "notch" : "NOTCH";
+            lookups.add(executor.submit(() -> resolver.findProfile(name)));
+        }
+
+        // wait until every lookup joined the running request
+        while (resolver.getCoalesced() < LOOKUPS - 1) {
+            Thread.sleep(1);
+        }
+
+        releaseRequest.countDown();
+        return lookups;
+    }
+
+    @Test
+    void concurrentLookupsShareRequest() throws Exception {
+        when(delegate.findProfile(anyString(), any())).then(invocation -> {
+            requestStarted.countDown();
+            releaseRequest.await();
+            return Optional.of(NOTCH);
+        });
+
+        for (Future<Optional<Profile>> lookup : startLookups()) {
+            assertEquals(Optional.of(NOTCH), lookup.get(5, TimeUnit.SECONDS));
+        }
+
+        verify(delegate, times(1)).findProfile(anyString(), any());
+        assertEquals(1, resolver.getRequests());
+        assertEquals(LOOKUPS - 1, resolver.getCoalesced());
+        assertEquals(0, resolver.getInFlight());
+    }
+
+    @Test
+    void exceptionIsShared() throws Exception {
+        RateLimitException rateLimit = new RateLimitException();
+        when(delegate.findProfile(anyString(), any())).then(invocation -> {
+            requestStarted.countDown();
+            releaseRequest.await();
+            throw rateLimit;
+        });
+
+        for (Future<Optional<Profile>> lookup : startLookups()) {
+            ExecutionException executionEx = assertThrows(ExecutionException.class,
+                    () -> lookup.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(RateLimitException.class, executionEx.getCause());
+        }
+
+        verify(delegate, times(1)).findProfile(anyString(), any());
+    }
+
+    @Test
+    void loginLookupDoesNotWaitForBackgroundRequest() throws Exception {
+        CountDownLatch loginRequested = new CountDownLatch(1);
+        when(delegate.findProfile(anyString(), eq(LookupPriority.BACKGROUND))).then(invocation -> {
+            requestStarted.countDown();
+            // like a background request queued behind the rate limit
+            releaseRequest.await();
+            return Optional.empty();
+        });
+        when(delegate.findProfile(anyString(), eq(LookupPriority.LOGIN))).then(invocation -> {
+            loginRequested.countDown();
+            return Optional.of(NOTCH);
+        });
+
+        Future<Optional<Profile>> background = executor.submit(
+                () -> resolver.findProfile("Notch", LookupPriority.BACKGROUND));
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("notch", LookupPriority.LOGIN));
+        assertTrue(loginRequested.await(5, TimeUnit.SECONDS));
+        assertEquals(1, resolver.getUpgraded());
+
+        releaseRequest.countDown();
+        background.get(5, TimeUnit.SECONDS);
+        assertEquals(0, resolver.getInFlight());
+    }
+
+    @Test
+    void backgroundLookupJoinsLoginRequest() throws Exception {
+        when(delegate.findProfile(anyString(), any())).then(invocation -> {
+            requestStarted.countDown();
+            releaseRequest.await();
+            return Optional.of(NOTCH);
+        });
+
+        Future<Optional<Profile>> login = executor.submit(() -> resolver.findProfile("Notch"));
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+        Future<Optional<Profile>> background = executor.submit(
+                () -> resolver.findProfile("Notch", LookupPriority.BACKGROUND));
+        while (resolver.getCoalesced() < 1) {
+            Thread.sleep(1);
+        }
+
+        releaseRequest.countDown();
+        assertEquals(Optional.of(NOTCH), login.get(5, TimeUnit.SECONDS));
+        assertEquals(Optional.of(NOTCH), background.get(5, TimeUnit.SECONDS));
+        verify(delegate, times(1)).findProfile(anyString(), any());
+        assertEquals(0, resolver.getUpgraded());
+    }
+
+    @Test
+    void completedRequestIsNotReused() throws IOException, RateLimitException {
+        when(delegate.findProfile(eq("Notch"), any()))
+                .thenThrow(new IOException("unavailable"))
+                .thenReturn(Optional.of(NOTCH));
+
+        assertThrows(IOException.class, () -> resolver.findProfile("Notch"));
+        assertEquals(Optional.of(NOTCH), resolver.findProfile("Notch"));
+
+        verify(delegate, times(2)).findProfile(eq("Notch"), any());
+        assertEquals(0, resolver.getCoalesced());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the SQLite file size and UUID lookup latency of the text and the binary column format. This is not part of
+ * the regular test run. Start it manually with the test classpath:
+ * {@code java BinaryFormatBenchmark [rows]}
+ */
+public final class BinaryFormatBenchmark {
+
+    private static final String TEXT_TABLE = "CREATE TABLE premium (UserID INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "UUID CHAR(36), Name VARCHAR(16) NOT NULL UNIQUE, LastIp VARCHAR(255) NOT NULL)";
+    private static final String BINARY_TABLE = "CREATE TABLE premium (UserID INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "UUIDBin BINARY(16), Name VARCHAR(16) NOT NULL UNIQUE, LastIpBin VARBINARY(16))";
+
+    private static final int LOOKUPS = 100_000;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        Random random = new Random(42);
+        List<UUID> ids = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        Path dir = Files.createTempDirectory("fastlogin-benchmark");
+        run("text", dir.resolve("text.db"), TEXT_TABLE, "UUID", ids, false);
+        run("binary", dir.resolve("binary.db"), BINARY_TABLE, "UUIDBin", ids, true);
+    }
+
+    private static void run(String format, Path file, String createStmt, String idColumn, List<UUID> ids,
+                            boolean binary) throws SQLException, IOException {
+        try (Connection con = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate(createStmt);
+                stmt.executeUpdate("CREATE INDEX idx_uuid ON premium (" + idColumn + ')');
+            }
+
+            fill(con, idColumn, ids, binary);
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("VACUUM");
+            }
+
+            Random random = new Random(7);
+            String query = "SELECT * FROM premium WHERE " + idColumn + "=? LIMIT 1";
+            try (PreparedStatement stmt = con.prepareStatement(query)) {
+                // warm up the page cache and the JIT
+                lookup(stmt, ids, random, LOOKUPS / 10, binary);
+
+                long start = System.nanoTime();
+                lookup(stmt, ids, random, LOOKUPS, binary);
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                System.out.printf("%s: %d rows, %.1f MB, %.2f us per UUID lookup%n", format, ids.size(),
+                        Files.size(file) / 1024.0 / 1024, (double) micros / LOOKUPS);
+            }
+        }
+    }
+
+    private static void fill(Connection con, String idColumn, List<UUID> ids, boolean binary) throws SQLException {
+        con.setAutoCommit(false);
+        String insert = "INSERT INTO premium (" + idColumn + ", Name, " + (binary ? "LastIpBin" : "LastIp")
+                + ") VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = con.prepareStatement(insert)) {
+            for (int i = 0; i < ids.size(); i++) {
+                UUID id = ids.get(i);
+                String ip = "10." + (i >> 16 & 0xFF) + '.' + (i >> 8 & 0xFF) + '.' + (i & 0xFF);
+                if (binary) {
+                    stmt.setBytes(1, BinaryColumns.fromUUID(id));
+                    stmt.setBytes(3, BinaryColumns.fromAddress(ip));
+                } else {
+                    stmt.setString(1, id.toString().replace("-", ""));
+                    stmt.setString(3, ip);
+                }
+
+                stmt.setString(2, "Player" + i);
+                stmt.addBatch();
+                if (i % 10_000 == 0) {
+                    stmt.executeBatch();
+                }
+            }
+
+            stmt.executeBatch();
+        }
+
+        con.commit();
+        con.setAutoCommit(true);
+    }
+
+    private static void lookup(PreparedStatement stmt, List<UUID> ids, Random random, int count, boolean binary)
+            throws SQLException {
+        for (int i = 0; i < count; i++) {
+            UUID id = ids.get(random.nextInt(ids.size()));
+            if (binary) {
+                stmt.setBytes(1, BinaryColumns.fromUUID(id));
+            } else {
+                stmt.setString(1, id.toString().replace("-", ""));
+            }
+
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new IllegalStateException("Missing row for " + id);
+                }
+            }
+        }
+    }
+
+    private BinaryFormatBenchmark() {
+        // main entry only
+    }
+}
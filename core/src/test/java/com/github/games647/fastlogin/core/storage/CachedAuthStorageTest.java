@@ -0,0 +1,188 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.FakeTicker;
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachedAuthStorageTest {
+
+    private AuthStorage delegate;
+    private CachedAuthStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(AuthStorage.class);
+        storage = new CachedAuthStorage(delegate, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void nameLookupIsCaseInsensitive() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile);
+
+        assertSame(profile, storage.loadProfile("Notch"));
+        assertSame(profile, storage.loadProfile("notch"));
+
+        verify(delegate, times(1)).loadProfile("Notch");
+        assertEquals(1, storage.getNameStats().hitCount());
+        assertEquals(1, storage.getNameStats().missCount());
+    }
+
+    @Test
+    void preloadedProfilesAreCached() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        storage.preload(Collections.singletonList(profile));
+
+        assertSame(profile, storage.loadProfile("notch"));
+        assertSame(profile, storage.loadProfile(PLAYER_ID));
+        verify(delegate, never()).loadProfile("notch");
+        verify(delegate, never()).loadProfile(PLAYER_ID);
+    }
+
+    @Test
+    void nameLookupIndexesId() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile);
+
+        storage.loadProfile("Notch");
+        assertSame(profile, storage.loadProfile(PLAYER_ID));
+
+        verify(delegate, times(0)).loadProfile(PLAYER_ID);
+    }
+
+    @Test
+    void saveUpdatesIdIndex() {
+        StoredProfile profile = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile);
+
+        storage.loadProfile("Notch");
+        profile.setId(PLAYER_ID);
+        storage.save(profile);
+
+        assertSame(profile, storage.loadProfile(PLAYER_ID));
+        verify(delegate).save(profile);
+    }
+
+    @Test
+    void changedIdIsNotReturned() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile);
+
+        storage.loadProfile("Notch");
+        profile.setId(null);
+
+        storage.loadProfile(PLAYER_ID);
+        verify(delegate).loadProfile(PLAYER_ID);
+    }
+
+    @Test
+    void frequentlyReadEntryExpires() {
+        FakeTicker ticker = new FakeTicker(0);
+        CachedAuthStorage expiringStorage = new CachedAuthStorage(delegate, 100, Duration.ofMinutes(1), ticker);
+
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        StoredProfile changed = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile, changed);
+
+        for (int i = 0; i < 5; i++) {
+            assertSame(profile, expiringStorage.loadProfile("Notch"));
+            ticker.add(Duration.ofSeconds(14));
+        }
+
+        // changes of other servers become visible even for active players
+        assertSame(changed, expiringStorage.loadProfile("Notch"));
+        verify(delegate, times(2)).loadProfile("Notch");
+    }
+
+    @Test
+    void frequentlySavedEntryExpires() {
+        FakeTicker ticker = new FakeTicker(0);
+        CachedAuthStorage expiringStorage = new CachedAuthStorage(delegate, 100, Duration.ofMinutes(1), ticker);
+
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        StoredProfile changed = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile, changed);
+
+        // a player that reconnects often saves on every login
+        for (int i = 0; i < 5; i++) {
+            StoredProfile loaded = expiringStorage.loadProfile("Notch");
+            assertSame(profile, loaded);
+            expiringStorage.save(loaded);
+            ticker.add(Duration.ofSeconds(14));
+        }
+
+        assertSame(changed, expiringStorage.loadProfile("Notch"));
+        verify(delegate, times(2)).loadProfile("Notch");
+    }
+
+    @Test
+    void deletedRowIsDroppedOnSave() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        StoredProfile fresh = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile, fresh);
+        // like an update that found no row, because another server removed it
+        doAnswer(invocation -> {
+            invocation.<StoredProfile>getArgument(0).markDeleted();
+            return null;
+        }).when(delegate).save(profile);
+
+        storage.save(storage.loadProfile("Notch"));
+
+        assertSame(fresh, storage.loadProfile("Notch"));
+        storage.loadProfile(PLAYER_ID);
+        verify(delegate).loadProfile(PLAYER_ID);
+    }
+
+    @Test
+    void deleteInvalidates() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        StoredProfile fresh = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "");
+        when(delegate.loadProfile("Notch")).thenReturn(profile, fresh);
+
+        storage.loadProfile("Notch");
+        storage.deleteProfile("Notch");
+
+        assertNotSame(profile, storage.loadProfile("Notch"));
+        verify(delegate).deleteProfile("Notch");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2StorageTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(H2StorageTest.class);
+
+    private H2Storage storage;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        storage = new H2Storage(LOG, "FastLogin", null, "mem:" + UUID.randomUUID(), new HikariConfig());
+        storage.setBinaryFormat(true);
+        storage.createTables();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void saveAndLoad() {
+        StoredProfile profile = storage.loadProfile("Notch");
+        profile.setId(PLAYER_ID);
+        profile.setOnlinemodePreferred(true);
+        profile.setLastIp("127.0.0.1");
+        storage.save(profile);
+
+        StoredProfile loaded = storage.loadProfile(PLAYER_ID);
+        assertEquals(profile.getRowId(), loaded.getRowId());
+        assertEquals("Notch", loaded.getName());
+        assertTrue(loaded.isOnlinemodePreferred());
+        assertEquals("127.0.0.1", loaded.getLastIp());
+
+        Map<String, StoredProfile> bulk = storage.loadProfilesByName(Arrays.asList("Notch", "Unknown"));
+        assertTrue(bulk.get("Notch").isExistingPlayer());
+        assertEquals(-1, bulk.get("Unknown").getRowId());
+
+        assertEquals(1, storage.deleteProfile("Notch"));
+    }
+
+    @Test
+    void completedConversionUsesBinaryLookups() throws SQLException {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        storage.save(profile);
+
+        storage.completeBinaryConversion();
+        assertTrue(storage.getLoadStatements().contains(SQLStorage.LOAD_BY_UUID_BINARY_ONLY));
+        assertEquals(profile.getRowId(), storage.loadProfile(PLAYER_ID).getRowId());
+        assertEquals(1, storage.loadProfilesById(Arrays.asList(PLAYER_ID, UUID.randomUUID())).size());
+
+        // saves of a server with the disabled format still write the binary id
+        storage.setBinaryFormat(false);
+        StoredProfile other = new StoredProfile(UUID.randomUUID(), "Dinnerbone", true, FloodgateState.FALSE, "");
+        storage.save(other);
+        assertEquals(other.getRowId(), storage.loadProfile(other.getId()).getRowId());
+    }
+
+    @Test
+    void pruneKeepsRecentProfiles() throws SQLException {
+        storage.save(storage.loadProfile("Recent"));
+
+        SQLStorage.PruneResult result = storage.pruneBatch(0, 30, 100);
+        assertEquals(0, result.getDeleted());
+        assertTrue(result.isCompleted());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryAuthStorageTest {
+
+    private final InMemoryAuthStorage storage = new InMemoryAuthStorage();
+
+    @Test
+    void changesAreOnlyVisibleAfterSave() {
+        StoredProfile profile = storage.loadProfile("Notch");
+        assertFalse(profile.isExistingPlayer());
+
+        profile.setId(PLAYER_ID);
+        assertFalse(storage.loadProfile("Notch").isExistingPlayer());
+        storage.save(profile);
+
+        StoredProfile loaded = storage.loadProfile("notch");
+        assertNotSame(profile, loaded);
+        assertTrue(loaded.isExistingPlayer());
+        assertEquals(profile.getRowId(), loaded.getRowId());
+        assertEquals(PLAYER_ID, storage.loadProfile(PLAYER_ID).getId());
+    }
+
+    @Test
+    void renameUpdatesNameIndex() {
+        StoredProfile profile = storage.loadProfile("OldName");
+        profile.setId(PLAYER_ID);
+        storage.save(profile);
+
+        StoredProfile renamed = storage.loadProfile(PLAYER_ID);
+        renamed.setPlayerName("NewName");
+        storage.save(renamed);
+
+        assertFalse(storage.loadProfile("OldName").isExistingPlayer());
+        assertEquals(profile.getRowId(), storage.loadProfile("NewName").getRowId());
+        assertEquals(1, storage.size());
+    }
+
+    @Test
+    void concurrentInsertUpdatesExistingRow() {
+        StoredProfile first = storage.loadProfile("Notch");
+        StoredProfile second = storage.loadProfile("Notch");
+
+        storage.save(first);
+        second.setOnlinemodePreferred(true);
+        storage.save(second);
+
+        assertEquals(first.getRowId(), second.getRowId());
+        assertTrue(storage.loadProfile("Notch").isOnlinemodePreferred());
+        assertEquals(1, storage.size());
+    }
+
+    @Test
+    void deleteRemovesIndexes() {
+        StoredProfile profile = storage.loadProfile("Notch");
+        profile.setId(PLAYER_ID);
+        storage.save(profile);
+
+        assertEquals(1, storage.deleteProfile("Notch"));
+        assertEquals(0, storage.deleteProfile("Notch"));
+        assertNull(storage.loadProfile(PLAYER_ID));
+        assertFalse(storage.loadProfile("Notch").isExistingPlayer());
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.UUID;
+
+import static com.github.games647.fastlogin.core.TestFixtures.createSQLiteStorage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStorageTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogStorageTest.class);
+
+    @TempDir
+    Path dataFolder;
+
+    private LogStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = open();
+    }
+
+    private LogStorage open() throws IOException {
+        return new LogStorage(LOG, dataFolder, false, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void saveAndLoad() {
+        UUID id = UUID.randomUUID();
+        StoredProfile profile = storage.loadProfile("Player");
+        assertFalse(profile.isExistingPlayer());
+
+        profile.setId(id);
+        profile.setOnlinemodePreferred(true);
+        profile.setLastIp("127.0.0.1");
+        storage.save(profile);
+        assertTrue(profile.isExistingPlayer());
+
+        StoredProfile byName = storage.loadProfile("player");
+        assertEquals(profile.getRowId(), byName.getRowId());
+        assertEquals(id, byName.getId());
+        assertTrue(byName.isOnlinemodePreferred());
+        assertEquals("127.0.0.1", byName.getLastIp());
+        assertEquals("Player", storage.loadProfile(id).getName());
+    }
+
+    @Test
+    void renameAndDelete() {
+        UUID id = UUID.randomUUID();
+        StoredProfile profile = storage.loadProfile("OldName");
+        profile.setId(id);
+        storage.save(profile);
+
+        profile.setPlayerName("NewName");
+        storage.save(profile);
+        assertFalse(storage.loadProfile("OldName").isExistingPlayer());
+        assertEquals(profile.getRowId(), storage.loadProfile("NewName").getRowId());
+        assertEquals("NewName", storage.loadProfile(id).getName());
+
+        assertEquals(1, storage.deleteProfile("NewName"));
+        assertFalse(storage.loadProfile("NewName").isExistingPlayer());
+        assertNull(storage.loadProfile(id));
+        assertEquals(0, storage.size());
+    }
+
+    @Test
+    void reopenAfterCleanShutdown() throws IOException {
+        saveProfiles(100);
+        storage.deleteProfile("Player0");
+        storage.close();
+
+        storage = open();
+        assertEquals(99, storage.size());
+        assertFalse(storage.loadProfile("Player0").isExistingPlayer());
+        assertEquals(new UUID(0, 42), storage.loadProfile("Player42").getId());
+
+        // row ids continue after the restart
+        StoredProfile profile = storage.loadProfile("Other");
+        storage.save(profile);
+        assertEquals(101, profile.getRowId());
+    }
+
+    @Test
+    void indexGrowsWithProfiles() throws IOException {
+        saveProfiles(5_000);
+        assertEquals(new UUID(0, 4_321), storage.loadProfile("Player4321").getId());
+
+        storage.close();
+        storage = open();
+        assertEquals(5_000, storage.size());
+        assertEquals("Player17", storage.loadProfile(new UUID(0, 17)).getName());
+    }
+
+    @Test
+    void recoverFromTornWrite() throws IOException {
+        saveProfiles(10);
+        long validLength = storage.getLogLength();
+
+        // simulate a crash during a write: no clean shutdown and a partial record at the end
+        try (FileChannel channel = FileChannel.open(dataFolder.resolve(LogStorage.LOG_FILE),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5}));
+        }
+
+        LogStorage recovered = open();
+        try {
+            assertEquals(10, recovered.size());
+            assertEquals(validLength, recovered.getLogLength());
+            assertEquals(new UUID(0, 5), recovered.loadProfile("Player5").getId());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    void newestDuplicateIdWinsAfterRecovery() throws IOException {
+        UUID id = UUID.randomUUID();
+        StoredProfile first = storage.loadProfile("First");
+        first.setId(id);
+        storage.save(first);
+
+        StoredProfile second = storage.loadProfile("Second");
+        second.setId(id);
+        storage.save(second);
+
+        // the row with the lower id has the newest record now
+        first.setOnlinemodePreferred(true);
+        storage.save(first);
+        assertEquals("First", storage.loadProfile(id).getName());
+
+        LogStorage recovered = open();
+        try {
+            assertEquals("First", recovered.loadProfile(id).getName());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    void renameToUsedNameIsRejected() {
+        StoredProfile first = storage.loadProfile("First");
+        storage.save(first);
+        StoredProfile second = storage.loadProfile("Second");
+        storage.save(second);
+
+        second.setPlayerName("first");
+        storage.save(second);
+
+        assertTrue(second.isDirty());
+        assertEquals(first.getRowId(), storage.loadProfile("First").getRowId());
+        assertEquals(second.getRowId(), storage.loadProfile("Second").getRowId());
+    }
+
+    @Test
+    void corruptRecordIsNotReturned() throws IOException {
+        saveProfiles(1);
+        storage.close();
+
+        // flip a byte of the payload while the index still points to the record
+        try (FileChannel channel = FileChannel.open(dataFolder.resolve(LogStorage.LOG_FILE),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate(1);
+            channel.read(data, 12);
+            data.put(0, (byte) ~data.get(0));
+            data.rewind();
+            channel.write(data, 12);
+        }
+
+        storage = open();
+        StoredProfile loaded = storage.loadProfile("Player0");
+        assertTrue(loaded == null || !loaded.isExistingPlayer());
+        assertNull(storage.loadProfile(new UUID(0, 0)));
+    }
+
+    @Test
+    void compactionKeepsLatestRecords() throws IOException {
+        saveProfiles(50);
+        for (int i = 0; i < 50; i++) {
+            StoredProfile profile = storage.loadProfile("Player" + i);
+            profile.setOnlinemodePreferred(true);
+            storage.save(profile);
+        }
+
+        storage.deleteProfile("Player1");
+        long before = storage.getLogLength();
+        storage.compact();
+
+        assertTrue(storage.getLogLength() < before / 2);
+        assertEquals(49, storage.size());
+        assertTrue(storage.loadProfile("Player2").isOnlinemodePreferred());
+        assertFalse(storage.loadProfile("Player1").isExistingPlayer());
+
+        storage.close();
+        storage = open();
+        assertEquals(49, storage.size());
+        assertTrue(storage.loadProfile("Player49").isOnlinemodePreferred());
+    }
+
+    @Test
+    void importFromSQLite() throws SQLException, IOException {
+        SQLiteStorage source = createSQLiteStorage(dataFolder, "FastLogin.db");
+        try {
+            for (int i = 0; i < 25; i++) {
+                StoredProfile profile = source.loadProfile("Player" + i);
+                profile.setId(new UUID(0, i));
+                source.save(profile);
+            }
+
+            assertEquals(25, storage.importProfiles(source, 10));
+        } finally {
+            source.close();
+        }
+
+        StoredProfile imported = storage.loadProfile("Player7");
+        assertEquals(8, imported.getRowId());
+        assertEquals(new UUID(0, 7), imported.getId());
+
+        StoredProfile added = storage.loadProfile("Player25");
+        storage.save(added);
+        assertEquals(26, added.getRowId());
+    }
+
+    private void saveProfiles(int count) {
+        for (int i = 0; i < count; i++) {
+            StoredProfile profile = storage.loadProfile("Player" + i);
+            profile.setId(new UUID(0, i));
+            storage.save(profile);
+        }
+    }
+}
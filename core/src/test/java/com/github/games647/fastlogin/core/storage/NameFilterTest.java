@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NameFilterTest {
+
+    @Test
+    void addedNamesAreContained() {
+        NameFilter filter = new NameFilter(1_000, 0.01);
+        for (int i = 0; i < 1_000; i++) {
+            filter.add("Player" + i);
+        }
+
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain("Player" + i));
+        }
+
+        assertEquals(0, filter.getSkippedLookups());
+    }
+
+    @Test
+    void namesAreCaseInsensitive() {
+        NameFilter filter = new NameFilter(100, 0.01);
+        filter.add("Notch");
+
+        assertTrue(filter.mightContain("notch"));
+        assertTrue(filter.mightContain("NOTCH"));
+    }
+
+    @Test
+    void unknownNamesAreSkipped() {
+        NameFilter filter = new NameFilter(100, 0.01);
+        filter.add("Notch");
+
+        assertFalse(filter.mightContain("Dinnerbone"));
+        assertEquals(1, filter.getSkippedLookups());
+    }
+
+    @Test
+    void falsePositiveRateIsBounded() {
+        NameFilter filter = new NameFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("Player" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("Unknown" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // generous bound to keep the test stable
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+        assertEquals(10_000 - falsePositives, filter.getSkippedLookups());
+    }
+}
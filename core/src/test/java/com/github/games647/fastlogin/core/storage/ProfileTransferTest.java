@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static com.github.games647.fastlogin.core.TestFixtures.createSQLiteStorage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileTransferTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProfileTransferTest.class);
+    private static final int PROFILES = 25;
+
+    @TempDir
+    Path dataFolder;
+
+    private SQLiteStorage source;
+    private SQLiteStorage target;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        source = createSQLiteStorage(dataFolder, "source.db");
+        target = createSQLiteStorage(dataFolder, "target.db");
+
+        for (int i = 0; i < PROFILES; i++) {
+            StoredProfile profile = source.loadProfile("Player" + i);
+            if (i % 2 == 0) {
+                profile.setId(new UUID(0, i));
+                profile.setOnlinemodePreferred(true);
+            }
+
+            source.save(profile);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        source.close();
+        target.close();
+    }
+
+    @Test
+    void nonEmptyTargetIsRejected() throws SQLException {
+        target.save(new StoredProfile(null, "Existing", false, FloodgateState.FALSE, ""));
+
+        ProfileTransfer transfer = new ProfileTransfer(LOG, source, target, 10);
+        assertThrows(IllegalStateException.class, () -> transfer.run((done, total) -> { }));
+        assertEquals(1, target.countProfiles(0));
+    }
+
+    @Test
+    void transferContinuesAfterFailure() throws SQLException {
+        ProfileTransfer transfer = new ProfileTransfer(LOG, source, target, 10);
+        assertThrows(IllegalStateException.class, () -> transfer.run((done, total) -> {
+            throw new IllegalStateException("interrupted");
+        }));
+
+        assertEquals(10, target.countProfiles(0));
+
+        long[] progress = new long[2];
+        long transferred = transfer.run(true, (done, total) -> {
+            progress[0] = done;
+            progress[1] = total;
+        });
+
+        assertEquals(PROFILES - 10, transferred);
+        assertEquals(PROFILES - 10, progress[0]);
+        assertEquals(PROFILES - 10, progress[1]);
+        assertEquals(PROFILES, target.countProfiles(0));
+
+        for (int i = 0; i < PROFILES; i++) {
+            StoredProfile expected = source.loadProfile("Player" + i);
+            StoredProfile copy = target.loadProfile("Player" + i);
+
+            assertTrue(copy.isExistingPlayer());
+            assertEquals(expected.getRowId(), copy.getRowId());
+            assertEquals(expected.getId(), copy.getId());
+            assertEquals(expected.isOnlinemodePreferred(), copy.isOnlinemodePreferred());
+            assertEquals(expected.getLastLogin(), copy.getLastLogin());
+        }
+    }
+}
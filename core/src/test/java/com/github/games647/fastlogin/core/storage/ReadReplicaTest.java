@@ -0,0 +1,121 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.JDBC;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
+
+import static com.github.games647.fastlogin.core.TestFixtures.createSQLiteStorage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Uses two separate SQLite files as primary and replica. Nothing is replicated between them, so the test can see
+ * which database answered.
+ */
+class ReadReplicaTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private SQLiteStorage primary;
+    private SQLiteStorage replica;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = createSQLiteStorage(dataFolder, "primary.db");
+        replica = createSQLiteStorage(dataFolder, "replica.db");
+    }
+
+    private void enableReplica(Duration stickiness) {
+        primary.enableReplicaPools(Collections.singletonList(createReplicaConfig()), stickiness);
+    }
+
+    private HikariConfig createReplicaConfig() {
+        HikariConfig replicaConfig = new HikariConfig();
+        replicaConfig.setDataSourceClassName("org.sqlite.SQLiteDataSource");
+        replicaConfig.addDataSourceProperty("url", JDBC.PREFIX + dataFolder.resolve("replica.db"));
+        replicaConfig.setMaximumPoolSize(1);
+        return replicaConfig;
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    void lookupsUseReplica() {
+        enableReplica(Duration.ofMinutes(1));
+        replica.save(replica.loadProfile("Replicated"));
+
+        assertTrue(primary.loadProfile("Replicated").isExistingPlayer());
+        assertTrue(primary.loadProfilesByName(Collections.singletonList("Replicated")).get("Replicated")
+                .isExistingPlayer());
+    }
+
+    @Test
+    void replicaIsNotTrackedAsPrimary() {
+        // like a config copied from the primary
+        HikariConfig replicaConfig = createReplicaConfig();
+        replicaConfig.setMetricsTrackerFactory(primary.getMetrics());
+        primary.enableReplicaPools(Collections.singletonList(replicaConfig), Duration.ofMinutes(1));
+
+        long acquired = primary.getMetrics().getAcquireLatency().getCount();
+        primary.loadProfile("Replicated");
+        assertEquals(acquired, primary.getMetrics().getAcquireLatency().getCount());
+    }
+
+    @Test
+    void writtenPlayerStaysOnPrimary() {
+        enableReplica(Duration.ofMinutes(1));
+        primary.save(primary.loadProfile("Written"));
+
+        // the replica doesn't know the player yet
+        assertTrue(primary.loadProfile("Written").isExistingPlayer());
+        assertTrue(primary.loadProfilesByName(Collections.singletonList("Written")).get("Written")
+                .isExistingPlayer());
+    }
+
+    @Test
+    void writtenPlayerUsesReplicaWithoutStickiness() {
+        enableReplica(Duration.ZERO);
+        primary.save(primary.loadProfile("Written"));
+
+        assertFalse(primary.loadProfile("Written").isExistingPlayer());
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.shared.PlatformPlugin;
+import com.github.games647.fastlogin.core.storage.SQLiteStorage.WalOptions;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SQLiteStorageTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private SQLiteStorage storage;
+    private SQLiteStorage otherServer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        PlatformPlugin<?> plugin = mock(PlatformPlugin.class);
+        when(plugin.getLog()).thenReturn(LoggerFactory.getLogger(SQLiteStorageTest.class));
+        when(plugin.getName()).thenReturn("FastLogin");
+        when(plugin.getPluginFolder()).thenReturn(dataFolder);
+
+        storage = createStorage(plugin);
+        otherServer = createStorage(plugin);
+    }
+
+    private static SQLiteStorage createStorage(PlatformPlugin<?> plugin) throws SQLException {
+        SQLiteStorage storage = new SQLiteStorage(plugin, "{pluginDir}/FastLogin.db", new HikariConfig());
+        storage.createTables();
+        return storage;
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+        otherServer.close();
+    }
+
+    @Test
+    void concurrentInsertUpdatesExistingRow() {
+        StoredProfile first = storage.loadProfile("Notch");
+        StoredProfile second = otherServer.loadProfile("Notch");
+
+        storage.save(first);
+        assertTrue(first.isExistingPlayer());
+
+        second.setId(PLAYER_ID);
+        second.setOnlinemodePreferred(true);
+        otherServer.save(second);
+
+        assertEquals(first.getRowId(), second.getRowId());
+
+        StoredProfile stored = storage.loadProfile("Notch");
+        assertEquals(first.getRowId(), stored.getRowId());
+        assertEquals(PLAYER_ID, stored.getId());
+        assertTrue(stored.isOnlinemodePreferred());
+    }
+
+    @Test
+    void oldDriverInsertsWithoutReturning() throws SQLException {
+        // like the driver of an old server
+        SQLiteStorage oldDriver = new SQLiteStorage(LoggerFactory.getLogger(SQLiteStorageTest.class), "FastLogin",
+                null, dataFolder.resolve("old.db").toString(), new HikariConfig(), null) {
+            @Override
+            protected String getEngineVersion(Connection con) {
+                return "3.8.11.2";
+            }
+        };
+
+        try {
+            oldDriver.createTables();
+            StoredProfile profile = oldDriver.loadProfile("Notch");
+            profile.setId(PLAYER_ID);
+            oldDriver.save(profile);
+
+            assertTrue(profile.isExistingPlayer());
+            assertFalse(profile.isDirty());
+            assertEquals(profile.getRowId(), oldDriver.loadProfile(PLAYER_ID).getRowId());
+        } finally {
+            oldDriver.close();
+        }
+    }
+
+    @Test
+    void returningRequiresSQLite335() {
+        assertTrue(SQLiteStorage.isReturningSupported("3.35.0"));
+        assertTrue(SQLiteStorage.isReturningSupported("3.45.1"));
+        assertFalse(SQLiteStorage.isReturningSupported("3.34.1"));
+        assertFalse(SQLiteStorage.isReturningSupported("3.8.11.2"));
+        assertFalse(SQLiteStorage.isReturningSupported("unknown"));
+    }
+
+    @Test
+    void migrationsCreateIndexes() throws SQLException {
+        String url = "jdbc:sqlite:" + dataFolder.resolve("FastLogin.db");
+        List<String> indexes = new ArrayList<>();
+        try (Connection con = DriverManager.getConnection(url);
+             ResultSet resultSet = con.getMetaData().getIndexInfo(null, null, "premium", false, true)) {
+            while (resultSet.next()) {
+                indexes.add(resultSet.getString("INDEX_NAME"));
+            }
+        }
+
+        assertTrue(indexes.contains("idx_premium_uuid"));
+        assertTrue(indexes.contains("idx_premium_last_login"));
+    }
+
+    @Test
+    void warmUpAndLoadRecentProfiles() throws SQLException {
+        assertEquals(1, storage.warmUp());
+
+        Instant now = Instant.now();
+        List<StoredProfile> profiles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Instant lastLogin = now.minus(Duration.ofDays(i));
+            profiles.add(new StoredProfile(-1, null, "Player" + i, false, FloodgateState.FALSE, "", lastLogin));
+        }
+
+        storage.importProfiles(profiles, false);
+
+        List<StoredProfile> recent = storage.loadRecentProfiles(2);
+        assertEquals(2, recent.size());
+        assertEquals("Player0", recent.get(0).getName());
+        assertEquals("Player1", recent.get(1).getName());
+    }
+
+    @Test
+    void operationsAreMeasured() {
+        StorageMetrics metrics = storage.getMetrics();
+        metrics.setSlowQueryThreshold(Duration.ofNanos(1));
+
+        StoredProfile profile = storage.loadProfile("Notch");
+        storage.save(profile);
+        storage.deleteProfile("Notch");
+
+        assertEquals(1, metrics.getLatency(StorageMetrics.Operation.LOAD).getCount());
+        assertEquals(1, metrics.getLatency(StorageMetrics.Operation.SAVE).getCount());
+        assertEquals(1, metrics.getLatency(StorageMetrics.Operation.DELETE).getCount());
+        assertEquals(3, metrics.getSlowQueries());
+        assertTrue(metrics.getAcquireLatency().getCount() >= 3);
+    }
+
+    @Test
+    void bulkLoadByName() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            StoredProfile profile = new StoredProfile(null, "Player" + i, false, FloodgateState.FALSE, "");
+            storage.save(profile);
+            names.add(profile.getName());
+        }
+
+        names.add("Unknown");
+        Map<String, StoredProfile> profiles = storage.loadProfilesByName(names);
+
+        assertEquals(names.size(), profiles.size());
+        assertTrue(profiles.get("Player599").isExistingPlayer());
+        assertFalse(profiles.get("Unknown").isExistingPlayer());
+    }
+
+    @Test
+    void bulkLoadById() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        storage.save(profile);
+
+        UUID unknownId = UUID.randomUUID();
+        Map<UUID, StoredProfile> profiles = storage.loadProfilesById(Arrays.asList(PLAYER_ID, unknownId));
+
+        assertEquals(1, profiles.size());
+        assertEquals(profile.getRowId(), profiles.get(PLAYER_ID).getRowId());
+    }
+
+    @Test
+    void skipsUnchangedProfileWithinRefreshInterval() {
+        storage.setLastLoginRefreshInterval(Duration.ofHours(1));
+        storage.save(new StoredProfile(PLAYER_ID, "Notch", false, FloodgateState.FALSE, "127.0.0.1"));
+
+        StoredProfile loaded = storage.loadProfile("Notch");
+        loaded.setOnlinemodePreferred(false);
+        assertFalse(loaded.isDirty());
+
+        // only the IP changed - delayed until the next refresh
+        loaded.setLastIp("127.0.0.2");
+        storage.save(loaded);
+        assertEquals("127.0.0.1", storage.loadProfile("Notch").getLastIp());
+
+        loaded.setOnlinemodePreferred(true);
+        storage.save(loaded);
+        assertFalse(loaded.isDirty());
+
+        StoredProfile stored = storage.loadProfile("Notch");
+        assertTrue(stored.isOnlinemodePreferred());
+        assertEquals("127.0.0.2", stored.getLastIp());
+    }
+
+    @Test
+    void lastLoginIsReadAsUtc() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        try {
+            storage.save(new StoredProfile(PLAYER_ID, "Notch", false, FloodgateState.FALSE, ""));
+
+            Instant lastLogin = storage.loadProfile("Notch").getLastLogin();
+            long offsetSeconds = Duration.between(lastLogin, Instant.now()).getSeconds();
+            assertTrue(Math.abs(offsetSeconds) < 60, "Last login: " + lastLogin);
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    void nameFilterSkipsUnknownNames() throws SQLException {
+        storage.save(new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, ""));
+
+        storage.enableNameFilter(100, 0.01);
+        NameFilter filter = storage.getNameFilter();
+        assertTrue(filter.mightContain("Notch"));
+
+        assertFalse(storage.loadProfile("Dinnerbone").isExistingPlayer());
+        assertEquals(1, filter.getSkippedLookups());
+
+        // new players are added on save
+        storage.save(new StoredProfile(null, "Dinnerbone", false, FloodgateState.FALSE, ""));
+        assertTrue(storage.loadProfile("Dinnerbone").isExistingPlayer());
+    }
+
+    @Test
+    void walReadersDontWaitForWriter() throws Exception {
+        SQLiteStorage walStorage = createWalStorage("WAL.db");
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            walStorage.save(new StoredProfile(null, "Notch", false, FloodgateState.FALSE, ""));
+
+            String url = "jdbc:sqlite:" + dataFolder.resolve("WAL.db");
+            try (Connection con = DriverManager.getConnection(url);
+                 Statement stmt = con.createStatement()) {
+                try (ResultSet resultSet = stmt.executeQuery("PRAGMA journal_mode")) {
+                    assertTrue(resultSet.next());
+                    assertEquals("wal", resultSet.getString(1).toLowerCase(Locale.ROOT));
+                }
+
+                // keep the write lock held by an open transaction
+                con.setAutoCommit(false);
+                stmt.executeUpdate("UPDATE premium SET Premium = 1 WHERE Name = 'Notch'");
+
+                List<Future<StoredProfile>> lookups = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    lookups.add(readers.submit(() -> walStorage.loadProfile("Notch")));
+                }
+
+                for (Future<StoredProfile> lookup : lookups) {
+                    // readers see the last committed state
+                    assertFalse(lookup.get(5, TimeUnit.SECONDS).isOnlinemodePreferred());
+                }
+
+                con.commit();
+            }
+
+            assertTrue(walStorage.loadProfile("Notch").isOnlinemodePreferred());
+        } finally {
+            readers.shutdownNow();
+            walStorage.close();
+        }
+    }
+
+    @Test
+    void brokenReaderIsReplaced() throws SQLException {
+        SQLiteStorage walStorage = createWalStorage("WAL.db");
+        try {
+            walStorage.save(new StoredProfile(null, "Notch", false, FloodgateState.FALSE, ""));
+
+            assertThrows(SQLException.class, () -> walStorage.query(SQLStorage.LOAD_BY_NAME,
+                    stmt -> stmt.setString(1, "Notch"), resultSet -> {
+                        resultSet.getStatement().getConnection().close();
+                        throw new SQLException("Connection lost");
+                    }));
+
+            // the only reader has to be reopened
+            assertTrue(walStorage.loadProfile("Notch").isExistingPlayer());
+        } finally {
+            walStorage.close();
+        }
+    }
+
+    private SQLiteStorage createWalStorage(String fileName) throws SQLException {
+        WalOptions walOptions = new WalOptions(1, "NORMAL", 2_000, 0);
+        String path = dataFolder.resolve(fileName).toString();
+        SQLiteStorage walStorage = new SQLiteStorage(LoggerFactory.getLogger(SQLiteStorageTest.class), "FastLogin",
+                null, path, new HikariConfig(), walOptions);
+        walStorage.createTables();
+        return walStorage;
+    }
+
+    @Test
+    void deletedProfileIsNotInsertedAgain() throws SQLException {
+        storage.save(new StoredProfile(null, "Notch", false, FloodgateState.FALSE, ""));
+        storage.save(new StoredProfile(null, "Dinnerbone", false, FloodgateState.FALSE, ""));
+        StoredProfile online = storage.loadProfile("Notch");
+        StoredProfile batched = storage.loadProfile("Dinnerbone");
+
+        // deleted by a command on another server while the players are online
+        otherServer.deleteProfile("Notch");
+        otherServer.deleteProfile("Dinnerbone");
+
+        online.setOnlinemodePreferred(true);
+        storage.save(online);
+        assertFalse(storage.loadProfile("Notch").isExistingPlayer());
+
+        batched.setOnlinemodePreferred(true);
+        assertTrue(storage.saveBatch(Collections.singletonList(batched)).isEmpty());
+        assertFalse(storage.loadProfile("Dinnerbone").isExistingPlayer());
+    }
+
+    @Test
+    void pruneStaleCrackedProfiles() throws SQLException {
+        storage.save(new StoredProfile(null, "Cracked", false, FloodgateState.FALSE, ""));
+        storage.save(new StoredProfile(PLAYER_ID, "Premium", true, FloodgateState.FALSE, ""));
+        storage.save(new StoredProfile(null, "Recent", false, FloodgateState.FALSE, ""));
+
+        String url = "jdbc:sqlite:" + dataFolder.resolve("FastLogin.db");
+        try (Connection con = DriverManager.getConnection(url);
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("UPDATE premium SET LastLogin = '2000-01-01 00:00:00' WHERE Name <> 'Recent'");
+        }
+
+        SQLStorage.PruneResult result = storage.pruneBatch(0, 30, 10);
+        assertEquals(1, result.getDeleted());
+        assertTrue(result.isCompleted());
+
+        assertFalse(storage.loadProfile("Cracked").isExistingPlayer());
+        assertTrue(storage.loadProfile("Premium").isExistingPlayer());
+        assertTrue(storage.loadProfile("Recent").isExistingPlayer());
+    }
+}
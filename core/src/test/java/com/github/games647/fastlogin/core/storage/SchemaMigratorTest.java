@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SchemaMigratorTest {
+
+    private Connection con;
+    private SchemaMigrator migrator;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        con = DriverManager.getConnection("jdbc:sqlite::memory:");
+        migrator = new SchemaMigrator(LoggerFactory.getLogger(SchemaMigratorTest.class));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        con.close();
+    }
+
+    @Test
+    void appliesInOrderOnlyOnce() throws SQLException {
+        StringBuilder order = new StringBuilder();
+        List<Migration> migrations = Arrays.asList(
+                new Migration(2, "Second", c -> order.append('2')),
+                new Migration(1, "First", c -> order.append('1'))
+        );
+
+        assertEquals(2, migrator.migrate(con, migrations));
+        assertEquals(2, migrator.migrate(con, migrations));
+        assertEquals("12", order.toString());
+    }
+
+    @Test
+    void appliesOnlyNewMigrations() throws SQLException {
+        AtomicInteger applied = new AtomicInteger();
+        migrator.migrate(con, Arrays.asList(new Migration(1, "First", c -> applied.incrementAndGet())));
+
+        migrator.migrate(con, Arrays.asList(
+                new Migration(1, "First", c -> applied.incrementAndGet()),
+                new Migration(2, "Second", c -> applied.incrementAndGet())
+        ));
+
+        assertEquals(2, applied.get());
+        assertEquals(2, migrator.getVersion(con));
+    }
+
+    @Test
+    void appliesSkippedOptionalMigration() throws SQLException {
+        AtomicInteger applied = new AtomicInteger();
+        migrator.migrate(con, Arrays.asList(new Migration(2, "Second", c -> { })));
+        migrator.migrate(con, Arrays.asList(
+                new Migration(1, "Optional", c -> applied.incrementAndGet()),
+                new Migration(2, "Second", c -> applied.incrementAndGet())
+        ));
+
+        assertEquals(1, applied.get());
+    }
+
+    @Test
+    void failedMigrationIsNotRecorded() throws SQLException {
+        List<Migration> migrations = Arrays.asList(
+                new Migration(1, "First", c -> { }),
+                new Migration(2, "Broken", c -> {
+                    throw new SQLException("Expected failure");
+                })
+        );
+
+        assertThrows(SQLException.class, () -> migrator.migrate(con, migrations));
+        assertEquals(1, migrator.getVersion(con));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShadowAuthStorageTest {
+
+    private InMemoryAuthStorage primary;
+    private InMemoryAuthStorage shadow;
+    private ShadowAuthStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        primary = new InMemoryAuthStorage();
+        shadow = new InMemoryAuthStorage();
+        storage = new ShadowAuthStorage(LoggerFactory.getLogger(ShadowAuthStorageTest.class), primary, shadow,
+                1, 100, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void savesAreMirrored() throws InterruptedException {
+        StoredProfile profile = storage.loadProfile("Notch");
+        profile.setId(PLAYER_ID);
+        profile.setOnlinemodePreferred(true);
+        storage.save(profile);
+        storage.awaitMirrored();
+
+        StoredProfile mirrored = shadow.loadProfile("Notch");
+        assertTrue(mirrored.isExistingPlayer());
+        assertEquals(PLAYER_ID, mirrored.getId());
+        assertTrue(mirrored.isOnlinemodePreferred());
+        assertEquals(1, storage.getPrimarySaves().getCount());
+        assertEquals(1, storage.getShadowSaves().getCount());
+    }
+
+    @Test
+    void renameUpdatesSameShadowRow() throws InterruptedException {
+        StoredProfile profile = storage.loadProfile("OldName");
+        storage.save(profile);
+
+        profile.setPlayerName("NewName");
+        storage.save(profile);
+        storage.awaitMirrored();
+
+        assertEquals(1, shadow.size());
+        assertTrue(shadow.loadProfile("NewName").isExistingPlayer());
+        assertFalse(shadow.loadProfile("OldName").isExistingPlayer());
+    }
+
+    @Test
+    void divergentLookupsAreCounted() throws InterruptedException {
+        StoredProfile profile = storage.loadProfile("Notch");
+        storage.save(profile);
+        storage.awaitMirrored();
+
+        storage.loadProfile("Notch");
+        storage.awaitMirrored();
+        // the first lookup before the save isn't compared
+        assertEquals(1, storage.getComparedReads());
+        assertEquals(0, storage.getDivergentReads());
+
+        // changed only in the candidate storage
+        StoredProfile shadowProfile = shadow.loadProfile("Notch");
+        shadowProfile.setOnlinemodePreferred(true);
+        shadow.save(shadowProfile);
+
+        storage.loadProfile("Notch");
+        storage.awaitMirrored();
+        assertEquals(2, storage.getComparedReads());
+        assertEquals(1, storage.getDivergentReads());
+    }
+
+    @Test
+    void playersOnlyInPrimaryAreNotCompared() throws InterruptedException {
+        // existed before the start, so the shadow storage doesn't know it
+        StoredProfile existing = primary.loadProfile("Notch");
+        existing.setId(PLAYER_ID);
+        primary.save(existing);
+
+        storage.loadProfile("Notch");
+        storage.loadProfile(PLAYER_ID);
+        storage.awaitMirrored();
+        assertEquals(0, storage.getComparedReads());
+
+        // the next save copies it to the shadow storage
+        storage.save(storage.loadProfile("Notch"));
+        storage.loadProfile(PLAYER_ID);
+        storage.awaitMirrored();
+        assertEquals(1, storage.getComparedReads());
+        assertEquals(0, storage.getDivergentReads());
+    }
+
+    @Test
+    void pendingSavesAreMirrored() throws InterruptedException {
+        // like a write-behind queue that assigns the row id later
+        InMemoryAuthStorage queued = new InMemoryAuthStorage() {
+            @Override
+            public void save(StoredProfile playerProfile) {
+            }
+        };
+
+        ShadowAuthStorage writeBehind = new ShadowAuthStorage(LoggerFactory.getLogger(ShadowAuthStorageTest.class),
+                queued, shadow, 1, 100, null);
+        try {
+            StoredProfile profile = writeBehind.loadProfile("OldName");
+            writeBehind.save(profile);
+            profile.setPlayerName("NewName");
+            writeBehind.save(profile);
+            writeBehind.awaitMirrored();
+        } finally {
+            writeBehind.close();
+        }
+
+        assertEquals(1, shadow.size());
+        assertTrue(shadow.loadProfile("NewName").isExistingPlayer());
+    }
+
+    @Test
+    void deletesAreMirrored() throws InterruptedException {
+        storage.save(storage.loadProfile("Notch"));
+        assertEquals(1, storage.deleteProfile("Notch"));
+        storage.awaitMirrored();
+
+        assertEquals(0, shadow.size());
+    }
+}
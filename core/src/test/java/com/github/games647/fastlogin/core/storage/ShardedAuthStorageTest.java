@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static com.github.games647.fastlogin.core.TestFixtures.createSQLiteStorage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedAuthStorageTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedAuthStorageTest.class);
+    private static final int PLAYERS = 60;
+
+    @TempDir
+    Path dataFolder;
+
+    private final List<SQLStorage> shards = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            shards.add(createSQLiteStorage(dataFolder, "shard" + i + ".db"));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.forEach(SQLStorage::close);
+    }
+
+    @Test
+    void profilesAreSpreadByName() throws SQLException {
+        ShardedAuthStorage storage = new ShardedAuthStorage(LOG, shards);
+        for (int i = 0; i < PLAYERS; i++) {
+            StoredProfile profile = storage.loadProfile("Player" + i);
+            profile.setId(new UUID(0, i));
+            storage.save(profile);
+        }
+
+        long total = 0;
+        for (SQLStorage shard : shards) {
+            long count = shard.countProfiles(0);
+            assertTrue(count > 0);
+            total += count;
+        }
+
+        assertEquals(PLAYERS, total);
+        for (int i = 0; i < PLAYERS; i++) {
+            String name = "Player" + i;
+            assertTrue(storage.getShard(name).loadProfile(name).isExistingPlayer());
+            assertEquals(storage.getShard(name), storage.getShard(name.toLowerCase(Locale.ROOT)));
+        }
+
+        // a new instance doesn't know the shards of the UUIDs yet
+        ShardedAuthStorage fanOut = new ShardedAuthStorage(LOG, shards);
+        StoredProfile profile = fanOut.loadProfile(new UUID(0, 42));
+        assertNotNull(profile);
+        assertEquals("Player42", profile.getName());
+        assertEquals(PLAYERS, fanOut.loadProfilesById(idsOf(PLAYERS)).size());
+    }
+
+    @Test
+    void renamedPlayerMovesToNewShard() throws SQLException {
+        ShardedAuthStorage storage = new ShardedAuthStorage(LOG, shards);
+        StoredProfile profile = storage.loadProfile("OldName");
+        profile.setId(new UUID(0, 1));
+        profile.setOnlinemodePreferred(true);
+        storage.save(profile);
+
+        String newName = findNameOnOtherShard(storage, "OldName");
+        StoredProfile renamed = storage.loadProfile(new UUID(0, 1));
+        renamed.setPlayerName(newName);
+        storage.save(renamed);
+
+        assertFalse(storage.getShard("OldName").loadProfile("OldName").isExistingPlayer());
+        StoredProfile moved = storage.getShard(newName).loadProfile(newName);
+        assertTrue(moved.isExistingPlayer());
+        assertTrue(moved.isOnlinemodePreferred());
+        assertEquals(new UUID(0, 1), storage.loadProfile(new UUID(0, 1)).getId());
+    }
+
+    @Test
+    void rebalanceAfterAddingShard() throws SQLException {
+        ShardedAuthStorage twoShards = new ShardedAuthStorage(LOG, shards.subList(0, 2));
+        for (int i = 0; i < PLAYERS; i++) {
+            twoShards.save(twoShards.loadProfile("Player" + i));
+        }
+
+        long moved = new ShardRebalancer(LOG, shards, 7).run((done, total) -> { });
+        assertTrue(moved > 0);
+        assertEquals(0, new ShardRebalancer(LOG, shards, 7).run((done, total) -> { }));
+
+        ShardedAuthStorage threeShards = new ShardedAuthStorage(LOG, shards);
+        long total = 0;
+        for (SQLStorage shard : shards) {
+            total += shard.countProfiles(0);
+        }
+
+        assertEquals(PLAYERS, total);
+        assertEquals(moved, shards.get(2).countProfiles(0));
+        for (int i = 0; i < PLAYERS; i++) {
+            String name = "Player" + i;
+            assertTrue(threeShards.getShard(name).loadProfile(name).isExistingPlayer());
+        }
+    }
+
+    private static String findNameOnOtherShard(ShardedAuthStorage storage, String name) {
+        SQLStorage shard = storage.getShard(name);
+        for (int i = 0; ; i++) {
+            String candidate = "NewName" + i;
+            if (storage.getShard(candidate) != shard) {
+                assertNotEquals(name, candidate);
+                return candidate;
+            }
+        }
+    }
+
+    private static List<UUID> idsOf(int count) {
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(new UUID(0, i));
+        }
+
+        return ids;
+    }
+}
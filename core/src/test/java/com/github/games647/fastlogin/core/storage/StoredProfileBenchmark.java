@@ -0,0 +1,149 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+
+/**
+ * Contended reads and writes of a profile with snapshot state compared to the previous per-method synchronization.
+ * This is not part of the regular test run. Start it manually with the test classpath:
+ * {@code java StoredProfileBenchmark}
+ * <p>
+ * Only the profiles are shared within a group to measure the contention. Every thread keeps its own written value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoredProfileBenchmark {
+
+    @State(Scope.Group)
+    public static class SharedProfiles {
+
+        private final StoredProfile snapshotProfile = new StoredProfile(
+                PLAYER_ID, "Notch", true, FloodgateState.FALSE, "127.0.0.1"
+        );
+
+        private final SynchronizedProfile synchronizedProfile = new SynchronizedProfile("Notch", true, "127.0.0.1");
+    }
+
+    @State(Scope.Thread)
+    public static class WriterState {
+
+        private boolean premium;
+
+        boolean toggle() {
+            premium = !premium;
+            return premium;
+        }
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public String snapshotRead(SharedProfiles profiles) {
+        // typical login check
+        StoredProfile profile = profiles.snapshotProfile;
+        return profile.isOnlinemodePreferred() ? profile.getName() : profile.getLastIp();
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public void snapshotWrite(SharedProfiles profiles, WriterState writer) {
+        profiles.snapshotProfile.setOnlinemodePreferred(writer.toggle());
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(3)
+    public String synchronizedRead(SharedProfiles profiles) {
+        SynchronizedProfile profile = profiles.synchronizedProfile;
+        return profile.isOnlinemodePreferred() ? profile.getName() : profile.getLastIp();
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(1)
+    public void synchronizedWrite(SharedProfiles profiles, WriterState writer) {
+        profiles.synchronizedProfile.setOnlinemodePreferred(writer.toggle());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StoredProfileBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * State handling of the profile before it was changed to snapshots.
+     */
+    private static class SynchronizedProfile {
+
+        private final String name;
+        private boolean premium;
+        private String lastIp;
+
+        SynchronizedProfile(String name, boolean premium, String lastIp) {
+            this.name = name;
+            this.premium = premium;
+            this.lastIp = lastIp;
+        }
+
+        public synchronized String getName() {
+            return name;
+        }
+
+        public synchronized boolean isOnlinemodePreferred() {
+            return premium;
+        }
+
+        public synchronized void setOnlinemodePreferred(boolean premium) {
+            this.premium = premium;
+        }
+
+        public synchronized String getLastIp() {
+            return lastIp;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Field;
+import com.github.games647.fastlogin.core.storage.StoredProfile.Snapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StoredProfileTest {
+
+    @Test
+    void snapshotIsNotChangedByLaterUpdates() {
+        StoredProfile profile = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "127.0.0.1");
+        Snapshot before = profile.getSnapshot();
+
+        profile.setId(PLAYER_ID);
+        profile.setOnlinemodePreferred(true);
+        profile.setRowId(1);
+
+        assertNull(before.getId());
+        assertFalse(before.isOnlinemodePreferred());
+        assertFalse(before.isExistingPlayer());
+        assertTrue(before.getDirtyFields().isEmpty());
+
+        Snapshot after = profile.getSnapshot();
+        assertEquals(PLAYER_ID, after.getId());
+        assertEquals(EnumSet.of(Field.ID, Field.PREMIUM), after.getDirtyFields());
+    }
+
+    @Test
+    void unchangedValueKeepsSnapshot() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "127.0.0.1");
+        Snapshot before = profile.getSnapshot();
+
+        profile.setOnlinemodePreferred(true);
+        profile.setLastIp("127.0.0.1");
+
+        assertSame(before, profile.getSnapshot());
+        assertFalse(profile.isDirty());
+    }
+
+    @Test
+    void takenFieldsCanBeRestored() {
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", false, FloodgateState.FALSE, "127.0.0.1");
+        profile.setLastIp("127.0.0.2");
+
+        Snapshot taken = profile.takeSnapshot();
+        assertEquals(EnumSet.of(Field.LAST_IP), taken.getDirtyFields());
+        assertFalse(profile.isDirty());
+
+        profile.setPlayerName("Dinnerbone");
+        profile.markDirty(taken.getDirtyFields());
+        assertEquals(EnumSet.of(Field.LAST_IP, Field.NAME), profile.getDirtyFields());
+        assertEquals("Dinnerbone", profile.getName());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.games647.fastlogin.core.TestFixtures.PLAYER_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindQueueTest.class);
+
+    @TempDir
+    Path dataFolder;
+
+    private RecordingStorage storage;
+    private WriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        String path = dataFolder.resolve("FastLogin.db").toString();
+        storage = new RecordingStorage(path);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.close();
+        }
+
+        storage.close();
+    }
+
+    @Test
+    void repeatedSavesAreMerged() {
+        queue = new WriteBehindQueue(LOG, storage, 10, 1_000, Duration.ofHours(1), null);
+
+        StoredProfile first = createProfile("Notch");
+        StoredProfile second = createProfile("Notch");
+        queue.enqueue(first);
+        queue.enqueue(second);
+
+        assertEquals(1, queue.getQueueDepth());
+        assertEquals(1, queue.getMergedSaves());
+        assertSame(second, queue.getPending("Notch"));
+
+        queue.flush();
+        assertEquals(1, storage.batches.size());
+        assertEquals(Collections.singletonList(second), storage.batches.get(0));
+        assertEquals(0, queue.getQueueDepth());
+        assertNull(queue.getPending("Notch"));
+    }
+
+    @Test
+    void flushWhenBatchSizeReached() throws InterruptedException {
+        storage.expectedBatches = new CountDownLatch(1);
+        queue = new WriteBehindQueue(LOG, storage, 2, 1_000, Duration.ofHours(1), null);
+
+        queue.enqueue(createProfile("Notch"));
+        queue.enqueue(createProfile("Dinnerbone"));
+
+        assertTrue(storage.expectedBatches.await(5, TimeUnit.SECONDS));
+        assertEquals(2, storage.batches.get(0).size());
+    }
+
+    @Test
+    void flushAfterInterval() throws InterruptedException {
+        storage.expectedBatches = new CountDownLatch(1);
+        queue = new WriteBehindQueue(LOG, storage, 100, 1_000, Duration.ofMillis(50), null);
+
+        queue.enqueue(createProfile("Notch"));
+
+        assertTrue(storage.expectedBatches.await(5, TimeUnit.SECONDS));
+        assertEquals(1, storage.batches.get(0).size());
+    }
+
+    @Test
+    void closeWritesRemainingSaves() {
+        queue = new WriteBehindQueue(LOG, storage, 100, 1_000, Duration.ofHours(1), null);
+        queue.enqueue(createProfile("Notch"));
+
+        queue.close();
+        assertEquals(1, storage.batches.size());
+        assertEquals(0, queue.getQueueDepth());
+
+        // saves after the shutdown have to be written by the caller
+        assertFalse(queue.enqueue(createProfile("Dinnerbone")));
+        assertEquals(1, storage.batches.size());
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    void savesAfterCloseAreWrittenDirectly() throws SQLException {
+        storage.createTables();
+        storage.enableWriteBehind(100, 1_000, Duration.ofHours(1));
+        storage.save(createProfile("Notch"));
+
+        storage.getWriteBehindQueue().close();
+        StoredProfile profile = createProfile("Dinnerbone");
+        storage.save(profile);
+
+        assertEquals(1, storage.batches.size());
+        assertEquals(0, storage.getWriteBehindQueue().getQueueDepth());
+        assertTrue(profile.isExistingPlayer());
+    }
+
+    @Test
+    void pendingSaveIsFoundById() {
+        storage.enableWriteBehind(100, 1_000, Duration.ofHours(1));
+        StoredProfile profile = new StoredProfile(PLAYER_ID, "Notch", true, FloodgateState.FALSE, "");
+        storage.save(profile);
+
+        assertSame(profile, storage.getWriteBehindQueue().getPending(PLAYER_ID));
+        assertSame(profile, storage.loadProfile(PLAYER_ID));
+        assertSame(profile, storage.loadProfilesById(Collections.singleton(PLAYER_ID)).get(PLAYER_ID));
+
+        storage.getWriteBehindQueue().flush();
+        assertNull(storage.getWriteBehindQueue().getPending(PLAYER_ID));
+    }
+
+    @Test
+    void queueIsLimitedWhileDatabaseIsDown() {
+        queue = new WriteBehindQueue(LOG, storage, 2, 2, Duration.ofHours(1), null);
+        storage.unreachable = true;
+
+        queue.enqueue(createProfile("Notch"));
+        queue.flush();
+        queue.enqueue(createProfile("Dinnerbone"));
+        queue.enqueue(createProfile("Grumm"));
+        assertEquals(2, queue.getQueueDepth());
+        assertEquals(1, queue.getDroppedSaves());
+        assertNull(queue.getPending("Grumm"));
+
+        // queued players can still be updated
+        StoredProfile updated = createProfile("Notch");
+        queue.enqueue(updated);
+        assertSame(updated, queue.getPending("Notch"));
+        assertEquals(1, queue.getDroppedSaves());
+    }
+
+    @Test
+    void failedBatchStaysQueued() {
+        queue = new WriteBehindQueue(LOG, storage, 100, 1_000, Duration.ofHours(1), null);
+        StoredProfile profile = createProfile("Notch");
+        queue.enqueue(profile);
+
+        storage.unreachable = true;
+        queue.flush();
+        assertEquals(1, queue.getQueueDepth());
+        assertSame(profile, queue.getPending("Notch"));
+        assertEquals(0, queue.getFlushedProfiles());
+
+        storage.unreachable = false;
+        queue.flush();
+        assertEquals(0, queue.getQueueDepth());
+        assertEquals(1, queue.getFlushedProfiles());
+    }
+
+    @Test
+    void brokenProfileIsDroppedAfterRetries() {
+        queue = new WriteBehindQueue(LOG, storage, 100, 1_000, Duration.ofHours(1), null);
+        storage.brokenName = "Notch";
+        queue.enqueue(createProfile("Notch"));
+        queue.enqueue(createProfile("Dinnerbone"));
+
+        queue.flush();
+        assertEquals(1, queue.getQueueDepth());
+        assertNotNull(queue.getPending("Notch"));
+
+        for (int i = 0; i < 10; i++) {
+            queue.flush();
+        }
+
+        assertEquals(0, queue.getQueueDepth());
+        assertEquals(1, queue.getFlushedProfiles());
+    }
+
+    private static StoredProfile createProfile(String name) {
+        return new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+    }
+
+    private static class RecordingStorage extends SQLiteStorage {
+
+        private final List<List<StoredProfile>> batches = new CopyOnWriteArrayList<>();
+
+        private volatile CountDownLatch expectedBatches = new CountDownLatch(0);
+        private volatile boolean unreachable;
+        private volatile String brokenName;
+
+        RecordingStorage(String path) {
+            super(LOG, "FastLogin", null, path, new HikariConfig(), null);
+        }
+
+        @Override
+        protected Collection<StoredProfile> saveBatch(Collection<StoredProfile> profiles) throws SQLException {
+            if (unreachable) {
+                throw new SQLException("Connection is not available");
+            }
+
+            Collection<StoredProfile> failed = new ArrayList<>();
+            for (StoredProfile profile : profiles) {
+                if (profile.getName().equals(brokenName)) {
+                    failed.add(profile);
+                }
+            }
+
+            batches.add(new ArrayList<>(profiles));
+            expectedBatches.countDown();
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2024 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.velocity.command;
+
+import com.github.games647.fastlogin.core.storage.ShadowAuthStorage;
+import com.github.games647.fastlogin.velocity.FastLoginVelocity;
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+
+public class ShadowCommand implements SimpleCommand {
+
+    public static final String PERMISSION = "fastlogin.command.shadow";
+
+    private final FastLoginVelocity plugin;
+
+    public ShadowCommand(FastLoginVelocity plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Shows the latencies and divergent results of the database and the shadow storage.
+     */
+    @Override
+    public void execute(Invocation invocation) {
+        CommandSource source = invocation.source();
+        ShadowAuthStorage shadowStorage = plugin.getCore().getShadowStorage();
+        if (shadowStorage == null) {
+            plugin.sendMessage(source, "Error: The shadow mode is disabled");
+            return;
+        }
+
+        for (String line : shadowStorage.getReport()) {
+            plugin.sendMessage(source, line);
+        }
+    }
+
+    @Override
+    public boolean hasPermission(Invocation invocation) {
+        return invocation.source().hasPermission(PERMISSION);
+    }
+}
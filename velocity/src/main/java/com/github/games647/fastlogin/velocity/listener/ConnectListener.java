@@ -110,8 +110,9 @@ public class ConnectListener {
                 return null;
             case Continue:
             default:
-                return EventTask.async(
-                        new AsyncPremiumCheck(plugin, connection, username, preLoginEvent)
+                // the event continues once the check completes without blocking a thread on the database
+                return EventTask.resumeWhenComplete(
+                        new AsyncPremiumCheck(plugin, connection, username, preLoginEvent).runAsync()
                 );
         }
     }
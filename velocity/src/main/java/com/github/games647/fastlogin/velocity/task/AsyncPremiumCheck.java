@@ -37,10 +37,10 @@ import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.proxy.InboundConnection;
 import com.velocitypowered.api.proxy.Player;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
-public class AsyncPremiumCheck extends JoinManagement<Player, CommandSource, VelocityLoginSource>
-        implements Runnable {
+public class AsyncPremiumCheck extends JoinManagement<Player, CommandSource, VelocityLoginSource> {
 
     private final FastLoginVelocity plugin;
     private final String username;
@@ -56,10 +56,10 @@ public class AsyncPremiumCheck extends JoinManagement<Player, CommandSource, Vel
         this.preLoginEvent = preLoginEvent;
     }
 
-    @Override
-    public void run() {
+    public CompletableFuture<Void> runAsync() {
         plugin.getSession().remove(connection.getRemoteAddress());
-        super.onLogin(username, new VelocityLoginSource(connection, preLoginEvent));
+        VelocityLoginSource source = new VelocityLoginSource(connection, preLoginEvent);
+        return super.onLoginAsync(username, source, plugin.getScheduler().getExecutor());
     }
 
     @Override